@@ -19,6 +19,7 @@
  */
 package it.cnr.isti.hpclab.ef;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
@@ -37,6 +38,7 @@ import org.terrier.structures.postings.IterablePosting;
 import org.terrier.utility.Files;
 
 import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+import it.cnr.isti.hpclab.ef.util.SeekableLexiconIterator;
 import it.cnr.isti.hpclab.ef.util.SynchronizedProgressBar;
 
 /**
@@ -56,6 +58,8 @@ public class BasicCompressor implements Compressor
     
     protected final Index srcIndex;
     protected final int numDocs;
+    
+    protected boolean blockMax = false;
   
     /**
      * Constructor.
@@ -91,17 +95,32 @@ public class BasicCompressor implements Compressor
         this.LOG2QUANTUM = log2quantum;
     }
     
+    /**
+     * Set whether the block-max metadata of the posting lists are written too, in the files created by
+     * {@link BlockMaxEncoder#layout(Index, IndexRef, int)}.
+     * 
+     * @param blockMax whether block-max metadata are written
+     * @return this compressor
+     */
+    public BasicCompressor blockMax(final boolean blockMax)
+    {
+        this.blockMax = blockMax;
+        return this;
+    }
+    
     @Override
     public void compress(final TermPartition terms) throws IOException
     {
-		// opening src index lexicon iterator and moving to the begin termid
-		Iterator<Entry<String, LexiconEntry>> lexIter = srcIndex.getLexicon().iterator();
+		// opening src index lexicon iterator at the begin termid (seeking if possible, scanning otherwise)
+		Iterator<Entry<String, LexiconEntry>> lexIter = SeekableLexiconIterator.from(srcIndex, terms.begin());
 		Entry<String, LexiconEntry> lee = advanceLexiconIteratorTo(terms.begin(), lexIter);
 
 		// writers
 		final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString()) + File.separator + terms.prefix();
 		EliasFanoWriters efWriters = new EliasFanoWriters(dstIndexPath);
 		EliasFanoEncoders efEncoders = new EliasFanoEncoders(LOG2QUANTUM);
+		if (blockMax)
+			efEncoders.blockMax(BlockMaxEncoder.open(srcIndex, dstRef, terms.begin(), LOG2QUANTUM));
         
         LexiconEntry le = null;
         IterablePosting p = null;        
@@ -123,5 +142,7 @@ public class BasicCompressor implements Compressor
                 
 		efEncoders.close();
 		efWriters.close();
+		if (lexIter instanceof Closeable)
+			((Closeable) lexIter).close();
     }    
 }
\ No newline at end of file
@@ -19,6 +19,7 @@
  */
 package it.cnr.isti.hpclab.ef;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
@@ -37,6 +38,7 @@ import org.terrier.structures.postings.IterablePosting;
 import org.terrier.utility.Files;
 
 import it.cnr.isti.hpclab.ef.structures.EFBlockLexiconEntry;
+import it.cnr.isti.hpclab.ef.util.SeekableLexiconIterator;
 import it.cnr.isti.hpclab.ef.util.SynchronizedProgressBar;
 
 /**
@@ -55,6 +57,8 @@ public class BlockCompressor implements Compressor
     
     protected final Index srcIndex;
     protected final int numDocs;
+    
+    protected boolean blockMax = false;
 
     /**
      * Constructor.
@@ -90,17 +94,32 @@ public class BlockCompressor implements Compressor
         this.LOG2QUANTUM = log2quantum;
     }
     
+    /**
+     * Set whether the block-max metadata of the posting lists are written too, in the files created by
+     * {@link BlockMaxEncoder#layout(Index, IndexRef, int)}.
+     * 
+     * @param blockMax whether block-max metadata are written
+     * @return this compressor
+     */
+    public BlockCompressor blockMax(final boolean blockMax)
+    {
+        this.blockMax = blockMax;
+        return this;
+    }
+    
     @Override
     public void compress(final TermPartition terms) throws IOException
     {      
-		// opening src index lexicon iterator and moving to the begin termid
-		Iterator<Entry<String, LexiconEntry>> lexIter = srcIndex.getLexicon().iterator();
+		// opening src index lexicon iterator at the begin termid (seeking if possible, scanning otherwise)
+		Iterator<Entry<String, LexiconEntry>> lexIter = SeekableLexiconIterator.from(srcIndex, terms.begin());
 		Entry<String, LexiconEntry> lee = advanceLexiconIteratorTo(terms.begin(), lexIter);
 
 		// writers
 		final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString()) + File.separator + terms.prefix();
 		EliasFanoBlockWriters befWriters = new EliasFanoBlockWriters(dstIndexPath);
 		EliasFanoBlockEncoders befEncoders = new EliasFanoBlockEncoders(LOG2QUANTUM);
+		if (blockMax)
+			befEncoders.blockMax(BlockMaxEncoder.open(srcIndex, dstRef, terms.begin(), LOG2QUANTUM));
 		
         LexiconEntry le = null;
         IterablePosting p = null;
@@ -111,13 +130,10 @@ public class BlockCompressor implements Compressor
             
             befEncoders.init(le.getDocumentFrequency(), numDocs, le.getFrequency());
             
+            // a single pass over the source postings encodes docids, freqs and positions
             p = srcIndex.getInvertedIndex().getPostings((BitIndexPointer)le);
             befEncoders.add(p);
             p.close();
-            
-            p = srcIndex.getInvertedIndex().getPostings((BitIndexPointer)le);
-            befEncoders.addPositions(p);
-            p.close();
 
             befEncoders.dump(befWriters);            
         
@@ -127,5 +143,7 @@ public class BlockCompressor implements Compressor
 
         befEncoders.close();
         befWriters.close();
+        if (lexIter instanceof Closeable)
+            ((Closeable) lexIter).close();
     }    
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.apache.commons.io.FilenameUtils;
+import org.terrier.querying.IndexRef;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+
+/**
+ * This class writes the block-max metadata of posting lists: for every quantum of postings, i.e., every block of 
+ * <code>2^log2quantum</code> consecutive postings, the same blocks indexed by the Elias-Fano skip pointers, 
+ * it writes the last docid, the maximum freq and the minimum document length of the block, as three ints.
+ * A query processor can bound the score of every posting of a block with any weighting model increasing with the freq 
+ * and decreasing with the document length, such as BM25, without decoding the postings. These metadata do not bound 
+ * the scores of other models, such as DPH, whose score is not monotone in the freq.
+ * 
+ * The blocks of all terms are stored in termid order in a single file, and the first block of every term is stored in an offsets file
+ * with one long per term, plus a trailing one. Both files are created by {@link #layout(Index, IndexRef, int)} before compression, 
+ * so every partition can be written directly at its final position.
+ */
+public class BlockMaxEncoder implements Closeable
+{
+	/** The bytes of a block: last docid, maximum freq and minimum document length. */
+	public static final int BLOCK_SIZE = 3 * Integer.BYTES;
+	
+	private final DocumentIndex doi;
+	private final int quantum;
+	private final DataOutputStream out;
+	
+	private int inBlock;
+	private int lastDocid;
+	private int maxFreq;
+	private int minDocLength;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param dstIndexPath the path and prefix of the final destination index files
+	 * @param firstBlock the index of the first block to write
+	 * @param log2quantum log2 of quantum
+	 * @param doi the document index of the source index, for document lengths
+	 * @throws IOException if something goes wrong
+	 */
+	@SuppressWarnings("resource")
+	public BlockMaxEncoder(final String dstIndexPath, final long firstBlock, final int log2quantum, final DocumentIndex doi) throws IOException
+	{
+		this.doi = doi;
+		this.quantum = 1 << log2quantum;
+		this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(
+				FileChannel.open(Paths.get(dstIndexPath + EliasFano.BLOCKMAX_EXTENSION), StandardOpenOption.WRITE).position(firstBlock * BLOCK_SIZE)), 1 << 16));
+		init();
+	}
+	
+	/**
+	 * Open an encoder writing the blocks of a partition, starting with the first block of its begin termid 
+	 * in the files created by {@link #layout(Index, IndexRef, int)}.
+	 * 
+	 * @param srcIndex source index
+	 * @param dstRef destination index reference
+	 * @param beginTermId the first termid of the partition
+	 * @param log2quantum log2 of quantum
+	 * @return the encoder
+	 * @throws IOException if something goes wrong
+	 */
+	public static BlockMaxEncoder open(final Index srcIndex, final IndexRef dstRef, final int beginTermId, final int log2quantum) throws IOException
+	{
+		final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString()) + File.separator + FilenameUtils.getBaseName(dstRef.toString());
+		final long firstBlock;
+		try (RandomAccessFile offsets = new RandomAccessFile(dstIndexPath + EliasFano.BLOCKMAX_OFFSETS_EXTENSION, "r")) {
+			offsets.seek((long) beginTermId * Long.BYTES);
+			firstBlock = offsets.readLong();
+		}
+		return new BlockMaxEncoder(dstIndexPath, firstBlock, log2quantum, srcIndex.getDocumentIndex());
+	}
+	
+	/**
+	 * Return the number of blocks of a posting list.
+	 * 
+	 * @param df the number of postings
+	 * @param log2quantum log2 of quantum
+	 * @return the number of blocks
+	 */
+	public static long numBlocks(final int df, final int log2quantum)
+	{
+		return ((long) df + (1 << log2quantum) - 1) >>> log2quantum;
+	}
+	
+	/**
+	 * Write the offsets file from the source lexicon statistics, and preallocate the blocks file.
+	 * 
+	 * @param srcIndex source index, with aligned termids
+	 * @param dstRef destination index reference
+	 * @param log2quantum log2 of quantum
+	 * @return the total number of blocks
+	 * @throws IOException if something goes wrong
+	 */
+	public static long layout(final Index srcIndex, final IndexRef dstRef, final int log2quantum) throws IOException
+	{
+		final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString()) + File.separator + FilenameUtils.getBaseName(dstRef.toString());
+		
+		long numBlocks = 0;
+		Iterator<Entry<String, LexiconEntry>> lexIter = srcIndex.getLexicon().iterator();
+		try (DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dstIndexPath + EliasFano.BLOCKMAX_OFFSETS_EXTENSION)))) {
+			int termid = 0;
+			while (lexIter.hasNext()) {
+				LexiconEntry le = lexIter.next().getValue();
+				if (le.getTermId() != termid)
+					throw new IllegalStateException("Source lexicon termids are not aligned: found termid " + le.getTermId() + " instead of " + termid);
+				offsets.writeLong(numBlocks);
+				numBlocks += numBlocks(le.getDocumentFrequency(), log2quantum);
+				termid++;
+			}
+			offsets.writeLong(numBlocks);
+		}
+		if (lexIter instanceof Closeable)
+			((Closeable) lexIter).close();
+		
+		// an interrupted compression being resumed keeps the blocks already written
+		try (RandomAccessFile blocks = new RandomAccessFile(dstIndexPath + EliasFano.BLOCKMAX_EXTENSION, "rw")) {
+			blocks.setLength(numBlocks * BLOCK_SIZE);
+		}
+		return numBlocks;
+	}
+	
+	/**
+	 * Start a new posting list.
+	 */
+	public void init()
+	{
+		this.inBlock = 0;
+		this.maxFreq = 0;
+		this.minDocLength = Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Add a posting to the current posting list.
+	 * 
+	 * @param docid the docid of the posting
+	 * @param freq the freq of the posting
+	 * @throws IOException if something goes wrong
+	 */
+	public void add(final int docid, final int freq) throws IOException
+	{
+		lastDocid = docid;
+		maxFreq = Math.max(maxFreq, freq);
+		minDocLength = Math.min(minDocLength, doi.getDocumentLength(docid));
+		if (++inBlock == quantum) {
+			writeBlock();
+			init();
+		}
+	}
+	
+	/**
+	 * Write the last, partial block of the current posting list.
+	 * 
+	 * @throws IOException if something goes wrong
+	 */
+	public void dump() throws IOException
+	{
+		if (inBlock > 0)
+			writeBlock();
+		init();
+	}
+	
+	private void writeBlock() throws IOException
+	{
+		out.writeInt(lastDocid);
+		out.writeInt(maxFreq);
+		out.writeInt(minDocLength);
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		out.close();
+	}
+}
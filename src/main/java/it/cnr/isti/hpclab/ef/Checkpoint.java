@@ -0,0 +1,208 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.terrier.structures.collections.FSOrderedMapFile;
+
+/**
+ * This class records the progress of a compression, so that an interrupted compression can be resumed.
+ * The chunk layout is saved before compression starts, and a completion marker, storing the sizes 
+ * of the files of the chunk, is written as soon as a chunk has been compressed.
+ * A resumed compression reuses the saved layout, and skips the chunks whose marker matches their files.
+ * The layout also records the source index and the options changing the compressed chunks, and a compression
+ * is resumed only if they have not changed.
+ */
+class Checkpoint 
+{
+    private static final String LAYOUT_SUFFIX = ".chunks";
+    private static final String MARKER_SUFFIX = ".done";
+    private static final String OPTION_PREFIX = "option.";
+    
+    private final String dstIndexPath;
+    private final String dstIndexPrefix;
+    private final String[] suffixes;
+    private final boolean resume;
+    private final Properties options = new Properties();
+    
+    /**
+     * Constructor.
+     * 
+     * @param dstIndexPath the directory of the destination index, also holding the chunks
+     * @param dstIndexPrefix the prefix of the destination index
+     * @param srcIndex the properties file of the source index
+     * @param withPos whether positions are compressed
+     * @param chunkSize the number of postings (or positions) per chunk, 0 for the default
+     * @param log2Quantum the log2 of the quantum of the compressed lists
+     * @param blockMax whether block-max metadata are written
+     * @param resume whether completed chunks of a previous compression are reused
+     */
+    public Checkpoint(final String dstIndexPath, final String dstIndexPrefix, final String srcIndex, 
+                      final boolean withPos, final long chunkSize, final int log2Quantum, final boolean blockMax, final boolean resume)
+    {
+        this.resume = resume;
+        this.options.setProperty("index", Paths.get(srcIndex).toAbsolutePath().normalize().toString());
+        this.options.setProperty("blocks", Boolean.toString(withPos));
+        this.options.setProperty("chunksize", Long.toString(chunkSize));
+        this.options.setProperty(EliasFano.LOG2QUANTUM, Integer.toString(log2Quantum));
+        this.options.setProperty("blockmax", Boolean.toString(blockMax));
+        this.dstIndexPath = dstIndexPath;
+        this.dstIndexPrefix = dstIndexPrefix;
+        this.suffixes = (withPos) 
+            ? new String[] { EliasFano.DOCID_EXTENSION, EliasFano.FREQ_EXTENSION, EliasFano.POS_EXTENSION, ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION }
+            : new String[] { EliasFano.DOCID_EXTENSION, EliasFano.FREQ_EXTENSION, ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION };
+    }
+    
+    private Path layout()
+    {
+        return Paths.get(dstIndexPath, dstIndexPrefix + LAYOUT_SUFFIX);
+    }
+    
+    private Path marker(final TermPartition chunk)
+    {
+        return Paths.get(dstIndexPath, chunk.prefix() + MARKER_SUFFIX);
+    }
+    
+    /**
+     * Save the chunk layout.
+     * 
+     * @param chunks the chunks to compress
+     * @throws IOException if something goes wrong
+     */
+    public void save(final TermPartition[] chunks) throws IOException
+    {
+        Properties properties = new Properties();
+        for (String option: options.stringPropertyNames())
+            properties.setProperty(OPTION_PREFIX + option, options.getProperty(option));
+        properties.setProperty("chunks", Integer.toString(chunks.length));
+        for (TermPartition chunk: chunks)
+            properties.setProperty("chunk." + chunk.id(), chunk.begin() + "," + chunk.end() + "," + chunk.cost());
+        store(properties, layout());
+    }
+    
+    /**
+     * Load the saved chunk layout, if resuming.
+     * 
+     * @return the saved chunks, or null if not resuming or no layout has been saved
+     * @throws IOException if something goes wrong
+     * @throws IllegalArgumentException if the layout has been saved with a different source index or different options
+     */
+    public TermPartition[] load() throws IOException
+    {
+        if (!resume || !Files.exists(layout()))
+            return null;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(layout())) {
+            properties.load(in);
+        }
+        for (String option: options.stringPropertyNames()) {
+            final String saved = properties.getProperty(OPTION_PREFIX + option);
+            if (!options.getProperty(option).equals(saved))
+                throw new IllegalArgumentException("Cannot resume the compression saved in " + this + ": " + option + " was " + saved + ", now it is " + options.getProperty(option));
+        }
+        final int numChunks = Integer.parseInt(properties.getProperty("chunks"));
+        TermPartition[] chunks = new TermPartition[numChunks];
+        for (int id = 0; id < numChunks; id++) {
+            final String[] values = properties.getProperty("chunk." + id).split(",");
+            chunks[id] = TermPartition.of(Integer.parseInt(values[0]), Integer.parseInt(values[1]), id);
+            chunks[id].cost(Long.parseLong(values[2]));
+        }
+        return chunks;
+    }
+    
+    /**
+     * Check if a chunk has been completely compressed by a previous compression, 
+     * i.e., its marker exists and all its files have the recorded sizes.
+     * 
+     * @param chunk the chunk to check, with its prefix
+     * @return true if resuming and the chunk has been completely compressed
+     * @throws IOException if something goes wrong
+     */
+    public boolean isDone(final TermPartition chunk) throws IOException
+    {
+        if (!resume || !Files.exists(marker(chunk)))
+            return false;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(marker(chunk))) {
+            properties.load(in);
+        }
+        for (String suffix: suffixes) {
+            final Path file = Paths.get(dstIndexPath, chunk.prefix() + suffix);
+            if (!Files.exists(file) || !Long.toString(Files.size(file)).equals(properties.getProperty(suffix)))
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Write the marker of a completely compressed chunk.
+     * 
+     * @param chunk the compressed chunk, with its prefix
+     * @throws IOException if something goes wrong
+     */
+    public void markDone(final TermPartition chunk) throws IOException
+    {
+        Properties properties = new Properties();
+        for (String suffix: suffixes)
+            properties.setProperty(suffix, Long.toString(Files.size(Paths.get(dstIndexPath, chunk.prefix() + suffix))));
+        store(properties, marker(chunk));
+    }
+    
+    /**
+     * Delete the chunk layout and all markers.
+     * 
+     * @param chunks the chunks
+     * @throws IOException if something goes wrong
+     */
+    public void clear(final TermPartition[] chunks) throws IOException
+    {
+        for (TermPartition chunk: chunks)
+            Files.deleteIfExists(marker(chunk));
+        Files.deleteIfExists(layout());
+    }
+    
+    /**
+     * Atomically write the properties, so that a crash never leaves a partially written file.
+     */
+    private static void store(final Properties properties, final Path file) throws IOException
+    {
+        final Path tmp = Paths.get(file.toString() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return dstIndexPath + File.separator + dstIndexPrefix + LAYOUT_SUFFIX;
+    }
+}
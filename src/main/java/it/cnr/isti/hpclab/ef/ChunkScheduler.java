@@ -0,0 +1,123 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.cnr.isti.hpclab.ef.util.SynchronizedProgressBar;
+
+/**
+ * This class compresses a (large) number of small term chunks with a fixed number of threads.
+ * Every thread claims the next chunk to compress as soon as it is done with the previous one, 
+ * so a slow chunk does not stall the other threads. All threads share the same source index, see {@link CompressorMapper}.
+ * Chunks are returned in termid order, ready to be merged (unless they have been written in place).
+ */
+class ChunkScheduler 
+{
+    protected static final Logger LOGGER = LoggerFactory.getLogger(ChunkScheduler.class);
+    
+    private final CompressorMapper mapper;
+    private final int numThreads;
+    private final Checkpoint checkpoint;
+    
+    public ChunkScheduler(final CompressorMapper mapper, final int numThreads)
+    {
+        this(mapper, numThreads, null);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param mapper the mapper creating the compressors
+     * @param numThreads the number of compression threads
+     * @param checkpoint the checkpoint where completed chunks are recorded, and already completed chunks are found, or null
+     */
+    public ChunkScheduler(final CompressorMapper mapper, final int numThreads, final Checkpoint checkpoint)
+    {
+        this.mapper = mapper;
+        this.numThreads = numThreads;
+        this.checkpoint = checkpoint;
+    }
+    
+    /**
+     * Compress all chunks, in parallel.
+     * 
+     * @param chunks the chunks to compress, in termid order
+     * @return the compressed chunks, in termid order
+     * 
+     * @throws InterruptedException if interrupted while waiting for the compression threads
+     * @throws ExecutionException if some chunk compression fails
+     */
+    public TermPartition[] run(final TermPartition[] chunks) throws InterruptedException, ExecutionException
+    {
+        final AtomicInteger next = new AtomicInteger(0);
+        
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> workers = new ArrayList<>(numThreads);
+            for (int i = 0; i < numThreads; i++) {
+                workers.add(pool.submit(() -> {
+                    Compressor compressor = mapper.compressor();
+                    
+                    int numChunks = 0;
+                    long cost = 0, time = 0;
+                    for (int c; (c = next.getAndIncrement()) < chunks.length; ) {
+                        TermPartition chunk = chunks[c];
+                        if (chunk.prefix() == null)
+                            chunk.prefix("_partition_" + chunk.id());
+                        
+                        if (checkpoint != null && checkpoint.isDone(chunk)) {
+                            LOGGER.info("Chunk " + chunk + " already compressed, skipping it");
+                            SynchronizedProgressBar.getInstance().stepBy(chunk.end() - chunk.begin());
+                            continue;
+                        }
+                        
+                        long starttime = System.currentTimeMillis();
+                        compressor.compress(chunk);
+                        chunk.time(System.currentTimeMillis() - starttime);
+                        if (checkpoint != null)
+                            checkpoint.markDone(chunk);
+                        LOGGER.debug("Chunk " + chunk + " with cost " + chunk.cost() + " compressed in " + chunk.time() + " ms by " + Thread.currentThread().getName());
+                        
+                        numChunks++;
+                        cost += chunk.cost();
+                        time += chunk.time();
+                    }
+                    LOGGER.info(Thread.currentThread().getName() + " compressed " + numChunks + " chunks with total cost " + cost + " in " + time + " ms");
+                    return null;
+                }));
+            }
+            for (Future<?> worker: workers)
+                worker.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        return chunks;
+    }
+}
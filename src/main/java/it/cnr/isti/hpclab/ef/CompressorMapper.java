@@ -24,21 +24,67 @@ import java.util.function.Function;
 
 import org.terrier.querying.IndexRef;
 
-import org.terrier.structures.IndexFactory;
-import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Index;
 
+/**
+ * This class creates the compressors of the term partitions, all reading from the same source index.
+ * Compressors run concurrently, each with its own lexicon and posting iterators, so the posting index of the source index 
+ * must support concurrent iterators, as Terrier's bit posting indexes do.
+ */
 class CompressorMapper implements Function<TermPartition,TermPartition>
 {
-    private final IndexRef srcRef;
+    private final Index srcIndex;
     private final IndexRef dstRef;
     private final boolean withPos;
+    private final boolean inPlace;
+    private final boolean pipelined;
+    private final boolean blockMax;
 
-    public CompressorMapper(final IndexRef srcRef, final IndexRef dstRef, final boolean withPos) 
+    /**
+     * Constructor.
+     * 
+     * @param srcIndex the source index, shared by all compressors, that read postings with their own iterators
+     * @param dstRef destination index reference
+     * @param withPos whether positions are compressed
+     */
+    public CompressorMapper(final Index srcIndex, final IndexRef dstRef, final boolean withPos) 
+    {
+        this(srcIndex, dstRef, withPos, false, false);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param srcIndex the source index, shared by all compressors, that read postings with their own iterators
+     * @param dstRef destination index reference
+     * @param withPos whether positions are compressed, with a {@link BlockCompressor}
+     * @param inPlace whether lists are written in place, with an {@link InPlaceCompressor} (ignored with positions)
+     * @param pipelined whether lists are decoded, encoded and written concurrently, with a {@link PipelinedCompressor} (ignored with positions or in place)
+     */
+    public CompressorMapper(final Index srcIndex, final IndexRef dstRef, final boolean withPos, final boolean inPlace, final boolean pipelined) 
+    {
+        this(srcIndex, dstRef, withPos, inPlace, pipelined, false);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param srcIndex the source index, shared by all compressors, that read postings with their own iterators
+     * @param dstRef destination index reference
+     * @param withPos whether positions are compressed, with a {@link BlockCompressor}
+     * @param inPlace whether lists are written in place, with an {@link InPlaceCompressor} (ignored with positions)
+     * @param pipelined whether lists are decoded, encoded and written concurrently, with a {@link PipelinedCompressor} (ignored with positions or in place)
+     * @param blockMax whether the block-max metadata of the lists are written, in the files created by {@link BlockMaxEncoder#layout(Index, IndexRef, int)}
+     */
+    public CompressorMapper(final Index srcIndex, final IndexRef dstRef, final boolean withPos, final boolean inPlace, final boolean pipelined, final boolean blockMax) 
     {
-        this.srcRef = srcRef;
+        this.srcIndex = srcIndex;
         this.dstRef = dstRef;
 
         this.withPos = withPos;
+        this.inPlace = inPlace;
+        this.pipelined = pipelined;
+        this.blockMax = blockMax;
     }
 
     @Override
@@ -46,17 +92,31 @@ class CompressorMapper implements Function<TermPartition,TermPartition>
     {
         terms.prefix("_partition_" + terms.id());
         
-        IndexOnDisk index = (IndexOnDisk) IndexFactory.of(srcRef);
-        
-        Compressor bc = (!withPos) 
-            ? new BasicCompressor(index, dstRef)
-            : new BlockCompressor(index, dstRef);
+        Compressor bc = compressor();
             
+        long starttime = System.currentTimeMillis();
         try {
             bc.compress(terms);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        terms.time(System.currentTimeMillis() - starttime);
         return terms;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Create a compressor reading from the shared source index, that can be reused for many partitions.
+     * 
+     * @return a new compressor
+     */
+    public Compressor compressor()
+    {
+        if (withPos)
+            return new BlockCompressor(srcIndex, dstRef).blockMax(blockMax);
+        if (inPlace)
+            return new InPlaceCompressor(srcIndex, dstRef).blockMax(blockMax);
+        return (pipelined) 
+            ? new PipelinedCompressor(srcIndex, dstRef).blockMax(blockMax)
+            : new BasicCompressor(srcIndex, dstRef).blockMax(blockMax);
+    }
+}
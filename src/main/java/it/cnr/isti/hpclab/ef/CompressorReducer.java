@@ -19,8 +19,13 @@
  */
 package it.cnr.isti.hpclab.ef;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -28,9 +33,10 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.Map.Entry;
-import java.util.function.BinaryOperator;
+import java.util.stream.IntStream;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.hadoop.io.Text;
 
 import org.terrier.querying.IndexRef;
 
@@ -38,14 +44,22 @@ import org.terrier.structures.FSOMapFileLexicon;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.collections.FSOrderedMapFile;
 import org.terrier.structures.seralization.FixedSizeTextFactory;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
 
 import it.cnr.isti.hpclab.ef.util.IndexUtil;
 import it.cnr.isti.hpclab.ef.structures.EFBlockLexiconEntry;
 import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
-import it.cnr.isti.hpclab.ef.structures.FSOMapFileAppendLexiconOutputStream;
 
-public class CompressorReducer implements BinaryOperator<TermPartition> 
+/**
+ * This class merges the compressed partitions into a single index.
+ * Every output file is written once: the partition files are copied in parallel at their final offsets,
+ * computed from the partition file sizes, and the lexicon entries of every partition are re-based in parallel.
+ * The merge I/O is therefore linear in the total size of the partitions.
+ */
+public class CompressorReducer
 {
+    private static final String LEXICON_SUFFIX = ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION;
+    
     private final IndexRef dstRef;
     private final boolean withPos;
     
@@ -55,98 +69,129 @@ public class CompressorReducer implements BinaryOperator<TermPartition>
         this.withPos = withPos;
     }
 
-    @Override
-    public TermPartition apply(TermPartition t1, TermPartition t2) 
+    /**
+     * Merge the given partitions, in the given order, and delete them.
+     * 
+     * @param partitions the partitions to merge, in termid order
+     * @return a partition whose prefix is the prefix of the merged index
+     * @throws IOException if something goes wrong
+     */
+    public TermPartition merge(final TermPartition[] partitions) throws IOException 
     {
-        final String outPrefix = "_merge_" + t1.id();
+        final String outPrefix = "_merge";
         final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString());
         
+        final FixedSizeWriteableFactory<LexiconEntry> valueFactory = (!withPos) ? new EFLexiconEntry.Factory() : new EFBlockLexiconEntry.Factory();
+        final int entrySize = new FixedSizeTextFactory(IndexUtil.DEFAULT_MAX_TERM_LENGTH).getSize() + valueFactory.getSize();
+        
+        // Byte offsets of each partition in the merged files
+        final long[] docidOffsets = offsets(partitions, EliasFano.DOCID_EXTENSION, 1);
+        final long[] freqOffsets  = offsets(partitions, EliasFano.FREQ_EXTENSION,  1);
+        final long[] posOffsets   = (withPos) ? offsets(partitions, EliasFano.POS_EXTENSION, 1) : new long[partitions.length + 1];
+        // Entry offsets of each partition in the merged lexicon
+        final long[] lexOffsets   = offsets(partitions, LEXICON_SUFFIX, entrySize);
+        
+        create(dstIndexPath, outPrefix + EliasFano.DOCID_EXTENSION, docidOffsets[partitions.length]);
+        create(dstIndexPath, outPrefix + EliasFano.FREQ_EXTENSION,  freqOffsets[partitions.length]);
+        if (withPos)
+            create(dstIndexPath, outPrefix + EliasFano.POS_EXTENSION, posOffsets[partitions.length]);
+        create(dstIndexPath, outPrefix + LEXICON_SUFFIX, lexOffsets[partitions.length] * entrySize);
+        
         try {
-            // Merge docids (low level)
-            long docidOffset = merge(t1.prefix() + EliasFano.DOCID_EXTENSION, 
-                                      t2.prefix() + EliasFano.DOCID_EXTENSION, 
-                                      outPrefix  + EliasFano.DOCID_EXTENSION);
-
-            // Merge frequencies (low level)
-            long freqOffset = merge(t1.prefix() + EliasFano.FREQ_EXTENSION,
-                                     t2.prefix() + EliasFano.FREQ_EXTENSION, 
-                                     outPrefix  + EliasFano.FREQ_EXTENSION);
-
-            long posOffset = (withPos) 
-                ? merge(t1.prefix() + EliasFano.POS_EXTENSION,
-                        t2.prefix() + EliasFano.POS_EXTENSION, 
-                        outPrefix  + EliasFano.POS_EXTENSION)
-                : 0;
-
-            // Merge lexicons (inplace t1 merge with t2 while recomputing offsets)
-            FSOMapFileAppendLexiconOutputStream los1 = 
-                    new FSOMapFileAppendLexiconOutputStream(dstIndexPath + File.separator + t1.prefix() + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION,
-                                                            new FixedSizeTextFactory(IndexUtil.DEFAULT_MAX_TERM_LENGTH),
-                                                            (!withPos) ? new EFLexiconEntry.Factory() : new EFBlockLexiconEntry.Factory());
-
-            Iterator<Entry<String, LexiconEntry>> lexIter = null; 
-            Entry<String, LexiconEntry> lee = null;
-            FSOMapFileLexicon lex = null;
-
-            lex = new FSOMapFileLexicon("lexicon", dstIndexPath, t2.prefix(),
-                                        new FixedSizeTextFactory(IndexUtil.DEFAULT_MAX_TERM_LENGTH),
-                                        (!withPos) ? new EFLexiconEntry.Factory() : new EFBlockLexiconEntry.Factory(),
-                                        "aligned", "default", "file");
-            lexIter = lex.iterator();
-
-            while (lexIter.hasNext()) {
-                lee = lexIter.next();
-                if (withPos) {
-                    EFBlockLexiconEntry le = (EFBlockLexiconEntry) lee.getValue();
-                    le.docidOffset += Byte.SIZE * docidOffset;
-                    le.freqOffset  += Byte.SIZE * freqOffset;
-                    le.posOffset   += Byte.SIZE * posOffset;
-                    // le.termId += num_terms_1;
-                    los1.writeNextEntry(lee.getKey(), le);
-                } else {
-                    EFLexiconEntry le = (EFLexiconEntry) lee.getValue();
-                    le.docidOffset += Byte.SIZE * docidOffset;
-                    le.freqOffset  += Byte.SIZE * freqOffset;
-                    // le.termId += num_terms_1;
-                    los1.writeNextEntry(lee.getKey(), le);
+            IntStream.range(0, partitions.length).parallel().forEach(i -> {
+                try {
+                    final String prefix = partitions[i].prefix();
+                    copy(dstIndexPath, prefix + EliasFano.DOCID_EXTENSION, outPrefix + EliasFano.DOCID_EXTENSION, docidOffsets[i]);
+                    copy(dstIndexPath, prefix + EliasFano.FREQ_EXTENSION,  outPrefix + EliasFano.FREQ_EXTENSION,  freqOffsets[i]);
+                    if (withPos)
+                        copy(dstIndexPath, prefix + EliasFano.POS_EXTENSION, outPrefix + EliasFano.POS_EXTENSION, posOffsets[i]);
+                    rebase(dstIndexPath, prefix, outPrefix, lexOffsets[i] * entrySize, 
+                           Byte.SIZE * docidOffsets[i], Byte.SIZE * freqOffsets[i], Byte.SIZE * posOffsets[i]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            }
-
-            lex.close();
-            los1.close();
-
-            Files.move(Paths.get(dstIndexPath, t1.prefix() + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION),
-                       Paths.get(dstIndexPath, outPrefix  + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION));
-            Files.delete(Paths.get(dstIndexPath, t2.prefix() + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION));
-        } catch (IOException e) {
-            e.printStackTrace();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
 
-        // Set correct prefix for next merging and return it
-        t1.prefix(outPrefix);
-        t1.id(t2.id());
-        return t1;
+        TermPartition merged = partitions[0];
+        merged.prefix(outPrefix);
+        return merged;
     }
-
-    private long merge(final String prefixIn1, final String prefixIn2, final String outPrefix) throws IOException 
+    
+    /**
+     * Compute the prefix sums of the sizes of the partition files with the given suffix.
+     * 
+     * @param partitions the partitions
+     * @param suffix the file suffix
+     * @param unit the size unit, in bytes
+     * @return the offsets of the partition files, in units, plus the total size as last element 
+     */
+    private long[] offsets(final TermPartition[] partitions, final String suffix, final int unit) throws IOException
     {
         final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString());
+        long[] offsets = new long[partitions.length + 1];
+        for (int i = 0; i < partitions.length; i++)
+            offsets[i + 1] = offsets[i] + Files.size(Paths.get(dstIndexPath, partitions[i].prefix() + suffix)) / unit;
+        return offsets;
+    }
+    
+    private static void create(final String dstIndexPath, final String filename, final long size) throws IOException
+    {
+        try (FileChannel out = FileChannel.open(Paths.get(dstIndexPath, filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (size > 0) {
+                // preallocate the whole file, so that partitions can be written in any order
+                out.position(size - 1);
+                out.write(ByteBuffer.wrap(new byte[1]));
+            }
+        }
+    }
 
-        Path inFile1 = Paths.get(dstIndexPath + File.separator + prefixIn1);
-        Path inFile2 = Paths.get(dstIndexPath + File.separator + prefixIn2);
-        Path outFile  = Paths.get(dstIndexPath + File.separator + outPrefix);
+    private static void copy(final String dstIndexPath, final String inFilename, final String outFilename, final long offset) throws IOException 
+    {
+        Path inFile  = Paths.get(dstIndexPath, inFilename);
+        Path outFile = Paths.get(dstIndexPath, outFilename);
 
-        final long offset = Files.size(inFile1);
-        try (FileChannel out = FileChannel.open(inFile1, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
-            try (FileChannel in = FileChannel.open(inFile2, StandardOpenOption.READ)) {
+        try (FileChannel out = FileChannel.open(outFile, StandardOpenOption.WRITE)) {
+            try (FileChannel in = FileChannel.open(inFile, StandardOpenOption.READ)) {
                 long l = in.size();
                 for (long p = 0; p < l;)
-                    p += in.transferTo(p, l - p, out);
+                    p += out.transferFrom(in, offset + p, l - p);
             }
         }
-
-        Files.move(inFile1, outFile);
-        Files.delete(inFile2);
-        return offset;
+        Files.delete(inFile);
+    }
+    
+    private void rebase(final String dstIndexPath, final String inPrefix, final String outPrefix, final long offset, 
+                        final long docidBitOffset, final long freqBitOffset, final long posBitOffset) throws IOException
+    {
+        FSOMapFileLexicon lex = new FSOMapFileLexicon("lexicon", dstIndexPath, inPrefix,
+                                                      new FixedSizeTextFactory(IndexUtil.DEFAULT_MAX_TERM_LENGTH),
+                                                      (!withPos) ? new EFLexiconEntry.Factory() : new EFBlockLexiconEntry.Factory(),
+                                                      "aligned", "default", "file");
+        
+        final Text key = new FixedSizeTextFactory(IndexUtil.DEFAULT_MAX_TERM_LENGTH).newInstance();
+        try (FileChannel out = FileChannel.open(Paths.get(dstIndexPath, outPrefix + LEXICON_SUFFIX), StandardOpenOption.WRITE)) {
+            out.position(offset);
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+            
+            Iterator<Entry<String, LexiconEntry>> lexIter = lex.iterator();
+            while (lexIter.hasNext()) {
+                Entry<String, LexiconEntry> lee = lexIter.next();
+                EFLexiconEntry le = (EFLexiconEntry) lee.getValue();
+                le.docidOffset += docidBitOffset;
+                le.freqOffset  += freqBitOffset;
+                if (withPos)
+                    ((EFBlockLexiconEntry) le).posOffset += posBitOffset;
+                
+                key.set(lee.getKey());
+                key.write(dos);
+                le.write(dos);
+            }
+            dos.flush();
+        }
+        lex.close();
+        Files.delete(Paths.get(dstIndexPath + File.separator + inPrefix + LEXICON_SUFFIX));
     }
-}
\ No newline at end of file
+}
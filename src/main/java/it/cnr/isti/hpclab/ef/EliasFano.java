@@ -37,6 +37,17 @@ public final class EliasFano {
     /** Filename constant. */
     public static final String POS_EXTENSION  = ".positions";
 
+    /** Filename constant. */
+    public static final String BLOCKMAX_EXTENSION = ".blockmax";
+    /** Filename constant. */
+    public static final String BLOCKMAX_OFFSETS_EXTENSION = ".blockmax.offsets";
+
+    /** Filename constant. */
+    public static final String LEXICON_EXTENSION = ".eflexicon";
+
+    /** Filename constant. */
+    public static final String TERMSTATS_EXTENSION = ".termstats";
+
     /** Filename constant. */
     public static final String USUAL_EXTENSION = ".ef";
     /** Filename constant. */
@@ -57,4 +68,36 @@ public final class EliasFano {
      * store positional information.
      */
     public static final String HAS_POSITIONS = "hasPostions";
+
+    /**
+     * Constant used in the index properties file to specify if the index
+     * stores block-max metadata, i.e., the maximum freq and the minimum document 
+     * length of every quantum of postings.
+     */
+    public static final String HAS_BLOCKMAX = "hasBlockMax";
+
+    /**
+     * Constant used in the index properties file to specify the length
+     * of the shortest document, used to bound the scores of posting lists.
+     */
+    public static final String MIN_DOCUMENT_LENGTH = "minDocumentLength";
+
+    /**
+     * Constant used as system property to specify the total off-heap memory, 
+     * in bytes, that compression caches can borrow.
+     */
+    public static final String CACHE_BUDGET = "cacheBudget";
+
+    /**
+     * Constant used as Terrier property to specify the dynamic pruning algorithm
+     * used by {@link it.cnr.isti.hpclab.ef.matching.EFMatching}.
+     */
+    public static final String MATCHING_ALGORITHM = "ef.matching.algorithm";
+
+    /**
+     * Constant used as Terrier property to specify the comma-separated weighting models, 
+     * increasing with the freq and decreasing with the document length, whose scores 
+     * {@link it.cnr.isti.hpclab.ef.matching.EFMatching} can bound.
+     */
+    public static final String MONOTONE_MODELS = "ef.matching.monotone_models";
 }
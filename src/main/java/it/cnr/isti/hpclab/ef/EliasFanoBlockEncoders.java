@@ -5,25 +5,28 @@ import java.io.IOException;
 import org.terrier.structures.postings.BlockPosting;
 import org.terrier.structures.postings.IterablePosting;
 
+import it.cnr.isti.hpclab.ef.util.LongWordCache;
 import it.cnr.isti.hpclab.ef.util.SequenceEncoder;
 
 public class EliasFanoBlockEncoders extends EliasFanoEncoders 
 {
     // The sequence encoder to generate posting lists (positions)
     protected SequenceEncoder posAccumulator = null;
+    // The buffer of position gaps (32 bits each), spilling to disk, to be encoded once their upper bound is known
+    protected LongWordCache posBuffer = null;
 
 	// for posAccumulator initialization
-	protected long sumMaxPos = 0; // in the first pass, we need to compute the upper bound to encode positions
+	protected long sumMaxPos = 0; // while buffering positions, we compute their upper bound
 	protected int freqUb = 0;
 	protected int num = 0;
 	
-
 	public EliasFanoBlockEncoders(final int log2quantum) throws IOException
 	{
 		super(log2quantum);
 
 		// The sequence encoder to generate posting lists (positions)
 		posAccumulator = new SequenceEncoder(DEFAULT_CACHE_SIZE, log2quantum);
+		posBuffer = new LongWordCache(DEFAULT_CACHE_SIZE, "positions");
 	}
 	
 	@Override
@@ -34,8 +37,21 @@ public class EliasFanoBlockEncoders extends EliasFanoEncoders
 		
 		this.num = num;
 		this.freqUb = freqUb;
+		this.lastDocid = 0;
+		this.sumMaxPos = 0;
+		this.posBuffer.clear();
+		if (blockMax != null)
+			blockMax.init();
 	}
 	
+	/**
+	 * Encode docids, freqs and positions of a posting list, reading it once.
+	 * Position gaps are buffered until the whole list has been read, since 
+	 * the upper bound needed to encode them is the sum of the last positions in each posting.
+	 * 
+	 * @param p the posting list to encode
+	 * @throws IOException if something goes wrong
+	 */
 	@Override
 	public void add(final IterablePosting p) throws IOException
 	{
@@ -43,33 +59,46 @@ public class EliasFanoBlockEncoders extends EliasFanoEncoders
         long lexOccurrencies = 0;
         
         long lastDocid = 0;
+        int[] positions = null;
         while (p.next() != IterablePosting.END_OF_LIST) {
         	docidsAccumulator.add( p.getId() - lastDocid );
         	lastDocid = p.getId();
         	freqsAccumulator.add(p.getFrequency());
+        	if (blockMax != null)
+        		blockMax.add(p.getId(), p.getFrequency());
 
-        	sumMaxPos += ((BlockPosting)p).getPositions()[((BlockPosting)p).getPositions().length - 1];
+        	positions = ((BlockPosting)p).getPositions();
+        	posBuffer.append(1 + positions[0], Integer.SIZE);
+        	for (int i = 1; i < positions.length; i++)
+        		posBuffer.append(positions[i] - positions[i-1], Integer.SIZE);
+        	
+        	sumMaxPos += positions[positions.length - 1];
         	lexOccurrencies += p.getFrequency();
-        	posOccurrencies += ((BlockPosting)p).getPositions().length;
+        	posOccurrencies += positions.length;
 		}
         
         if (posOccurrencies != lexOccurrencies)
             throw new IllegalStateException("Lexicon term occurencies (" + lexOccurrencies + ") different form positions-counted occurrencies (" + posOccurrencies + ")");
+        
+        addPositions(posOccurrencies);
 	}
 
-	public void addPositions(final IterablePosting p) throws IOException
+	private void addPositions(final long posOccurrencies) throws IOException
 	{
-		assert sumMaxPos > 0 && num > 0 && freqUb > 0;
+		assert num > 0 && freqUb > 0;
 		
 		this.posAccumulator.init(freqUb, num + sumMaxPos, true, false, log2quantum );
 		
-        int[] positions = null;
-        while (p.next() != IterablePosting.END_OF_LIST) {
-            positions = ((BlockPosting)p).getPositions();
-            posAccumulator.add(1 + positions[0]);
-            for (int i = 1; i < positions.length; i++)
-                posAccumulator.add(positions[i] - positions[i-1]);
-        }
+		posBuffer.rewind();
+		long gaps = 0;
+		for (long i = 0; i < posOccurrencies; i++) {
+			if ((i & 1) == 0) {
+				gaps = posBuffer.readLong();
+				posAccumulator.add(gaps & 0xFFFFFFFFL);
+			} else {
+				posAccumulator.add(gaps >>> Integer.SIZE);
+			}
+		}
 	}
 
 	@Override
@@ -77,8 +106,12 @@ public class EliasFanoBlockEncoders extends EliasFanoEncoders
 	{
 		EliasFanoBlockWriters befWriters = (EliasFanoBlockWriters)efWriters;
 		
-		befWriters.docidBitOffset += docidsAccumulator.dump(befWriters.getDocidsWriter());
-		befWriters.freqBitOffset += freqsAccumulator.dump(befWriters.getFreqsWriter());
+		lastDumpedDocidBits = docidsAccumulator.dump(befWriters.getDocidsWriter());
+		lastDumpedFreqBits = freqsAccumulator.dump(befWriters.getFreqsWriter());
+		befWriters.docidBitOffset += lastDumpedDocidBits;
+		befWriters.freqBitOffset += lastDumpedFreqBits;
+		if (blockMax != null)
+			blockMax.dump();
 		
         // Firstly we write decoding limits info
 		befWriters.posBitOffset += befWriters.getPosWriter().writeGamma(posAccumulator.lowerBits());
@@ -92,5 +125,9 @@ public class EliasFanoBlockEncoders extends EliasFanoEncoders
 	{
 		docidsAccumulator.close();
 		freqsAccumulator.close();
+		posAccumulator.close();
+		posBuffer.close();
+		if (blockMax != null)
+			blockMax.close();
 	}
 }
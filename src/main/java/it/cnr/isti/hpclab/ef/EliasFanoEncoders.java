@@ -21,6 +21,12 @@ public class EliasFanoEncoders
 	@Getter protected long lastDumpedDocidBits;
 	@Getter protected long lastDumpedFreqBits;
 	
+	// The last docid added with add(int[], int[], int), for lists added in many blocks
+	protected long lastDocid;
+	
+	// The optional encoder of the block-max metadata
+	protected BlockMaxEncoder blockMax = null;
+	
 	public EliasFanoEncoders(final int log2quantum) throws IOException
 	{
 		assert log2quantum >= 3;
@@ -36,27 +42,67 @@ public class EliasFanoEncoders
 	{
 		this.docidsAccumulator.init(num, docidUb, false, true, log2quantum);
 		this.freqsAccumulator.init(num, freqUb, true, false, log2quantum);
+		this.lastDocid = 0;
+		if (blockMax != null)
+			blockMax.init();
+	}
+	
+	/**
+	 * Set an encoder receiving every added posting, to write the block-max metadata of the lists. It is closed with these encoders.
+	 * 
+	 * @param blockMax the block-max encoder
+	 */
+	public void blockMax(final BlockMaxEncoder blockMax)
+	{
+		this.blockMax = blockMax;
 	}
 	
 	public void add(final IterablePosting p) throws IOException
 	{
-        long lastDocid = 0;
+        long previousDocid = 0;
         while (p.next() != IterablePosting.END_OF_LIST) {
-            docidsAccumulator.add( p.getId() - lastDocid );
-            lastDocid = p.getId();
+            docidsAccumulator.add( p.getId() - previousDocid );
+            previousDocid = p.getId();
             freqsAccumulator.add(p.getFrequency());
+            if (blockMax != null)
+                blockMax.add(p.getId(), p.getFrequency());
         }
 	}
 
+	/**
+	 * Add a block of postings to the current list. A list can be added in many consecutive blocks.
+	 * 
+	 * @param docids the docids of the block
+	 * @param freqs the freqs of the block
+	 * @param count the number of postings in the block
+	 * @throws IOException if something goes wrong
+	 */
+	public void add(final int[] docids, final int[] freqs, final int count) throws IOException
+	{
+		for (int i = 0; i < count; i++) {
+			docidsAccumulator.add(docids[i] - lastDocid);
+			lastDocid = docids[i];
+			freqsAccumulator.add(freqs[i]);
+			if (blockMax != null)
+				blockMax.add(docids[i], freqs[i]);
+		}
+	}
+
 	public void dump(final EliasFanoWriters efWriters) throws IOException
 	{
-		efWriters.docidBitOffset += docidsAccumulator.dump(efWriters.getDocidsWriter());
-		efWriters.freqBitOffset += freqsAccumulator.dump(efWriters.getFreqsWriter());
+		lastDumpedDocidBits = docidsAccumulator.dump(efWriters.getDocidsWriter());
+		lastDumpedFreqBits = freqsAccumulator.dump(efWriters.getFreqsWriter());
+		efWriters.docidBitOffset += lastDumpedDocidBits;
+		efWriters.freqBitOffset += lastDumpedFreqBits;
+		if (blockMax != null)
+			blockMax.dump();
 	}
 	
 	public void close() throws IOException
 	{
 		docidsAccumulator.close();
 		freqsAccumulator.close();
+		if (blockMax != null)
+			blockMax.close();
 	}
 }
@@ -3,6 +3,9 @@ package it.cnr.isti.hpclab.ef;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import org.terrier.structures.FSOMapFileLexiconOutputStream;
 import org.terrier.structures.LexiconEntry;
@@ -26,22 +29,59 @@ public class EliasFanoWriters
 	@Getter protected long docidBitOffset;
 	@Getter protected long freqBitOffset;
 
-	@SuppressWarnings("resource")
 	public EliasFanoWriters(final String dstIndexPath) throws IOException
+	{
+		this(dstIndexPath, false);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param dstIndexPath the path and prefix of the destination index files
+	 * @param asynchronous whether the docids and freqs files are written asynchronously, with double buffering
+	 * @throws IOException if something goes wrong
+	 */
+	@SuppressWarnings("resource")
+	public EliasFanoWriters(final String dstIndexPath, final boolean asynchronous) throws IOException
 	{
 		this.lexOutputStream = new FSOMapFileLexiconOutputStream(
 				dstIndexPath + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION, 
 				new FixedSizeTextFactory(IndexUtil.DEFAULT_MAX_TERM_LENGTH));
 		
 		this.docidsWriter = new LongWordBitWriter(
-				new FileOutputStream(dstIndexPath + EliasFano.DOCID_EXTENSION).getChannel(), BYTE_ORDER);
+				new FileOutputStream(dstIndexPath + EliasFano.DOCID_EXTENSION).getChannel(), BYTE_ORDER, asynchronous);
 		this.freqsWriter = new LongWordBitWriter(
-				new FileOutputStream(dstIndexPath + EliasFano.FREQ_EXTENSION).getChannel(),	BYTE_ORDER);
+				new FileOutputStream(dstIndexPath + EliasFano.FREQ_EXTENSION).getChannel(),	BYTE_ORDER, asynchronous);
 	
 		this.docidBitOffset = 0l;
 		this.freqBitOffset = 0l;
 	}
 	
+	/**
+	 * Constructor for writers appending posting lists to existing, preallocated docids and freqs files, 
+	 * starting at the given (long aligned) bit offsets. No lexicon is written.
+	 * 
+	 * @param dstIndexPath the path and prefix of the destination index files
+	 * @param docidBitOffset the bit offset where to start writing docids
+	 * @param freqBitOffset the bit offset where to start writing freqs
+	 * @throws IOException if something goes wrong
+	 */
+	@SuppressWarnings("resource")
+	public EliasFanoWriters(final String dstIndexPath, final long docidBitOffset, final long freqBitOffset) throws IOException
+	{
+		if (docidBitOffset % Long.SIZE != 0 || freqBitOffset % Long.SIZE != 0)
+			throw new IllegalArgumentException("Bit offsets must be multiple of " + Long.SIZE);
+		this.lexOutputStream = null;
+		
+		this.docidsWriter = new LongWordBitWriter(
+				FileChannel.open(Paths.get(dstIndexPath + EliasFano.DOCID_EXTENSION), StandardOpenOption.WRITE).position(docidBitOffset / Byte.SIZE), BYTE_ORDER);
+		this.freqsWriter = new LongWordBitWriter(
+				FileChannel.open(Paths.get(dstIndexPath + EliasFano.FREQ_EXTENSION), StandardOpenOption.WRITE).position(freqBitOffset / Byte.SIZE), BYTE_ORDER);
+		
+		this.docidBitOffset = docidBitOffset;
+		this.freqBitOffset = freqBitOffset;
+	}
+	
 	public void writeLexiconEntry(final String key, final LexiconEntry le) throws IOException
 	{
 		lexOutputStream.writeNextEntry(key, le);
@@ -51,6 +91,7 @@ public class EliasFanoWriters
 	{
 		freqsWriter.close();
 		docidsWriter.close();
-		lexOutputStream.close();
+		if (lexOutputStream != null)
+			lexOutputStream.close();
 	}
 }
@@ -20,22 +20,32 @@
 package it.cnr.isti.hpclab.ef;
 
 import it.cnr.isti.hpclab.ef.structures.EFDocumentIndex;
+import it.cnr.isti.hpclab.ef.structures.EFLexicon;
+import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+import it.cnr.isti.hpclab.ef.structures.EFTermStatistics;
+import it.cnr.isti.hpclab.ef.util.CacheBudget;
 import it.cnr.isti.hpclab.ef.util.SynchronizedProgressBar;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToLongFunction;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.hadoop.io.Text;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ParserProperties;
@@ -44,19 +54,38 @@ import org.slf4j.LoggerFactory;
 import org.terrier.Version;
 import org.terrier.applications.CLITool.CLIParsedCLITool;
 import org.terrier.querying.IndexRef;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.FSOMapFileLexiconOutputStream;
 import org.terrier.structures.IndexFactory;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.collections.FSOrderedMapFile;
 import org.terrier.structures.indexing.LexiconBuilder;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
 import org.terrier.utility.ApplicationSetup;
 
-public class Generator 
+public class Generator implements Closeable
 {
     protected static Logger LOGGER = LoggerFactory.getLogger(Generator.class);
     //protected static ProgressBar pbMap;
     protected static SynchronizedProgressBar spb;
     
+    /** The number of chunks per thread to generate, when the chunk size is not specified. */
+    public static final int DEFAULT_CHUNKS_PER_THREAD = 16;
+    
+    /** 
+     * The source index, opened once and shared by all compression threads, that read it concurrently with their own lexicon 
+     * and posting iterators. This assumes that its posting index supports concurrent iterators, as Terrier's bit posting indexes,
+     * also shared by the threads of parallel retrieval, do: every posting iterator decodes a private buffer read from the shared file.
+     */
+    private final IndexOnDisk srcIndex;
     private final int numTerms;
+    private final long numPointers;
+    private final long numTokens;
     
     public static class Command extends CLIParsedCLITool
     {
@@ -65,6 +94,15 @@ public class Generator
             Options opts = super.getOptions();
             opts.addOption("p", "parallelism", true, "parallelism degree (number of threads)");
             opts.addOption("b", "blocks", false, "use positions in new index");
+            opts.addOption("c", "chunksize", true, "number of postings (positions if -b is used) per compression chunk");
+            opts.addOption("m", "memory", true, "off-heap memory budget in MB for compression caches, shared by all threads");
+            opts.addOption("l", "pipeline", false, "decode, encode and write posting lists concurrently in every thread (not with -b or -w)");
+            opts.addOption("r", "resume", false, "resume an interrupted compression, reusing its completed chunks");
+            opts.addOption("w", "inplace", false, "write posting lists in place at precomputed offsets, without merging (not with -b)");
+            opts.addOption("x", "blockmax", false, "write the maximum freq and minimum document length of every quantum of postings, for block-max query processing");
+            opts.addOption("e", "eflexicon", false, "write a memory-resident lexicon with constant time term lookups, and use it as the index lexicon");
+            opts.addOption("t", "termstats", false, "write the statistics and offsets of every term in a memory-mapped array indexed by termid");
+            opts.addOption("n", "inline", false, "inline the posting lists of at most 2 postings in their lexicon entries (not with -b)");
             return opts;
         }
 
@@ -74,6 +112,17 @@ public class Generator
             if (line.hasOption("p"))
                 args.parallelism = line.getOptionValue("p");
             args.withPos = line.hasOption("b");
+            if (line.hasOption("c"))
+                args.chunkSize = line.getOptionValue("c");
+            args.inPlace = line.hasOption("w");
+            args.pipelined = line.hasOption("l");
+            args.resume = line.hasOption("r");
+            args.blockMax = line.hasOption("x");
+            args.efLexicon = line.hasOption("e");
+            args.termStats = line.hasOption("t");
+            args.inline = line.hasOption("n");
+            if (line.hasOption("m"))
+                args.memory = line.getOptionValue("m");
             
             args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX + ".properties";
             
@@ -130,6 +179,33 @@ public class Generator
         
         @Option(name = "-s", required = false, usage = "Create soft links to meta index files")
         public boolean softLink = true;
+        
+        @Option(name = "-c", metaVar = "[Number]", required = false, usage = "Number of postings (positions if -b is used) per compression chunk")
+        public String chunkSize;
+        
+        @Option(name = "-m", metaVar = "[Number]", required = false, usage = "Off-heap memory budget in MB for compression caches, shared by all threads")
+        public String memory;
+        
+        @Option(name = "-w", required = false, usage = "Write posting lists in place at precomputed offsets, without merging (not with -b)")
+        public boolean inPlace = false;
+        
+        @Option(name = "-r", required = false, usage = "Resume an interrupted compression, reusing its completed chunks")
+        public boolean resume = false;
+        
+        @Option(name = "-l", required = false, usage = "Decode, encode and write posting lists concurrently in every thread (not with -b or -w)")
+        public boolean pipelined = false;
+        
+        @Option(name = "-x", required = false, usage = "Write the maximum freq and minimum document length of every quantum of postings, for block-max query processing")
+        public boolean blockMax = false;
+        
+        @Option(name = "-e", required = false, usage = "Write a memory-resident lexicon with constant time term lookups, and use it as the index lexicon")
+        public boolean efLexicon = false;
+        
+        @Option(name = "-t", required = false, usage = "Write the statistics and offsets of every term in a memory-mapped array indexed by termid")
+        public boolean termStats = false;
+        
+        @Option(name = "-n", required = false, usage = "Inline the posting lists of at most 2 postings in their lexicon entries (not with -b)")
+        public boolean inline = false;
     }
     
     public static void main(String[] argv)
@@ -165,34 +241,82 @@ public class Generator
                 
         LOGGER.info("Started " + Generator.class.getSimpleName() + " with parallelism " + numThreads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available)");
         LOGGER.warn("Multi-threaded Elias-Fano compression is experimental - caution advised due to threads competing for available memory! YMMV.");
+        
+        if (args.memory != null)
+            CacheBudget.set(Long.parseLong(args.memory) * 1024 * 1024);
+        LOGGER.info("Compression caches share " + CacheBudget.total() / (1024 * 1024) + " MB of off-heap memory, spilling to disk beyond it");
 
         long starttime = System.currentTimeMillis();
         
-        try {
-            Generator generator = new Generator(refSrc, refDst);
+        try (Generator generator = new Generator(refSrc, refDst)) {
+            
+            final boolean inPlace = args.inPlace && !args.withPos;
+            if (args.inPlace && args.withPos)
+                LOGGER.warn("In-place compression does not support positions, compressed chunks will be merged");
+            final boolean pipelined = args.pipelined && !args.withPos && !inPlace;
+            if (args.pipelined && !pipelined)
+                LOGGER.warn("Pipelined compression does not support positions or in-place compression, it will not be used");
+            final boolean inline = args.inline && !args.withPos;
+            if (args.inline && !inline)
+                LOGGER.warn("Inlined posting lists do not support positions, posting lists will not be inlined");
+            
+            // Compressed chunks are checkpointed, unless written in place, so that an interrupted compression can be resumed
+            if (args.resume && inPlace)
+                LOGGER.warn("In-place compression cannot be resumed, it will start from scratch");
+            final long chunkSize = (args.chunkSize != null) ? Long.parseLong(args.chunkSize) : 0;
+            final Checkpoint checkpoint = (!inPlace) 
+                ? new Checkpoint(args.path, args.prefix, args.index, args.withPos, chunkSize, Integer.parseInt(System.getProperty(EliasFano.LOG2QUANTUM, "8")), args.blockMax, args.resume) 
+                : null;
+            
+            TermPartition[] partitions = (checkpoint != null) ? checkpoint.load() : null;
+            if (partitions != null) {
+                LOGGER.info("Resuming compression of " + partitions.length + " chunks saved in " + checkpoint);
+            } else {
+                if (args.resume && checkpoint != null)
+                    LOGGER.warn("No compression to resume found in " + checkpoint + ", it will start from scratch");
+                final int numChunks = generator.numChunks(numThreads, args.withPos, chunkSize);
+                partitions = generator.partition(numChunks, args.withPos);
+                if (checkpoint != null)
+                    checkpoint.save(partitions);
+            }
             
-            TermPartition[] partitions = generator.partition(numThreads);
-            CompressorMapper mapper = new CompressorMapper(refSrc, refDst, args.withPos);
+            if (inPlace) {
+                // The final offset of every posting list is computed in advance, so chunks are written directly in the final files
+                generator.layout(partitions, refDst);
+                System.out.println("Posting list offsets computed after " + (System.currentTimeMillis() - starttime)/1000 + " seconds");
+            }
+            if (args.blockMax) {
+                // The first block of every posting list is computed in advance, so chunks write their blocks directly in the final file
+                final long numBlocks = generator.blockMaxLayout(refDst);
+                LOGGER.info("Block-max metadata of " + numBlocks + " blocks will be written");
+            }
+            CompressorMapper mapper = new CompressorMapper(generator.srcIndex, refDst, args.withPos, inPlace, pipelined, args.blockMax);
+            ChunkScheduler scheduler = new ChunkScheduler(mapper, numThreads, checkpoint);
 
-            // First we perform reassignment in parallel
-            System.out.println("Parallel bitfile compression starting...");
+            // First we perform reassignment in parallel, threads claiming chunks on demand
+            System.out.println("Parallel bitfile compression of " + partitions.length + " chunks starting...");
             spb = SynchronizedProgressBar.create("EF compression", generator.numTerms);
-            TermPartition[] tmpPartitions = Arrays.stream(partitions).parallel().map(mapper).sorted().toArray(TermPartition[]::new);
+            TermPartition[] tmpPartitions = scheduler.run(partitions);
             spb.stop();
             
             long compresstime = System.currentTimeMillis();
             System.out.println("Parallel bitfile compression completed after " + (compresstime - starttime)/1000 + " seconds");
+            report(tmpPartitions);
 
-            System.out.println("Sequential merging starting...");
-            CompressorReducer merger = new CompressorReducer(refDst, args.withPos);
-            // Then we perform merging sequentially in a PRECISE order (if the order is wrong, everything is wrong)
-            TermPartition last_partition = Arrays.stream(tmpPartitions).reduce(merger).get();
-
-            long mergetime = System.currentTimeMillis();
-            System.out.println("Sequential merging completed after " + (mergetime - compresstime)/1000 + " seconds");
-            
-            // Eventually, we rename the last merge
-            IndexUtil.renameIndex(args.path, last_partition.prefix(), args.path, args.prefix);
+            long mergetime = compresstime;
+            if (!inPlace) {
+                System.out.println("Parallel merging starting...");
+                CompressorReducer merger = new CompressorReducer(refDst, args.withPos);
+                // Then we copy every partition at its final offset, in a PRECISE order (if the order is wrong, everything is wrong)
+                TermPartition last_partition = merger.merge(tmpPartitions);
+                checkpoint.clear(tmpPartitions);
+    
+                mergetime = System.currentTimeMillis();
+                System.out.println("Parallel merging completed after " + (mergetime - compresstime)/1000 + " seconds");
+                
+                // Eventually, we rename the last merge
+                IndexUtil.renameIndex(args.path, last_partition.prefix(), args.path, args.prefix);
+            }
                         
             IndexOnDisk dstIndex = IndexOnDisk.createNewIndex(args.path, args.prefix);
             dstIndex.close();
@@ -201,7 +325,7 @@ public class Generator
                 throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
             }
             
-            IndexOnDisk srcIndex = (IndexOnDisk) IndexFactory.of(refSrc);
+            IndexOnDisk srcIndex = generator.srcIndex;
             EFDocumentIndex.write((org.terrier.structures.DocumentIndex) srcIndex.getDocumentIndex(), 
                                   args.path + File.separator + args.prefix + ".sizes");
             // IndexUtil.copyStructure(src_index, dst_index, "document", "document");
@@ -228,14 +352,28 @@ public class Generator
             long copytime = System.currentTimeMillis();
             System.out.println("Copying other index structures completed after " + (copytime - mergetime)/1000 + " seconds");
             
-            writeProperties(srcIndex, dstIndex, args.withPos);
+            writeProperties(srcIndex, dstIndex, args.withPos, args.blockMax);
             LexiconBuilder.optimise(dstIndex, "lexicon");
+            if (inline) {
+                // Posting lists are inlined first, so the other lexicon structures are written from the inlined entries
+                final int numInlined = inlinePostings(dstIndex);
+                LOGGER.info(numInlined + " posting lists inlined in their lexicon entries");
+            }
+            if (args.termStats) {
+                EFTermStatistics.write(dstIndex);
+                dstIndex.addIndexStructure("termstats", EFTermStatistics.class.getName(), "org.terrier.structures.IndexOnDisk", "index");
+                dstIndex.flush();
+            }
+            if (args.efLexicon) {
+                // The lexicon file is written from the optimised lexicon, that is kept for seeking by termid
+                EFLexicon.write(dstIndex);
+                writeLexiconProperties(dstIndex);
+            }
 
             long opttime = System.currentTimeMillis();
             System.out.println("Lexicon optimization completed after " + (opttime - copytime)/1000 + " seconds");
 
             dstIndex.close();
-            srcIndex.close();
             
             System.out.println("Parallel Elias-Fano compression completed after " + (opttime - starttime)/1000 + " seconds, using "  + numThreads + " threads");
             System.out.println("Final index is at " + args.path + " with prefix " + args.prefix);
@@ -246,7 +384,7 @@ public class Generator
         }
     }
     
-    private static void writeProperties(IndexOnDisk srcIndex, IndexOnDisk dstIndex, boolean withPos) throws IOException 
+    private static void writeProperties(IndexOnDisk srcIndex, IndexOnDisk dstIndex, boolean withPos, boolean blockMax) throws IOException 
     {    
         for (String property : new String[] {
                 "index.meta-inputstream.class",
@@ -277,6 +415,7 @@ public class Generator
         
         dstIndex.setIndexProperty(EliasFano.LOG2QUANTUM, Integer.toString( Integer.parseInt(System.getProperty(EliasFano.LOG2QUANTUM, "8"))));
         dstIndex.setIndexProperty(EliasFano.BYTEORDER,   ByteOrder.nativeOrder().toString());
+        dstIndex.setIndexProperty(EliasFano.MIN_DOCUMENT_LENGTH, Integer.toString(minDocumentLength(srcIndex)));
         
         dstIndex.setIndexProperty("max.term.length",Integer.toString(ApplicationSetup.MAX_TERM_LENGTH));
         
@@ -321,19 +460,101 @@ public class Generator
         if (withPos) {
             dstIndex.setIndexProperty(EliasFano.HAS_POSITIONS, "true");
         }
+        
+        if (blockMax) {
+            dstIndex.setIndexProperty(EliasFano.HAS_BLOCKMAX, "true");
+            dstIndex.setIndexProperty("index.blockmax.class",            "it.cnr.isti.hpclab.ef.structures.EFBlockMaxIndex");
+            dstIndex.setIndexProperty("index.blockmax.parameter_types",  "org.terrier.structures.IndexOnDisk");
+            dstIndex.setIndexProperty("index.blockmax.parameter_values", "index");
+        }
+        dstIndex.flush();
+    }
+    
+    /**
+     * Return the length of the shortest document of an index, or 0 if the index has no documents.
+     */
+    private static int minDocumentLength(IndexOnDisk index) throws IOException
+    {
+        final DocumentIndex doi = index.getDocumentIndex();
+        final int numDocs = doi.getNumberOfDocuments();
+        int min = (numDocs > 0) ? Integer.MAX_VALUE : 0;
+        for (int docid = 0; docid < numDocs; docid++)
+            min = Math.min(min, doi.getDocumentLength(docid));
+        return min;
+    }
+    
+    /**
+     * Inline the posting lists of at most {@link EFLexiconEntry#MAX_INLINE_ENTRIES} postings in their entries,
+     * rewriting the lexicon file through a lexicon output stream, with the key factory of the index lexicon.
+     * The inlined posting lists are left in the docid and freq files, but they are not accessed anymore.
+     * 
+     * @param dstIndex the Elias-Fano index, without positions
+     * @return the number of inlined posting lists
+     * @throws IOException if something goes wrong
+     */
+    private static int inlinePostings(final IndexOnDisk dstIndex) throws IOException
+    {
+        final PostingIndex<?> invIndex = dstIndex.getInvertedIndex();
+        final int[] docids = new int[EFLexiconEntry.MAX_INLINE_ENTRIES];
+        final int[] freqs  = new int[EFLexiconEntry.MAX_INLINE_ENTRIES];
+        
+        final Path lexiconFile = Paths.get(dstIndex.getPath(), dstIndex.getPrefix() + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION);
+        final Path inlinedFile = Paths.get(dstIndex.getPath(), dstIndex.getPrefix() + ".lexicon-inline" + FSOrderedMapFile.USUAL_EXTENSION);
+        @SuppressWarnings("unchecked")
+        final FixedSizeWriteableFactory<Text> keyFactory = (FixedSizeWriteableFactory<Text>) dstIndex.getIndexStructure("lexicon-keyfactory");
+        
+        int numInlined = 0;
+        @SuppressWarnings("unchecked")
+        final Iterator<Entry<String, LexiconEntry>> lexIter = (Iterator<Entry<String, LexiconEntry>>) dstIndex.getIndexStructureInputStream("lexicon");
+        final LexiconOutputStream<String> lexOutputStream = new FSOMapFileLexiconOutputStream(inlinedFile.toString(), keyFactory);
+        try {
+            while (lexIter.hasNext()) {
+                final Entry<String, LexiconEntry> e = lexIter.next();
+                final EFLexiconEntry le = (EFLexiconEntry) e.getValue();
+                if (le.getDocumentFrequency() > 0 && le.getDocumentFrequency() <= EFLexiconEntry.MAX_INLINE_ENTRIES) {
+                    final IterablePosting p = invIndex.getPostings(le);
+                    for (int i = 0; p.next() != IterablePosting.END_OF_LIST; i++) {
+                        docids[i] = p.getId();
+                        freqs[i] = p.getFrequency();
+                    }
+                    p.close();
+                    le.setInlinePostings(docids, freqs);
+                    numInlined++;
+                }
+                lexOutputStream.writeNextEntry(e.getKey(), le);
+            }
+        } finally {
+            lexOutputStream.close();
+            if (lexIter instanceof Closeable)
+                ((Closeable) lexIter).close();
+        }
+        Files.move(inlinedFile, lexiconFile, StandardCopyOption.REPLACE_EXISTING);
+        return numInlined;
+    }
+    
+    private static void writeLexiconProperties(IndexOnDisk dstIndex) throws IOException
+    {
+        dstIndex.setIndexProperty("index.lexicon.class",            "it.cnr.isti.hpclab.ef.structures.EFLexicon");
+        dstIndex.setIndexProperty("index.lexicon.parameter_types",  "java.lang.String,org.terrier.structures.IndexOnDisk");
+        dstIndex.setIndexProperty("index.lexicon.parameter_values", "structureName,index");
+        
+        dstIndex.setIndexProperty("index.lexicon-inputstream.class",            "it.cnr.isti.hpclab.ef.structures.EFLexicon$InputIterator");
+        dstIndex.setIndexProperty("index.lexicon-inputstream.parameter_types",  "java.lang.String,org.terrier.structures.IndexOnDisk");
+        dstIndex.setIndexProperty("index.lexicon-inputstream.parameter_values", "structureName,index");
         dstIndex.flush();
     }
     
     public Generator(final IndexRef srcRef, final IndexRef dstRef) throws Exception 
     {    
-        // Load input index
-        IndexOnDisk srcIndex = (IndexOnDisk) IndexFactory.of(srcRef);
+        // Load input index, it will be closed with the generator
+        this.srcIndex = (IndexOnDisk) IndexFactory.of(srcRef);
 
         if (IndexOnDisk.getLastIndexLoadError() != null) {
             throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
         }
         this.numTerms = srcIndex.getCollectionStatistics().getNumberOfUniqueTerms();
-        srcIndex.close();
+        this.numPointers = srcIndex.getCollectionStatistics().getNumberOfPointers();
+        this.numTokens = srcIndex.getCollectionStatistics().getNumberOfTokens();
         LOGGER.info("Input index contains " + this.numTerms + " terms");
         
         // check dst index does not exist
@@ -343,12 +564,111 @@ public class Generator
             LOGGER.info("Index directory " + dstIndexPath + " does not exist. It is being created.");
             Files.createDirectories(Paths.get(dstIndexPath));
         } else if (Files.exists(Paths.get(dstRef.toString()))) {
+            srcIndex.close();
             throw new IllegalArgumentException("Index directory " + dstIndexPath + " already contains an index with the given prefix");
         }        
     }
 
+    /**
+     * Close the source index.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        srcIndex.close();
+    }
+    
     public TermPartition[] partition(final int numThreads)
     {
         return TermPartition.split(numTerms, numThreads);
     }
+    
+    /**
+     * Split the source index terms into partitions having the same compression cost, estimated from the lexicon statistics.
+     * The cost of a term is the number of its postings or, if positions are compressed, the number of its occurrences.
+     * 
+     * @param numThreads the number of partitions to generate
+     * @param withPos whether positions will be compressed
+     * @return the partitions, each one with its estimated cost
+     * @throws IOException if something goes wrong while reading the source lexicon
+     */
+    public TermPartition[] partition(final int numThreads, final boolean withPos) throws IOException
+    {
+        final ToLongFunction<LexiconEntry> weight = (withPos) ? LexiconEntry::getFrequency : LexiconEntry::getDocumentFrequency;
+        final long totalWeight = (withPos) ? numTokens : numPointers;
+        
+        Iterator<Entry<String, LexiconEntry>> lexIter = srcIndex.getLexicon().iterator();
+        TermPartition[] partitions = TermPartition.split(numTerms, numThreads, lexIter, weight, totalWeight);
+        if (lexIter instanceof Closeable)
+            ((Closeable) lexIter).close();
+        
+        for (TermPartition partition: partitions)
+            LOGGER.debug("Partition " + partition + " has estimated cost " + partition.cost());
+        return partitions;
+    }
+    
+    /**
+     * Compute the final offsets of all docid and freq lists, write the final lexicon and preallocate the final files,
+     * to compress the given partitions in place with an {@link InPlaceCompressor}.
+     * 
+     * @param partitions the partitions to compress, in termid order
+     * @param dstRef destination index reference
+     * @throws IOException if something goes wrong
+     */
+    public void layout(final TermPartition[] partitions, final IndexRef dstRef) throws IOException
+    {
+        InPlaceCompressor.layout(srcIndex, dstRef, partitions, Integer.parseInt(System.getProperty(EliasFano.LOG2QUANTUM, "8")));
+    }
+    
+    /**
+     * Compute the first block of every posting list, write the block-max offsets file and preallocate the block-max file, 
+     * so that compressors can write the block-max metadata of their partitions directly in the final file.
+     * 
+     * @param dstRef destination index reference
+     * @return the total number of blocks
+     * @throws IOException if something goes wrong
+     */
+    public long blockMaxLayout(final IndexRef dstRef) throws IOException
+    {
+        return BlockMaxEncoder.layout(srcIndex, dstRef, Integer.parseInt(System.getProperty(EliasFano.LOG2QUANTUM, "8")));
+    }
+    
+    /**
+     * Compute the number of chunks to compress. If the chunk size is not given, each thread will compress
+     * {@link #DEFAULT_CHUNKS_PER_THREAD} chunks on average (a single chunk is used with one thread).
+     * 
+     * @param numThreads the number of compression threads
+     * @param withPos whether positions will be compressed
+     * @param chunkSize the number of postings (or positions) per chunk, 0 for the default
+     * @return the number of chunks
+     */
+    public int numChunks(final int numThreads, final boolean withPos, final long chunkSize)
+    {
+        if (chunkSize <= 0)
+            return (numThreads == 1) ? 1 : numThreads * DEFAULT_CHUNKS_PER_THREAD;
+        
+        final long totalWeight = (withPos) ? numTokens : numPointers;
+        return (int) Math.max(1, Math.min(numTerms, (totalWeight + chunkSize - 1) / chunkSize));
+    }
+    
+    /**
+     * Log the estimated and the actual cost of each chunk, as a fraction of the total, together with the ratio 
+     * between the time of the slowest chunk and the average chunk time. 
+     * 
+     * @param partitions the compressed chunks
+     */
+    private static void report(final TermPartition[] partitions)
+    {
+        final long totalCost = Arrays.stream(partitions).mapToLong(TermPartition::cost).sum();
+        final long totalTime = Arrays.stream(partitions).mapToLong(TermPartition::time).sum();
+        final long maxTime   = Arrays.stream(partitions).mapToLong(TermPartition::time).max().orElse(0);
+        
+        for (TermPartition partition: partitions)
+            LOGGER.debug(String.format("Chunk %d [%d,%d): estimated cost %d (%.1f%%), actual time %d ms (%.1f%%)", 
+                         partition.id(), partition.begin(), partition.end(), 
+                         partition.cost(), 100.0 * partition.cost() / Math.max(1, totalCost),
+                         partition.time(), 100.0 * partition.time() / Math.max(1, totalTime)));
+        LOGGER.info(String.format("Compressed %d chunks in %d ms of total thread time, slowest chunk %d ms (%.2f times the average)", 
+                    partitions.length, totalTime, maxTime, (double) maxTime * partitions.length / Math.max(1, totalTime)));
+    }
 }
\ No newline at end of file
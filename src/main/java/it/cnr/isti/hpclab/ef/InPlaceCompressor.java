@@ -0,0 +1,171 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.apache.commons.io.FilenameUtils;
+import org.terrier.querying.IndexRef;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.FSOMapFileLexiconOutputStream;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.structures.collections.FSOrderedMapFile;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.seralization.FixedSizeTextFactory;
+
+import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+import it.cnr.isti.hpclab.ef.util.EFUtils;
+import it.cnr.isti.hpclab.ef.util.IndexUtil;
+import it.cnr.isti.hpclab.ef.util.SeekableLexiconIterator;
+import it.cnr.isti.hpclab.ef.util.SynchronizedProgressBar;
+
+/**
+ * This class compresses a partition of terms directly into the final docids and freqs files, 
+ * at the offsets computed in advance by {@link #layout(Index, IndexRef, TermPartition[], int)}.
+ * Since the exact size of every Elias-Fano docid and freq list depends on the lexicon statistics only,
+ * no temporary partition files and no merging are needed. Positions are not supported.
+ */
+public class InPlaceCompressor extends BasicCompressor
+{
+    /**
+     * Constructor.
+     * 
+     * @param srcIndex source index
+     * @param dstRef destination index reference
+     */
+    public InPlaceCompressor(final Index srcIndex, final IndexRef dstRef)
+    {
+        super(srcIndex, dstRef);
+    }
+    
+    /**
+     * Compute the final bit offsets of all posting lists from the source lexicon statistics, write the final lexicon
+     * and preallocate the final docids and freqs files. Every partition starts on a long word boundary and takes as many 
+     * long words as a {@link it.cnr.isti.hpclab.ef.util.LongWordBitWriter} writes for its lists, trailing long word included, 
+     * so the resulting files are the same obtained by merging the compressed partitions.
+     * The prefix and the starting offsets of every partition are set accordingly.
+     * 
+     * @param srcIndex source index, with aligned termids
+     * @param dstRef destination index reference
+     * @param partitions the partitions to compress, in termid order
+     * @param log2quantum log2 of quantum
+     * @throws IOException if something goes wrong
+     */
+    public static void layout(final Index srcIndex, final IndexRef dstRef, final TermPartition[] partitions, final int log2quantum) throws IOException
+    {
+        final String dstPrefix = FilenameUtils.getBaseName(dstRef.toString());
+        final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString()) + File.separator + dstPrefix;
+        final int numDocs = srcIndex.getCollectionStatistics().getNumberOfDocuments();
+        
+        LexiconOutputStream<String> lexOutputStream = new FSOMapFileLexiconOutputStream(
+                dstIndexPath + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION, 
+                new FixedSizeTextFactory(IndexUtil.DEFAULT_MAX_TERM_LENGTH));
+        Iterator<Entry<String, LexiconEntry>> lexIter = srcIndex.getLexicon().iterator();
+        
+        long docidBitOffset = 0l;
+        long freqBitOffset = 0l;
+        for (TermPartition partition: partitions) {
+            partition.prefix(dstPrefix);
+            partition.docidOffset(docidBitOffset);
+            partition.freqOffset(freqBitOffset);
+            
+            for (int termid = partition.begin(); termid < partition.end(); ++termid) {
+                Entry<String, LexiconEntry> lee = lexIter.next();
+                LexiconEntry le = lee.getValue();
+                if (le.getTermId() != termid)
+                    throw new IllegalStateException("Source lexicon termids are not aligned: found termid " + le.getTermId() + " instead of " + termid);
+                
+                lexOutputStream.writeNextEntry(lee.getKey(), new EFLexiconEntry(le.getTermId(), le.getDocumentFrequency(), le.getFrequency(), le.getMaxFrequencyInDocuments(), docidBitOffset, freqBitOffset));
+                docidBitOffset += EFUtils.docidsBits(le.getDocumentFrequency(), numDocs, log2quantum);
+                freqBitOffset  += EFUtils.freqsBits(le.getDocumentFrequency(), le.getFrequency(), log2quantum);
+            }
+            // closing a writer flushes the last partial long word and always writes a trailing one
+            docidBitOffset = (docidBitOffset / Long.SIZE + 1) * Long.SIZE;
+            freqBitOffset  = (freqBitOffset  / Long.SIZE + 1) * Long.SIZE;
+        }
+        if (lexIter instanceof Closeable)
+            ((Closeable) lexIter).close();
+        lexOutputStream.close();
+        
+        preallocate(dstIndexPath + EliasFano.DOCID_EXTENSION, docidBitOffset / Byte.SIZE);
+        preallocate(dstIndexPath + EliasFano.FREQ_EXTENSION,  freqBitOffset  / Byte.SIZE);
+    }
+    
+    private static void preallocate(final String filename, final long length) throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.setLength(length);
+        }
+    }
+    
+    @Override
+    public void compress(final TermPartition terms) throws IOException
+    {
+        // opening src index lexicon iterator at the begin termid (seeking if possible, scanning otherwise)
+        Iterator<Entry<String, LexiconEntry>> lexIter = SeekableLexiconIterator.from(srcIndex, terms.begin());
+        Entry<String, LexiconEntry> lee = advanceLexiconIteratorTo(terms.begin(), lexIter);
+
+        // writers, positioned at the partition offsets in the final files
+        final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString()) + File.separator + terms.prefix();
+        EliasFanoWriters efWriters = new EliasFanoWriters(dstIndexPath, terms.docidOffset(), terms.freqOffset());
+        EliasFanoEncoders efEncoders = new EliasFanoEncoders(LOG2QUANTUM);
+        if (blockMax)
+            efEncoders.blockMax(BlockMaxEncoder.open(srcIndex, dstRef, terms.begin(), LOG2QUANTUM));
+        
+        LexiconEntry le = null;
+        IterablePosting p = null;        
+        while (!stop(lee, terms.end())) {
+            le = lee.getValue();
+            
+            efEncoders.init(le.getDocumentFrequency(), numDocs, le.getFrequency());
+            
+            p = srcIndex.getInvertedIndex().getPostings((BitIndexPointer)lee.getValue());
+            efEncoders.add(p);
+            p.close();
+
+            efEncoders.dump(efWriters);
+            // a list longer than expected would overwrite the following one
+            check(lee.getKey(), "docid", efEncoders.getLastDumpedDocidBits(), EFUtils.docidsBits(le.getDocumentFrequency(), numDocs, LOG2QUANTUM));
+            check(lee.getKey(), "freq",  efEncoders.getLastDumpedFreqBits(),  EFUtils.freqsBits(le.getDocumentFrequency(), le.getFrequency(), LOG2QUANTUM));
+            
+            lee = lexIter.hasNext() ? lexIter.next() : null;
+            SynchronizedProgressBar.getInstance().step();
+        } 
+                
+        efEncoders.close();
+        efWriters.close();
+        if (lexIter instanceof Closeable)
+            ((Closeable) lexIter).close();
+    }
+    
+    private static void check(final String term, final String list, final long actual, final long expected)
+    {
+        if (actual != expected)
+            throw new IllegalStateException("The " + list + " list of term " + term + " takes " + actual + " bits instead of the expected " + expected);
+    }
+}
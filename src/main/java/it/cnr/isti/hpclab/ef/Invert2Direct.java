@@ -48,12 +48,16 @@ import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
 
+import it.cnr.isti.hpclab.ef.structures.EFBasicIterablePosting;
 import it.cnr.isti.hpclab.ef.structures.EFDirectIndex;
 
 public class Invert2Direct 
 {
     private static Logger LOGGER = Logger.getLogger( Invert2Direct.class );
     
+    /** The number of Elias-Fano postings decoded at once while traversing the inverted file. */
+    protected static final int BATCH_SIZE = 256;
+    
     public static final class Posting
     {
         public final int docid;
@@ -220,6 +224,8 @@ public class Invert2Direct
         int  termId;
         
         final int lastDocid = firstDocid + countDocuments - 1;
+        final int[] docids = new int[BATCH_SIZE];
+        final int[] freqs  = new int[BATCH_SIZE];
 
         while (iiis.hasNext()) {
             
@@ -227,15 +233,42 @@ public class Invert2Direct
             termId = ((LexiconEntry) iiis.getCurrentPointer()).getTermId();
 
             int docid = ip.next(firstDocid);
-            while (docid <= lastDocid && docid != IterablePosting.EOL) {
-                numTokens += ip.getFrequency();
-                directPostings[docid - firstDocid].add(new Posting(termId, ip.getFrequency()));
-                docid = ip.next();
-            }
+            if (docid > lastDocid || docid == IterablePosting.EOL)
+                continue;
+            docids[0] = docid;
+            freqs[0] = ip.getFrequency();
+            
+            // the postings after the first one are read in batches, the ones beyond the range are discarded
+            int count = 1;
+            batches:
+            do {
+                for (int i = 0; i < count; i++) {
+                    if (docids[i] > lastDocid)
+                        break batches;
+                    numTokens += freqs[i];
+                    directPostings[docids[i] - firstDocid].add(new Posting(termId, freqs[i]));
+                }
+            } while ((count = nextBatch(ip, docids, freqs)) > 0);
         }
         return numTokens;
     }
     
+    /**
+     * Reads the next postings of a posting list into the given arrays, decoding them in bulk for Elias-Fano posting lists.
+     * 
+     * @return the number of postings read, 0 at the end of the posting list
+     */
+    private static int nextBatch(final IterablePosting ip, final int[] docids, final int[] freqs) throws IOException
+    {
+        if (ip instanceof EFBasicIterablePosting)
+            return ((EFBasicIterablePosting) ip).nextBatch(docids, freqs);
+        
+        int count = 0;
+        while (count < docids.length && (docids[count] = ip.next()) != IterablePosting.EOL)
+            freqs[count++] = ip.getFrequency();
+        return count;
+    }
+    
     @SuppressWarnings("unchecked")
     protected static ObjectList<Posting>[] createPostings(final int count)
     {
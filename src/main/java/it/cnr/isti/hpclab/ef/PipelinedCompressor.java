@@ -0,0 +1,85 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FilenameUtils;
+import org.terrier.querying.IndexRef;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+
+import it.cnr.isti.hpclab.ef.PostingPrefetcher.PostingBlock;
+import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+import it.cnr.isti.hpclab.ef.util.SynchronizedProgressBar;
+
+/**
+ * This is a Elias-Fano compressor running its three stages concurrently: the source posting lists are decoded 
+ * by a {@link PostingPrefetcher} thread, encoded by the calling thread, and the encoded bits are written 
+ * asynchronously by double-buffered {@link it.cnr.isti.hpclab.ef.util.LongWordBitWriter}s.
+ * The output is the same of a {@link BasicCompressor}.
+ */
+public class PipelinedCompressor extends BasicCompressor
+{
+    /**
+     * Constructor.
+     * 
+     * @param srcIndex source index
+     * @param dstRef destination index reference
+     */
+    public PipelinedCompressor(final Index srcIndex, final IndexRef dstRef)
+    {
+        super(srcIndex, dstRef);
+    }
+    
+    @Override
+    public void compress(final TermPartition terms) throws IOException
+    {
+        // writers
+        final String dstIndexPath = FilenameUtils.getFullPath(dstRef.toString()) + File.separator + terms.prefix();
+        EliasFanoWriters efWriters = new EliasFanoWriters(dstIndexPath, true);
+        EliasFanoEncoders efEncoders = new EliasFanoEncoders(LOG2QUANTUM);
+        if (blockMax)
+            efEncoders.blockMax(BlockMaxEncoder.open(srcIndex, dstRef, terms.begin(), LOG2QUANTUM));
+        
+        try (PostingPrefetcher prefetcher = new PostingPrefetcher(srcIndex, terms)) {
+            LexiconEntry le = null;
+            PostingBlock block = null;
+            while ((block = prefetcher.take()) != null) {
+                if (block.first()) {
+                    le = block.entry;
+                    efWriters.writeLexiconEntry(block.term, new EFLexiconEntry(le.getTermId(), le.getDocumentFrequency(), le.getFrequency(), le.getMaxFrequencyInDocuments(), efWriters.docidBitOffset, efWriters.freqBitOffset));
+                    efEncoders.init(le.getDocumentFrequency(), numDocs, le.getFrequency());
+                }
+                efEncoders.add(block.docids, block.freqs, block.size);
+                if (block.last) {
+                    efEncoders.dump(efWriters);
+                    SynchronizedProgressBar.getInstance().step();
+                }
+                prefetcher.recycle(block);
+            }
+        }
+        
+        efEncoders.close();
+        efWriters.close();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.util.SeekableLexiconIterator;
+
+/**
+ * This class decodes the source posting lists of a term partition in a background thread, 
+ * handing them to the consumer in fixed-size blocks through a bounded queue. 
+ * Blocks are recycled by the consumer, so the memory used is bounded by the number of blocks, 
+ * independently of the length of the posting lists.
+ */
+class PostingPrefetcher implements Closeable
+{
+    /** The default number of postings per block. */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    /** The default number of blocks. */
+    public static final int DEFAULT_NUM_BLOCKS = 4;
+    
+    /**
+     * A block of postings of a term. The first block of a term carries its lexicon entry, the last block is marked.
+     */
+    static final class PostingBlock
+    {
+        String term;
+        LexiconEntry entry;
+        final int[] docids;
+        final int[] freqs;
+        int size;
+        boolean last;
+        
+        private PostingBlock(final int capacity)
+        {
+            this.docids = new int[capacity];
+            this.freqs = new int[capacity];
+        }
+        
+        private void reset(final String term, final LexiconEntry entry)
+        {
+            this.term = term;
+            this.entry = entry;
+            this.size = 0;
+            this.last = false;
+        }
+        
+        boolean first()
+        {
+            return entry != null;
+        }
+    }
+    
+    /** The block signaling the end of the partition. */
+    private static final PostingBlock END = new PostingBlock(0);
+    
+    private final Index srcIndex;
+    private final TermPartition terms;
+    
+    private final BlockingQueue<PostingBlock> full;
+    private final BlockingQueue<PostingBlock> free;
+    private final Thread decoder;
+    private volatile Exception error = null;
+    
+    public PostingPrefetcher(final Index srcIndex, final TermPartition terms)
+    {
+        this(srcIndex, terms, DEFAULT_BLOCK_SIZE, DEFAULT_NUM_BLOCKS);
+    }
+    
+    /**
+     * Constructor. Decoding starts immediately.
+     * 
+     * @param srcIndex source index
+     * @param terms the partition of terms to decode
+     * @param blockSize the number of postings per block
+     * @param numBlocks the number of blocks
+     */
+    public PostingPrefetcher(final Index srcIndex, final TermPartition terms, final int blockSize, final int numBlocks)
+    {
+        this.srcIndex = srcIndex;
+        this.terms = terms;
+        
+        this.full = new ArrayBlockingQueue<>(numBlocks + 1);
+        this.free = new ArrayBlockingQueue<>(numBlocks);
+        for (int i = 0; i < numBlocks; i++)
+            free.add(new PostingBlock(blockSize));
+        
+        this.decoder = new Thread(this::decode, Thread.currentThread().getName() + "-decoder");
+        this.decoder.setDaemon(true);
+        this.decoder.start();
+    }
+    
+    private void decode()
+    {
+        try {
+            Iterator<Entry<String, LexiconEntry>> lexIter = SeekableLexiconIterator.from(srcIndex, terms.begin());
+            Entry<String, LexiconEntry> lee = null;
+            while (lexIter.hasNext()) {
+                lee = lexIter.next();
+                if (lee.getValue().getTermId() >= terms.begin())
+                    break;
+                lee = null;
+            }
+            
+            while (lee != null && lee.getValue().getTermId() < terms.end()) {
+                IterablePosting p = srcIndex.getInvertedIndex().getPostings((BitIndexPointer)lee.getValue());
+                PostingBlock block = free.take();
+                block.reset(lee.getKey(), lee.getValue());
+                while (p.next() != IterablePosting.END_OF_LIST) {
+                    if (block.size == block.docids.length) {
+                        full.put(block);
+                        block = free.take();
+                        block.reset(lee.getKey(), null);
+                    }
+                    block.docids[block.size] = p.getId();
+                    block.freqs[block.size++] = p.getFrequency();
+                }
+                p.close();
+                block.last = true;
+                full.put(block);
+                
+                lee = lexIter.hasNext() ? lexIter.next() : null;
+            }
+            if (lexIter instanceof Closeable)
+                ((Closeable) lexIter).close();
+        } catch (InterruptedException e) {
+            return; // closed by the consumer
+        } catch (Exception e) {
+            error = e;
+        }
+        try {
+            full.put(END);
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        }
+    }
+    
+    /**
+     * Return the next block of postings, waiting for it to be decoded.
+     * 
+     * @return the next block, or null at the end of the partition
+     * @throws IOException if decoding failed
+     */
+    public PostingBlock take() throws IOException
+    {
+        final PostingBlock block;
+        try {
+            block = full.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for postings");
+        }
+        if (block != END)
+            return block;
+        if (error instanceof IOException)
+            throw (IOException) error;
+        if (error != null)
+            throw new IOException(error);
+        return null;
+    }
+    
+    /**
+     * Give back a block taken with {@link #take()}, when its postings have been consumed.
+     * 
+     * @param block the block to recycle
+     */
+    public void recycle(final PostingBlock block)
+    {
+        free.add(block);
+    }
+
+    /**
+     * Stop decoding, if still running.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        decoder.interrupt();
+        try {
+            decoder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -20,6 +20,12 @@
 
 package it.cnr.isti.hpclab.ef;
 
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.function.ToLongFunction;
+
+import org.terrier.structures.LexiconEntry;
+
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
@@ -37,6 +43,16 @@ public class TermPartition implements Comparable<TermPartition>
     private final int begin;
     private final int end;
     
+    /** The estimated cost of compressing this partition (postings, or positions for block indexes). */
+    private long cost;
+    /** The actual time spent compressing this partition, in milliseconds. */
+    private long time;
+    
+    /** The bit offset of the first docid list of this partition in the final docids file, when written in place. */
+    private long docidOffset;
+    /** The bit offset of the first freq list of this partition in the final freqs file, when written in place. */
+    private long freqOffset;
+    
     private TermPartition(final int begin, final int end, final int id) 
     {
         this.begin = begin;
@@ -49,6 +65,19 @@ public class TermPartition implements Comparable<TermPartition>
         return id + " [" + begin + "," + end + "] (" + prefix + ")";
     }
 
+    /**
+     * Create a partition with the given termid range, e.g., to restore a previously computed partitioning.
+     * 
+     * @param begin the first termid of the partition
+     * @param end the termid following the last termid of the partition
+     * @param id the partition identifier
+     * @return the partition
+     */
+    public static TermPartition of(final int begin, final int end, final int id)
+    {
+        return new TermPartition(begin, end, id);
+    }
+    
     public static TermPartition[] split(final int max, final int bins) 
     {
         TermPartition[] res = new TermPartition[bins];
@@ -58,6 +87,52 @@ public class TermPartition implements Comparable<TermPartition>
         return res;
     }
 
+    /**
+     * Split the termid range <code>[0, max)</code> into at most <code>bins</code> contiguous, non-empty partitions 
+     * having (approximately) the same total cost, as given by the <code>weight</code> function on lexicon entries.
+     * The lexicon iterator must return entries in increasing termid order, i.e., termids must be aligned.
+     * 
+     * @param max the number of terms
+     * @param bins the number of partitions to generate
+     * @param lexIter an iterator over the lexicon, in termid order
+     * @param weight the cost of compressing a single lexicon entry
+     * @param totalWeight the sum of the costs of all lexicon entries
+     * @return the partitions, each one with its estimated cost
+     */
+    public static TermPartition[] split(final int max, final int bins, final Iterator<Entry<String, LexiconEntry>> lexIter, final ToLongFunction<LexiconEntry> weight, final long totalWeight) 
+    {
+        // a partition must contain at least one term
+        final int numBins = Math.max(1, Math.min(bins, max));
+        
+        final int[] bounds = new int[numBins + 1];
+        final long[] costs = new long[numBins];
+        bounds[numBins] = max;
+        
+        int k = 1;
+        long acc = 0;
+        while (lexIter.hasNext()) {
+            final LexiconEntry le = lexIter.next().getValue();
+            final long w = weight.applyAsLong(le);
+            costs[k - 1] += w;
+            acc += w;
+            
+            final int next = le.getTermId() + 1;
+            // cut when the target cost is reached, or when the remaining terms are just enough for the remaining partitions
+            if (k < numBins && next < max && (acc >= (double) totalWeight * k / numBins || max - next <= numBins - k))
+                bounds[k++] = next;
+        }
+        // statistics not matching the lexicon, place the remaining bounds evenly
+        for (; k < numBins; ++k)
+            bounds[k] = bounds[k - 1] + (max - bounds[k - 1]) / (numBins - k + 1);
+        
+        TermPartition[] res = new TermPartition[numBins];
+        for (int id = 0; id < numBins; ++id) {
+            res[id] = new TermPartition(bounds[id], bounds[id + 1], id);
+            res[id].cost = costs[id];
+        }
+        return res;
+    }
+
     @Override
     public int compareTo(TermPartition o)  {
         return Integer.compare(this.id,  o.id);
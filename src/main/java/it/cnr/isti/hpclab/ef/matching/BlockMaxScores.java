@@ -0,0 +1,140 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.util.Arrays;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * The upper bounds of the scores of a posting list: the maximum score of the whole list, 
+ * and the maximum score of every block of consecutive postings, together with the last docid of the block.
+ * Block scores are stored as floats, rounded up, so they are never smaller than the actual scores.
+ */
+public final class BlockMaxScores 
+{
+	private final int[] lastDocids;
+	private final float[] maxScores;
+	private final int numBlocks;
+	private final double maxScore;
+	
+	private BlockMaxScores(final int[] lastDocids, final float[] maxScores, final double maxScore)
+	{
+		this.lastDocids = lastDocids;
+		this.maxScores = maxScores;
+		this.numBlocks = lastDocids.length;
+		this.maxScore = maxScore;
+	}
+	
+	/**
+	 * Create bounds from the last docid and the maximum score of every block.
+	 * 
+	 * @param lastDocids the last docid of every block, increasing
+	 * @param maxScores the maximum score of every block
+	 * @return the bounds
+	 */
+	public static BlockMaxScores of(final int[] lastDocids, final float[] maxScores)
+	{
+		double maxScore = 0;
+		for (float score: maxScores)
+			maxScore = Math.max(maxScore, score);
+		return new BlockMaxScores(lastDocids, maxScores, maxScore);
+	}
+	
+	/**
+	 * Create the bounds of a list made of a single block.
+	 * 
+	 * @param maxScore the maximum score of the list
+	 * @return the bounds
+	 */
+	public static BlockMaxScores of(final float maxScore)
+	{
+		return of(new int[] { IterablePosting.END_OF_LIST }, new float[] { maxScore });
+	}
+	/**
+	 * Return the number of blocks.
+	 * @return the number of blocks
+	 */
+	public int numBlocks()
+	{
+		return numBlocks;
+	}
+	
+	/**
+	 * Return the maximum score of the list, never negative.
+	 * @return the maximum score of the list
+	 */
+	public double maxScore()
+	{
+		return maxScore;
+	}
+	
+	/**
+	 * Return the last docid of a block, or {@link IterablePosting#END_OF_LIST} past the last block.
+	 * @param block the block
+	 * @return the last docid of the block
+	 */
+	public int lastDocid(final int block)
+	{
+		return (block < numBlocks) ? lastDocids[block] : IterablePosting.END_OF_LIST;
+	}
+	
+	/**
+	 * Return the maximum score of a block, never negative, or 0 past the last block.
+	 * @param block the block
+	 * @return the maximum score of the block
+	 */
+	public double maxScore(final int block)
+	{
+		return (block < numBlocks) ? maxScores[block] : 0.0;
+	}
+
+	/**
+	 * Return the first block, starting from <code>block</code>, whose last docid is not smaller than <code>target</code>.
+	 * 
+	 * @param block the block to start from
+	 * @param target the target docid
+	 * @return the first block, from <code>block</code>, that may contain <code>target</code>, or {@link #numBlocks()}
+	 */
+	public int find(final int block, final int target)
+	{
+		if (block >= numBlocks || lastDocids[block] >= target)
+			return block;
+		// galloping, then binary search
+		int lo = block, step = 1;
+		while (lo + step < numBlocks && lastDocids[lo + step] < target) {
+			lo += step;
+			step <<= 1;
+		}
+		final int hi = Math.min(numBlocks, lo + step + 1);
+		final int pos = Arrays.binarySearch(lastDocids, lo + 1, hi, target);
+		return (pos >= 0) ? pos : -pos - 1;
+	}
+	
+	/**
+	 * Round a non negative score up to a float.
+	 */
+	static float roundUp(final double score)
+	{
+		final float f = (float) score;
+		return (f < score) ? Math.nextUp(f) : f;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.io.IOException;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * The Block-Max WAND algorithm. A pivot is found as in {@link Wand}, then the cursors up to the pivot are shallow advanced 
+ * to the pivot docid, and the sum of their block maximum scores is checked against the threshold. If the pivot docid cannot
+ * enter the top documents, the cursor with the largest maximum score is moved past the end of the current blocks, without 
+ * decoding the postings in between.
+ */
+public class BlockMaxWand implements DynamicPruning
+{
+	@Override
+	public void process(final TermCursor[] cursors, final TopKQueue topk) throws IOException 
+	{
+		final int n = cursors.length;
+		final TermCursor[] ordered = cursors.clone();
+		Wand.sortByDocid(ordered);
+		
+		int pivot;
+		while ((pivot = Wand.findPivot(ordered, topk)) >= 0) {
+			final int pivotDocid = ordered[pivot].docid();
+			while (pivot + 1 < n && ordered[pivot + 1].docid() == pivotDocid)
+				pivot++;
+			
+			double blockUpperBound = 0;
+			for (int i = 0; i <= pivot; i++) {
+				if (ordered[i].blockLastDocid() < pivotDocid)
+					ordered[i].shallowAdvance(pivotDocid);
+				blockUpperBound += ordered[i].blockMaxScore();
+			}
+			
+			if (topk.wouldEnter(blockUpperBound)) {
+				if (ordered[0].docid() == pivotDocid) {
+					double score = 0;
+					for (int i = 0; i <= pivot; i++) {
+						score += ordered[i].score();
+						blockUpperBound -= ordered[i].blockMaxScore();
+						if (!topk.wouldEnter(score + blockUpperBound))
+							break;
+					}
+					for (int i = 0; i <= pivot; i++)
+						ordered[i].next();
+					topk.insert(pivotDocid, score);
+					Wand.sortByDocid(ordered);
+				} else {
+					int i = pivot;
+					while (ordered[i].docid() == pivotDocid)
+						i--;
+					ordered[i].next(pivotDocid);
+					Wand.bubbleDown(ordered, i);
+				}
+			} else {
+				// the pivot docid cannot enter: skip past the closest end of the current blocks, with the list having the largest maximum score
+				int skipped = pivot;
+				for (int i = 0; i < pivot; i++)
+					if (ordered[i].maxScore() > ordered[skipped].maxScore())
+						skipped = i;
+				
+				long next = IterablePosting.END_OF_LIST;
+				for (int i = 0; i <= pivot; i++)
+					next = Math.min(next, (long) ordered[i].blockLastDocid() + 1);
+				if (pivot + 1 < n)
+					next = Math.min(next, ordered[pivot + 1].docid());
+				if (next <= pivotDocid)
+					next = pivotDocid + 1;
+				
+				ordered[skipped].next((int) Math.min(next, IterablePosting.END_OF_LIST));
+				Wand.bubbleDown(ordered, skipped);
+			}
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "BMW";
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.PostingListManager;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.Index;
+
+/**
+ * A posting list manager that can also score a virtual posting of a query term, given its freq and document length, 
+ * with the weighting models of the term, e.g., to bound the scores of a block of postings from its block-max metadata.
+ */
+public class BoundingPostingListManager extends PostingListManager
+{
+	public BoundingPostingListManager(final Index index, final CollectionStatistics cs, final MatchingQueryTerms mqt) throws IOException 
+	{
+		super(index, cs, mqt);
+	}
+	
+	/**
+	 * Return the score of a virtual posting of the i-th term.
+	 * 
+	 * @param i the index of the term
+	 * @param tf the freq of the posting
+	 * @param docLength the length of the document of the posting
+	 * @return the score of the posting
+	 */
+	public double score(final int i, final double tf, final double docLength)
+	{
+		double score = 0;
+		for (WeightingModel model: termModels.get(i))
+			score += model.score(tf, docLength);
+		return score;
+	}
+	
+	/**
+	 * Check if all the weighting models of the i-th term belong to the given models.
+	 * 
+	 * @param i the index of the term
+	 * @param models the names of the models, simple or fully qualified
+	 * @return true if all the models of the term belong to the given models
+	 */
+	public boolean hasModels(final int i, final Set<String> models)
+	{
+		for (WeightingModel model: termModels.get(i))
+			if (!models.contains(model.getClass().getSimpleName()) && !models.contains(model.getClass().getName()))
+				return false;
+		return true;
+	}
+}
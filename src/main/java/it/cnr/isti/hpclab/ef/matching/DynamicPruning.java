@@ -0,0 +1,56 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.io.IOException;
+
+/**
+ * A document-at-a-time dynamic pruning algorithm, computing the top <i>k</i> documents of a disjunctive query 
+ * without scoring, and possibly without decoding, the documents that cannot enter the top <i>k</i>.
+ * Scores are assumed to be additive over the query terms, and the upper bounds of the cursors never smaller than the actual scores.
+ */
+public interface DynamicPruning 
+{
+	/**
+	 * Process the posting lists of the query terms, inserting the top documents in the heap.
+	 * 
+	 * @param cursors the cursors over the posting lists of the query terms, positioned on their first postings
+	 * @param topk the heap of the top documents
+	 * @throws IOException if something goes wrong
+	 */
+	void process(final TermCursor[] cursors, final TopKQueue topk) throws IOException;
+	
+	/**
+	 * Return the algorithm with the given name.
+	 * 
+	 * @param name <code>maxscore</code>, <code>wand</code> or <code>bmw</code> (case insensitive)
+	 * @return the algorithm
+	 */
+	static DynamicPruning of(final String name)
+	{
+		switch (name.toLowerCase()) {
+			case "maxscore": return new MaxScore();
+			case "wand":     return new Wand();
+			case "bmw":      return new BlockMaxWand();
+			default: throw new IllegalArgumentException("Unknown dynamic pruning algorithm " + name);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.matching.Matching;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.MatchingQueryTerms.MatchingTerm;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.daat.Full;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.structures.EFBlockMaxIndex;
+
+/**
+ * A Terrier {@link Matching} retrieving the top documents of a query with a dynamic pruning algorithm, 
+ * i.e., MaxScore (default), WAND or Block-Max WAND, chosen with the <code>ef.matching.algorithm</code> property.
+ * The number of retrieved documents is given by the <code>matching.retrieved_set_size</code> property.
+ * 
+ * If the index stores block-max metadata, the upper bound of every block of postings is the score of its maximum freq
+ * in its minimum document length. Otherwise, the posting list is a single block, whose upper bound is the score of the 
+ * maximum freq of the term in the shortest document of the collection. Both hold only for weighting models increasing with 
+ * the freq and decreasing with the document length, listed in the <code>ef.matching.monotone_models</code> property 
+ * (BM25 and TF_IDF by default).
+ * 
+ * Queries with required or negated terms, with terms scored by other weighting models, or with bounds that are not finite, 
+ * are matched exhaustively by Terrier's {@link Full} matching.
+ */
+public class EFMatching implements Matching
+{
+	protected static final Logger LOGGER = LoggerFactory.getLogger(EFMatching.class);
+	
+	protected final Index index;
+	protected CollectionStatistics collectionStatistics;
+	protected final DynamicPruning algorithm;
+	protected final int k;
+	protected final EFBlockMaxIndex blockMaxIndex;
+	protected final int minDocLength;
+	protected final Set<String> monotoneModels;
+	
+	public EFMatching(final Index index)
+	{
+		this.index = index;
+		this.collectionStatistics = index.getCollectionStatistics();
+		this.algorithm = DynamicPruning.of(ApplicationSetup.getProperty(EliasFano.MATCHING_ALGORITHM, "maxscore"));
+		this.k = Integer.parseInt(ApplicationSetup.getProperty("matching.retrieved_set_size", "1000"));
+		this.blockMaxIndex = index.hasIndexStructure("blockmax") ? (EFBlockMaxIndex) index.getIndexStructure("blockmax") : null;
+		this.minDocLength = (index instanceof IndexOnDisk) ? ((IndexOnDisk) index).getIntIndexProperty(EliasFano.MIN_DOCUMENT_LENGTH, 0) : 0;
+		this.monotoneModels = new HashSet<>(Arrays.asList(ApplicationSetup.getProperty(EliasFano.MONOTONE_MODELS, "BM25,TF_IDF").split("\\s*,\\s*")));
+	}
+	
+	@Override
+	public String getInfo() 
+	{
+		return "EFMatching(" + algorithm + ((blockMaxIndex != null) ? ",blockmax" : "") + ")";
+	}
+
+	@Override
+	public void setCollectionStatistics(final CollectionStatistics cs) 
+	{
+		this.collectionStatistics = cs;
+	}
+
+	@Override
+	public ResultSet match(final String queryNumber, final MatchingQueryTerms queryTerms) throws IOException 
+	{
+		if (hasRequirements(queryTerms)) {
+			LOGGER.debug("Query " + queryNumber + " has required or negated terms, it is matched exhaustively");
+			return exhaustive().match(queryNumber, queryTerms);
+		}
+		
+		final TopKQueue topk = new TopKQueue(k);
+		try (BoundingPostingListManager plm = new BoundingPostingListManager(index, collectionStatistics, queryTerms)) {
+			plm.prepare(true);
+			final int n = plm.size();
+			final TermCursor[] cursors = new TermCursor[n];
+			for (int i = 0; i < n; i++) {
+				final BlockMaxScores bounds = bounds(plm, i);
+				if (bounds == null) {
+					LOGGER.debug("Query " + queryNumber + " has scores that cannot be bounded, it is matched exhaustively");
+					return exhaustive().match(queryNumber, queryTerms);
+				}
+				final int term = i;
+				cursors[i] = new TermCursor(plm.getPosting(i), () -> plm.score(term), bounds);
+			}
+			algorithm.process(cursors, topk);
+		}
+		LOGGER.debug("Query " + queryNumber + ": " + topk.size() + " documents retrieved with " + algorithm);
+		return topk.toResultSet();
+	}
+	
+	/**
+	 * Return the matching used for the queries that cannot be processed with dynamic pruning.
+	 */
+	protected Matching exhaustive()
+	{
+		final Matching full = new Full(index);
+		full.setCollectionStatistics(collectionStatistics);
+		return full;
+	}
+	
+	/**
+	 * Check if some query term is required or negated.
+	 */
+	protected static boolean hasRequirements(final MatchingQueryTerms queryTerms)
+	{
+		for (MatchingTerm term: queryTerms)
+			if (term.getValue().required != null)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Return the upper bounds of the posting list of the i-th term, from the block-max metadata if available, 
+	 * or from the term statistics.
+	 * 
+	 * @return the upper bounds, or null if the models of the term are not monotone, or some bound is not finite
+	 */
+	protected BlockMaxScores bounds(final BoundingPostingListManager plm, final int i) throws IOException
+	{
+		if (!plm.hasModels(i, monotoneModels))
+			return null;
+		final EntryStatistics stats = plm.getStatistics(i);
+		if (blockMaxIndex != null && stats.getTermId() >= 0)
+			return storedBounds(plm, i, stats.getTermId());
+		
+		// the maximum freq is unknown for merged statistics, and it may be missing in the lexicon: the term frequency bounds it
+		final int maxFreq = (stats.getTermId() >= 0 && stats.getMaxFrequencyInDocuments() > 0) 
+			? Math.min(stats.getMaxFrequencyInDocuments(), stats.getFrequency()) 
+			: stats.getFrequency();
+		final double maxScore = plm.score(i, maxFreq, minDocLength);
+		return Double.isFinite(maxScore) ? BlockMaxScores.of(BlockMaxScores.roundUp(Math.max(0, maxScore))) : null;
+	}
+	
+	/**
+	 * Return the upper bounds of a posting list from its block-max metadata, or null if some bound is not finite.
+	 */
+	protected BlockMaxScores storedBounds(final BoundingPostingListManager plm, final int i, final int termId) throws IOException
+	{
+		final EFBlockMaxIndex.Blocks blocks = blockMaxIndex.read(termId);
+		final float[] maxScores = new float[blocks.size()];
+		for (int b = 0; b < maxScores.length; b++) {
+			final double maxScore = plm.score(i, blocks.maxFreqs[b], blocks.minDocLengths[b]);
+			if (!Double.isFinite(maxScore))
+				return null;
+			maxScores[b] = BlockMaxScores.roundUp(Math.max(0, maxScore));
+		}
+		return BlockMaxScores.of(blocks.lastDocids, maxScores);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * The MaxScore algorithm. Cursors are sorted by increasing maximum score, and split into essential and non-essential lists:
+ * the non-essential lists, whose maximum scores sum up to no more than the threshold, cannot produce a top document by themselves.
+ * Candidate documents are taken from the essential lists only, and non-essential lists are skipped to the candidate,
+ * as long as the candidate may still enter the top documents.
+ */
+public class MaxScore implements DynamicPruning
+{
+	@Override
+	public void process(final TermCursor[] cursors, final TopKQueue topk) throws IOException 
+	{
+		final int n = cursors.length;
+		final TermCursor[] ordered = cursors.clone();
+		Arrays.sort(ordered, Comparator.comparingDouble(TermCursor::maxScore));
+		
+		// upperBounds[i] is the sum of the maximum scores of the lists 0..i
+		final double[] upperBounds = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++)
+			upperBounds[i] = (sum += ordered[i].maxScore());
+		
+		int firstEssential = 0;
+		int current = IterablePosting.END_OF_LIST;
+		for (TermCursor cursor: ordered)
+			current = Math.min(current, cursor.docid());
+		
+		while (firstEssential < n && current != IterablePosting.END_OF_LIST) {
+			double score = 0;
+			int next = IterablePosting.END_OF_LIST;
+			
+			// essential lists
+			for (int i = firstEssential; i < n; i++) {
+				if (ordered[i].docid() == current) {
+					score += ordered[i].score();
+					ordered[i].next();
+				}
+				next = Math.min(next, ordered[i].docid());
+			}
+			
+			// non-essential lists, from the highest maximum score
+			for (int i = firstEssential - 1; i >= 0; i--) {
+				if (!topk.wouldEnter(score + upperBounds[i]))
+					break;
+				if (ordered[i].next(current) == current)
+					score += ordered[i].score();
+			}
+			
+			if (topk.insert(current, score)) {
+				while (firstEssential < n && !topk.wouldEnter(upperBounds[firstEssential]))
+					firstEssential++;
+			}
+			current = next;
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "MaxScore";
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.io.IOException;
+import java.util.function.DoubleSupplier;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * A cursor over the posting list of a query term, used by dynamic pruning algorithms.
+ * It scores the current posting with the given scoring function, and exposes the score upper bounds of the list: 
+ * the maximum score of the whole list and, after a shallow advance, the maximum score of the current block, 
+ * without decoding any posting.
+ */
+public class TermCursor 
+{
+	private final IterablePosting posting;
+	private final DoubleSupplier scorer;
+	private final BlockMaxScores bounds;
+	private int block = 0;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param posting the posting list, already positioned on its first posting
+	 * @param scorer the function scoring the current posting of the list
+	 * @param bounds the score upper bounds of the list
+	 */
+	public TermCursor(final IterablePosting posting, final DoubleSupplier scorer, final BlockMaxScores bounds)
+	{
+		this.posting = posting;
+		this.scorer = scorer;
+		this.bounds = bounds;
+	}
+	
+	/**
+	 * Return the current docid.
+	 * @return the current docid, or {@link IterablePosting#END_OF_LIST}
+	 */
+	public int docid()
+	{
+		return posting.getId();
+	}
+	
+	/**
+	 * Move to the next posting.
+	 * @return the new current docid, or {@link IterablePosting#END_OF_LIST}
+	 * @throws IOException if something goes wrong
+	 */
+	public int next() throws IOException
+	{
+		return posting.next();
+	}
+	
+	/**
+	 * Move to the first posting whose docid is not smaller than <code>target</code>, skipping the postings in between.
+	 * @param target the target docid
+	 * @return the new current docid, or {@link IterablePosting#END_OF_LIST}
+	 * @throws IOException if something goes wrong
+	 */
+	public int next(final int target) throws IOException
+	{
+		return posting.next(target);
+	}
+
+	/**
+	 * Return the score of the current posting.
+	 * @return the score of the current posting
+	 */
+	public double score()
+	{
+		return scorer.getAsDouble();
+	}
+	
+	/**
+	 * Return the maximum score of the list.
+	 * @return the maximum score of the list
+	 */
+	public double maxScore()
+	{
+		return bounds.maxScore();
+	}
+	
+	/**
+	 * Move the current block to the block that may contain <code>target</code>, without moving the current posting.
+	 * @param target the target docid
+	 */
+	public void shallowAdvance(final int target)
+	{
+		block = bounds.find(block, target);
+	}
+	
+	/**
+	 * Return the last docid of the current block.
+	 * @return the last docid of the current block, or {@link IterablePosting#END_OF_LIST} past the last block
+	 */
+	public int blockLastDocid()
+	{
+		return bounds.lastDocid(block);
+	}
+	
+	/**
+	 * Return the maximum score of the current block.
+	 * @return the maximum score of the current block
+	 */
+	public double blockMaxScore()
+	{
+		return bounds.maxScore(block);
+	}
+}
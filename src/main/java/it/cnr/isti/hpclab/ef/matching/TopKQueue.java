@@ -0,0 +1,161 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import org.terrier.matching.QueryResultSet;
+import org.terrier.matching.ResultSet;
+
+/**
+ * A min-heap of the <i>k</i> highest scored documents found so far. 
+ * Its threshold is the smallest score a document must exceed to enter the heap.
+ */
+public final class TopKQueue 
+{
+	private final int k;
+	private final int[] docids;
+	private final double[] scores;
+	private int size = 0;
+	
+	public TopKQueue(final int k)
+	{
+		this.k = k;
+		this.docids = new int[k];
+		this.scores = new double[k];
+	}
+	
+	/**
+	 * Return the score a document must exceed to enter the heap.
+	 * @return the current threshold, negative infinity while the heap is not full
+	 */
+	public double threshold()
+	{
+		return (size < k) ? Double.NEGATIVE_INFINITY : scores[0];
+	}
+	
+	/**
+	 * Check if a document with the given score would enter the heap.
+	 * @param score the score
+	 * @return true if the score is larger than the current threshold
+	 */
+	public boolean wouldEnter(final double score)
+	{
+		return score > threshold();
+	}
+	
+	/**
+	 * Insert a document in the heap, if its score is larger than the current threshold.
+	 * @param docid the docid
+	 * @param score the score
+	 * @return true if the document has been inserted
+	 */
+	public boolean insert(final int docid, final double score)
+	{
+		if (k == 0 || !wouldEnter(score))
+			return false;
+		if (size < k) {
+			int i = size++;
+			while (i > 0 && scores[(i - 1) >>> 1] > score) {
+				final int parent = (i - 1) >>> 1;
+				docids[i] = docids[parent];
+				scores[i] = scores[parent];
+				i = parent;
+			}
+			docids[i] = docid;
+			scores[i] = score;
+		} else {
+			siftDown(docid, score);
+		}
+		return true;
+	}
+	
+	/**
+	 * Replace the root with the given document, and restore the heap.
+	 */
+	private void siftDown(final int docid, final double score)
+	{
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && scores[child + 1] < scores[child])
+				child++;
+			if (scores[child] >= score)
+				break;
+			docids[i] = docids[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		docids[i] = docid;
+		scores[i] = score;
+	}
+	
+	/**
+	 * Return the number of documents in the heap.
+	 * @return the number of documents in the heap
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Empty the heap, returning its documents by decreasing score (by increasing docid in case of ties).
+	 * 
+	 * @param outDocids the array where to store the docids, at least {@link #size()} long
+	 * @param outScores the array where to store the scores, at least {@link #size()} long
+	 * @return the number of documents
+	 */
+	public int drain(final int[] outDocids, final double[] outScores)
+	{
+		final int n = size;
+		while (size > 0) {
+			// the root has the smallest score: it goes last
+			final int last = --size;
+			outDocids[last] = docids[0];
+			outScores[last] = scores[0];
+			if (last > 0)
+				siftDown(docids[last], scores[last]);
+		}
+		// sort ties by increasing docid
+		for (int i = 1; i < n; i++) {
+			for (int j = i; j > 0 && outScores[j - 1] == outScores[j] && outDocids[j - 1] > outDocids[j]; j--) {
+				final int d = outDocids[j]; outDocids[j] = outDocids[j - 1]; outDocids[j - 1] = d;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Empty the heap into a Terrier result set, by decreasing score.
+	 * 
+	 * @return the result set
+	 */
+	public ResultSet toResultSet()
+	{
+		final int n = size;
+		QueryResultSet rs = new QueryResultSet(n);
+		drain(rs.getDocids(), rs.getScores());
+		rs.setExactResultSize(n);
+		rs.setResultSize(n);
+		return rs;
+	}
+}
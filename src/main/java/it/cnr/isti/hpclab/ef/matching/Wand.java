@@ -0,0 +1,106 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.matching;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * The WAND algorithm. Cursors are kept sorted by current docid, and the pivot is the first cursor where the sum of 
+ * the maximum scores of the preceding cursors, itself included, exceeds the threshold: no document before the pivot docid 
+ * can enter the top documents, so the preceding cursors are skipped to the pivot docid.
+ */
+public class Wand implements DynamicPruning
+{
+	@Override
+	public void process(final TermCursor[] cursors, final TopKQueue topk) throws IOException 
+	{
+		final TermCursor[] ordered = cursors.clone();
+		sortByDocid(ordered);
+		
+		int pivot;
+		while ((pivot = findPivot(ordered, topk)) >= 0) {
+			final int pivotDocid = ordered[pivot].docid();
+			if (ordered[0].docid() == pivotDocid) {
+				double score = 0;
+				for (TermCursor cursor: ordered) {
+					if (cursor.docid() != pivotDocid)
+						break;
+					score += cursor.score();
+					cursor.next();
+				}
+				topk.insert(pivotDocid, score);
+				sortByDocid(ordered);
+			} else {
+				// no document before the pivot docid can enter: skip the last list before it
+				int i = pivot;
+				while (ordered[i].docid() == pivotDocid)
+					i--;
+				ordered[i].next(pivotDocid);
+				bubbleDown(ordered, i);
+			}
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "WAND";
+	}
+	
+	/**
+	 * Return the pivot, i.e., the first cursor where the sum of the maximum scores up to it would enter the top documents.
+	 * 
+	 * @return the pivot, or -1 if no pivot exists
+	 */
+	static int findPivot(final TermCursor[] ordered, final TopKQueue topk)
+	{
+		double upperBound = 0;
+		for (int i = 0; i < ordered.length; i++) {
+			if (ordered[i].docid() == IterablePosting.END_OF_LIST)
+				break;
+			upperBound += ordered[i].maxScore();
+			if (topk.wouldEnter(upperBound))
+				return i;
+		}
+		return -1;
+	}
+	
+	static void sortByDocid(final TermCursor[] ordered)
+	{
+		Arrays.sort(ordered, Comparator.comparingInt(TermCursor::docid));
+	}
+	
+	/**
+	 * Move down the cursor at position <code>i</code>, whose docid has increased, to keep cursors sorted by docid.
+	 */
+	static void bubbleDown(final TermCursor[] ordered, final int i)
+	{
+		for (int j = i + 1; j < ordered.length && ordered[j].docid() < ordered[j - 1].docid(); j++) {
+			final TermCursor tmp = ordered[j];
+			ordered[j] = ordered[j - 1];
+			ordered[j - 1] = tmp;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.structures;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+
+/**
+ * A conjunction of Elias-Fano posting lists: it iterates over the documents containing all terms.
+ * The rarest list drives the intersection, and every other list skips to its candidate docid with
+ * {@link EFBasicIterablePosting#next(int)}, which scans the upper bits for short distances and jumps with the skip pointers for long ones.
+ * When a list rules out a candidate, it becomes the driving list, so the order adapts to the lists that eliminate most candidates.
+ * Freqs are not decoded while intersecting, but only when requested.
+ */
+public class EFAndIterablePosting implements IterablePosting
+{
+	protected final EFBasicIterablePosting[] postings;
+	// the lists in intersection order, the first one driving
+	protected final EFBasicIterablePosting[] order;
+	
+	protected int currentDocument = -1;
+	
+	/**
+	 * Constructor.
+	 * @param postings the posting lists of the terms
+	 */
+	public EFAndIterablePosting(final EFBasicIterablePosting[] postings)
+	{
+		if (postings.length == 0)
+			throw new IllegalArgumentException("At least one posting list is required");
+		this.postings = postings;
+		this.order = postings.clone();
+		Arrays.sort(order, Comparator.comparingLong(p -> p.numEntries));
+	}
+	
+	/**
+	 * Return the posting lists of the terms, in the given order, all positioned on the current document.
+	 * @return the posting lists of the terms
+	 */
+	public EFBasicIterablePosting[] getPostings()
+	{
+		return postings;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int next() throws IOException 
+	{
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return IterablePosting.END_OF_LIST;
+		return align(order[0].next());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int next(final int targetId) throws IOException 
+	{
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return IterablePosting.END_OF_LIST;
+		if (currentDocument >= targetId)
+			return currentDocument;
+		return align(order[0].next(targetId));
+	}
+	
+	/**
+	 * Move all posting lists to the first document, not before the candidate of the driving list, containing all terms.
+	 */
+	private int align(int candidate) throws IOException
+	{
+		final int n = order.length;
+		while (candidate != IterablePosting.END_OF_LIST) {
+			int i = 1;
+			while (i < n && order[i].next(candidate) == candidate)
+				i++;
+			if (i == n)
+				return currentDocument = candidate;
+			
+			// the list that ruled out the candidate drives the intersection from its docid
+			final EFBasicIterablePosting eliminator = order[i];
+			System.arraycopy(order, 0, order, 1, i);
+			order[0] = eliminator;
+			candidate = eliminator.getId();
+		}
+		return currentDocument = IterablePosting.END_OF_LIST;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int getId() 
+	{
+		return currentDocument;
+	}
+
+	/** 
+	 * Return the sum of the freqs of all terms in the current document.
+	 */
+	@Override
+	public int getFrequency() 
+	{
+		int freq = 0;
+		for (EFBasicIterablePosting posting: postings)
+			freq += posting.getFrequency();
+		return freq;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getDocumentLength() 
+	{
+		return postings[0].getDocumentLength();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setId(final int id) 
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public WritablePosting asWritablePosting() 
+	{
+		return new BasicPostingImpl(currentDocument, getFrequency());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean endOfPostings() 
+	{
+		return currentDocument == IterablePosting.END_OF_LIST;
+	}
+
+	/** Close all posting lists. */
+	@Override
+	public void close() throws IOException 
+	{
+		for (EFBasicIterablePosting posting: postings)
+			posting.close();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "(" + currentDocument + ")";
+	}
+}
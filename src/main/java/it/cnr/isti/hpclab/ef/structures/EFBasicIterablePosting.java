@@ -35,16 +35,28 @@ import org.terrier.structures.postings.WritablePosting;
 
 /**
  * Elias-Fano implementation of an iterable posting, i.e., a posting cursor over a posting list.
+ * Freqs are decoded only when requested, so traversals reading docids only never access the freqs file.
  */
 public class EFBasicIterablePosting implements IterablePosting
 {
-	private DocumentIndex doi;
+	protected DocumentIndex doi;
 
 	protected DocidReader docidReader = null;
 	protected FreqReader freqReader = null;
 	protected long currentDocument;
 	protected long currentFrequency;
+	// whether the freq of the current posting has been decoded, since freqs are decoded only when requested
+	protected boolean freqDecoded;
 	protected long N;
+	protected long numEntries;
+	
+	// The bit readers of docids, reused by reset
+	private LongWordBitReader skipPointers = null;
+	private LongWordBitReader lowerBits = null;
+	
+	// The inverted index that opened this posting list, if any, and whether it is open, i.e., not returned to the index pool
+	EFInvertedIndex owner = null;
+	boolean open = false;
 	
 	/** 
 	 * Create an empty EFBasicIterablePosting.
@@ -69,11 +81,23 @@ public class EFBasicIterablePosting implements IterablePosting
 	public EFBasicIterablePosting(final LongBigList docidList, final LongBigList freqList, final DocumentIndex doi,
 								  final int numEntries, final int upperBoundDocid, final int upperBoundFreq, final int log2Quantum,
 								  final long docidsPosition, final long freqsPosition)
+	{
+		reset(docidList, freqList, doi, numEntries, upperBoundDocid, upperBoundFreq, log2Quantum, docidsPosition, freqsPosition);
+	}
+	
+	/**
+	 * Reset this EFBasicIterablePosting to the beginning of another posting list, with the same parameters of
+	 * {@link #EFBasicIterablePosting(LongBigList, LongBigList, DocumentIndex, int, int, int, int, long, long)}.
+	 * Its readers are reused, so no objects are allocated.
+	 */
+	void reset(final LongBigList docidList, final LongBigList freqList, final DocumentIndex doi,
+					  final int numEntries, final int upperBoundDocid, final int upperBoundFreq, final int log2Quantum,
+					  final long docidsPosition, final long freqsPosition)
 	{
 		this.doi = doi;
 		this.N = upperBoundDocid;
-		
-		
+		this.numEntries = numEntries;
+
 		// the number of lower bits for the EF encoding of a list of given length, upper bound and strictness.
 		final int l = EFUtils.lowerBits(numEntries + 1, upperBoundDocid, false);
 		// the size in bits of forward or skip pointers to the EF encoding of a list of
@@ -85,21 +109,52 @@ public class EFBasicIterablePosting implements IterablePosting
 				true);
 
 		// Reader of elements of size pointerSize
-		final LongWordBitReader skipPointers = new LongWordBitReader(docidList, pointerSize);
+		skipPointers = (skipPointers == null) ? new LongWordBitReader(docidList, pointerSize) : skipPointers.reset(docidList, pointerSize);
 		// Reader of elements of size l
-		final LongWordBitReader lowerBits = new LongWordBitReader(docidList, l);
+		lowerBits = (lowerBits == null) ? new LongWordBitReader(docidList, l) : lowerBits.reset(docidList, l);
 
 		final long skipPointersStart = docidsPosition;
 		// Where to start reading the lower bits array
 		final long lowerBitsStart = skipPointersStart + pointerSize * numberOfPointers;
 		lowerBits.position(lowerBitsStart);
 
-		this.docidReader = new DocidReader(docidList, lowerBits, lowerBitsStart, l, skipPointers, skipPointersStart,
-				numberOfPointers, pointerSize, numEntries, log2Quantum);
+		if (docidReader == null)
+			this.docidReader = new DocidReader(docidList, lowerBits, lowerBitsStart, l, skipPointers, skipPointersStart,
+					numberOfPointers, pointerSize, numEntries, log2Quantum);
+		else
+			this.docidReader.reset(docidList, lowerBits, lowerBitsStart, l, skipPointers, skipPointersStart,
+					numberOfPointers, pointerSize, numEntries, log2Quantum);
 		currentDocument = -2;
 
-		this.freqReader = new FreqReader(freqList, freqsPosition, numEntries, upperBoundFreq, log2Quantum);
+		if (freqReader == null)
+			this.freqReader = new FreqReader(freqList, freqsPosition, numEntries, upperBoundFreq, log2Quantum);
+		else
+			this.freqReader.reset(freqList, freqsPosition, numEntries, upperBoundFreq, log2Quantum);
 		currentFrequency = 0;
+		freqDecoded = true;
+	}
+	
+	/**
+	 * Reset this EFBasicIterablePosting to the beginning of the posting list of another term of the same inverted index,
+	 * without allocating any object.
+	 * 
+	 * @param le the lexicon entry of the term
+	 * @throws IllegalStateException if this posting list was not opened by an {@link EFInvertedIndex}, or it has been closed
+	 * @throws IllegalArgumentException if the posting list of the term is inlined in its lexicon entry and this one is not, or vice versa
+	 */
+	public void reset(final EFLexiconEntry le)
+	{
+		if (owner == null || !open)
+			throw new IllegalStateException("Only open posting lists opened by an inverted index can be reset to a lexicon entry");
+		owner.reset(this, le);
+	}
+
+	/**
+	 * Return whether this posting list can be moved, i.e., it has not been closed and returned to the pool of its inverted index.
+	 */
+	final boolean usable()
+	{
+		return open || owner == null;
 	}
 
 	/** {@inheritDoc} */
@@ -111,6 +166,11 @@ public class EFBasicIterablePosting implements IterablePosting
 	/** {@inheritDoc} */
 	@Override
 	public int getFrequency() {
+		if (!freqDecoded && currentDocument != IterablePosting.END_OF_LIST) {
+			// the freq reader catches up with the docid reader, using its skip pointers if far behind
+			currentFrequency = freqReader.getLong(docidReader.currentIndex - 1);
+			freqDecoded = true;
+		}
 		return (int) currentFrequency;
 	}
 
@@ -134,25 +194,31 @@ public class EFBasicIterablePosting implements IterablePosting
 	/** {@inheritDoc} */
 	@Override
 	public WritablePosting asWritablePosting() {
-		return new BasicPostingImpl((int) currentDocument, (int) currentFrequency);
+		return new BasicPostingImpl((int) currentDocument, getFrequency());
 	}
 
-	/** Empty method, do nothing */
+	/** 
+	 * Return this posting list to the pool of the inverted index that opened it, if any: it must not be used after closing it.
+	 */
 	@Override
 	public void close() throws IOException {
-		// do nothing
+		if (owner != null && open) {
+			open = false;
+			owner.recycle(this);
+		}
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public int next() throws IOException {
+		assert usable() : "Posting list moved after it was closed";
 		if (currentDocument == IterablePosting.END_OF_LIST)
 			return IterablePosting.END_OF_LIST;
 
 		if ((currentDocument = docidReader.getNextPrefixSum()) >= N) {
 			currentDocument = IterablePosting.END_OF_LIST;
 		} else {
-			currentFrequency = freqReader.getLong(docidReader.currentIndex - 1);
+			freqDecoded = false;
 		}
 
 		return (int) currentDocument;
@@ -162,6 +228,7 @@ public class EFBasicIterablePosting implements IterablePosting
 	@Override
 	public int next(final int targetId) throws IOException 
 	{
+		assert usable() : "Posting list moved after it was closed";
 		if ( targetId >= N ) 
 			return (int) (currentDocument = IterablePosting.END_OF_LIST);
 
@@ -171,12 +238,94 @@ public class EFBasicIterablePosting implements IterablePosting
 		if ( ( currentDocument = docidReader.skipTo( targetId ) ) >= N ) {
 			currentDocument = IterablePosting.END_OF_LIST;
 		}  else {
-			currentFrequency = freqReader.getLong( docidReader.currentIndex - 1 );
+			freqDecoded = false;
 		}
 		
 		return (int) currentDocument;
 	}
 
+	/**
+	 * Decode the next postings in bulk, up to the length of the given arrays, as many calls to {@link #next()} would do,
+	 * but in tight loops over the Elias-Fano upper and lower bits of docids and freqs. 
+	 * After the call, the current posting is the last one decoded, and iteration can go on with {@link #next()} or another batch.
+	 * 
+	 * @param docids the array to fill with the next docids
+	 * @param freqs the array to fill with the next freqs, as long as <code>docids</code> at least
+	 * @return the number of postings decoded, 0 if the end of the list has been reached
+	 * @throws IOException if something goes wrong
+	 */
+	public int nextBatch(final int[] docids, final int[] freqs) throws IOException
+	{
+		assert usable() : "Posting list moved after it was closed";
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return 0;
+		
+		final long firstIndex = docidReader.currentIndex;
+		final int count = (int) Math.min(docids.length, numEntries - firstIndex);
+		if (count <= 0) {
+			currentDocument = IterablePosting.END_OF_LIST;
+			return 0;
+		}
+		
+		docidReader.getNextPrefixSums(docids, count);
+		freqReader.getLongs(firstIndex, freqs, count);
+		
+		currentDocument = docids[count - 1];
+		currentFrequency = freqs[count - 1];
+		freqDecoded = true;
+		return count;
+	}
+
+	/**
+	 * Return the docid of given index in this posting list, without moving the iterator.
+	 * 
+	 * @param index the index of the posting, from 0
+	 * @return the docid of given index
+	 * @throws IndexOutOfBoundsException if the index is negative or not smaller than the number of postings
+	 */
+	public int get(final int index)
+	{
+		if (index < 0 || index >= numEntries)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + numEntries + " postings");
+		return (int) docidReader.getPrefixSum(index);
+	}
+	
+	/**
+	 * Return the number of docids smaller than the given docid in this posting list, without moving the iterator.
+	 * 
+	 * @param docid the docid
+	 * @return the number of docids smaller than the given docid
+	 */
+	public int rank(final int docid)
+	{
+		if (docid <= 0)
+			return 0;
+		if (docid >= N)
+			return (int) numEntries;
+		return (int) docidReader.rank(docid);
+	}
+	
+	/**
+	 * Return the index of the given docid in this posting list, without moving the iterator.
+	 * 
+	 * @param docid the docid
+	 * @return the index of the given docid, or -1 if the docid is not in this posting list
+	 */
+	public int positionOf(final int docid)
+	{
+		final int rank = rank(docid);
+		return (rank < numEntries && get(rank) == docid) ? rank : -1;
+	}
+	
+	/**
+	 * Return the document index used to look up document lengths.
+	 * @return the document index
+	 */
+	DocumentIndex getDocumentIndex()
+	{
+		return doi;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean endOfPostings() 
@@ -188,7 +337,7 @@ public class EFBasicIterablePosting implements IterablePosting
 	@Override
 	public String toString()
 	{
-		return "(" + currentDocument + "," + currentFrequency + ")";
+		return "(" + currentDocument + "," + getFrequency() + ")";
 	}
 	
 	/**
@@ -40,9 +40,19 @@ import it.unimi.dsi.fastutil.longs.LongBigList;
 public class EFBlockIterablePosting extends EFBasicIterablePosting implements BlockPosting
 {
 	private PositionReader posReader = null;
+	// The bit reader of the position list header, reused by reset
+	private LongWordBitReader posLongWordBitReader = null;
+	
+	/** The value returned by {@link #nextPosition()} when all positions of the current posting have been returned. */
+	public static final int END_OF_POSITIONS = -1;
 	
 	private int[] currentPositions;
-	private boolean positionsDecoded;
+	
+	// the positions of the current posting read so far, in a buffer growing with the largest freq seen
+	private int[] positionsBuffer = new int[16];
+	private int positionsRead;
+	// the number of positions of the current posting returned by nextPosition()
+	private int nextPositionIndex;
 
 	/** 
 	 * Create an empty EFBlockIterablePosting.
@@ -72,9 +82,23 @@ public class EFBlockIterablePosting extends EFBasicIterablePosting implements Bl
 								  final int log2Quantum, 
 								  final long docidsPosition, final long freqsPosition, final long posPosition)
 	{
-		super(docidList, freqList, doi, numEntries, upperBoundDocid, upperBoundFreq, log2Quantum, docidsPosition, freqsPosition);
+		reset(docidList, freqList, posList, doi, numEntries, upperBoundDocid, upperBoundFreq, log2Quantum, docidsPosition, freqsPosition, posPosition);
+	}
+	
+	/**
+	 * Reset this EFBlockIterablePosting to the beginning of another posting list, with the same parameters of
+	 * {@link #EFBlockIterablePosting(LongBigList, LongBigList, LongBigList, DocumentIndex, int, int, int, int, long, long, long)}.
+	 * Its readers and its positions buffer are reused, so no objects are allocated.
+	 */
+	void reset(final LongBigList docidList, final LongBigList freqList, final LongBigList posList, 
+			   final DocumentIndex doi, final int numEntries, 
+			   final int upperBoundDocid, final int upperBoundFreq,
+			   final int log2Quantum, 
+			   final long docidsPosition, final long freqsPosition, final long posPosition)
+	{
+		super.reset(docidList, freqList, doi, numEntries, upperBoundDocid, upperBoundFreq, log2Quantum, docidsPosition, freqsPosition);
 		
-		LongWordBitReader posLongWordBitReader = new LongWordBitReader( posList, 0 );
+		posLongWordBitReader = (posLongWordBitReader == null) ? new LongWordBitReader( posList, 0 ) : posLongWordBitReader.reset( posList, 0 );
 		posLongWordBitReader.position(posPosition);
 				
 		// the number of lower bits for the EF encoding of a list of given length, upper bound and strictness.
@@ -84,48 +108,134 @@ public class EFBlockIterablePosting extends EFBasicIterablePosting implements Bl
 		// the size in bits of forward or skip pointers to the EF encoding of a list of given length, upper bound and strictness.
 		int pointerSize = (numberOfPointers == 0 ? -1 : (int) posLongWordBitReader.readNonZeroGamma());
 		
-		
-		this.posReader = new PositionReader( posList, l, posLongWordBitReader.position(), numberOfPointers, pointerSize, upperBoundFreq, log2Quantum );
-		currentPositions = null;
+		if (posReader == null)
+			this.posReader = new PositionReader( posList, l, posLongWordBitReader.position(), numberOfPointers, pointerSize, upperBoundFreq, log2Quantum );
+		else
+			this.posReader.reset( posList, l, posLongWordBitReader.position(), numberOfPointers, pointerSize, upperBoundFreq, log2Quantum );
+		resetPositions();
 	}
 	
-	/** {@inheritDoc} */
+	/** 
+	 * {@inheritDoc}
+	 * The returned array is allocated once per posting: see {@link #getPositions(int[])} and {@link #decodePositions()} 
+	 * to decode positions without allocations.
+	 */
 	@Override
 	public int[] getPositions()
 	{
-		if (!positionsDecoded) {
-			int numPositions = super.getFrequency();
-			currentPositions = new int[numPositions];
-		
-			currentPositions[0] = posReader.getFirstPosition(super.freqReader.prevPrefixSum() + super.freqReader.currentIndex() - 1);
-			for (int i = 1; i < numPositions; i++)
-				currentPositions[i] = posReader.getNextPosition();
-			positionsDecoded = true;
-		}
+		if (currentPositions == null)
+			currentPositions = Arrays.copyOf(positionsBuffer, decodePositions());
 		return currentPositions;
 	}
 	
+	/**
+	 * Decode the positions of the current posting into the given buffer.
+	 * 
+	 * @param buffer the buffer to fill, at least as long as the freq of the current posting
+	 * @return the number of positions, i.e., the freq of the current posting
+	 */
+	public int getPositions(final int[] buffer)
+	{
+		final int numPositions = decodePositions();
+		System.arraycopy(positionsBuffer, 0, buffer, 0, numPositions);
+		return numPositions;
+	}
+	
+	/**
+	 * Decode the positions of the current posting into the buffer owned by this iterator, returned by {@link #getPositionsBuffer()}.
+	 * 
+	 * @return the number of positions, i.e., the freq of the current posting
+	 */
+	public int decodePositions()
+	{
+		final int numPositions = super.getFrequency();
+		readPositions(numPositions);
+		return numPositions;
+	}
+	
+	/**
+	 * Return the buffer owned by this iterator, whose first {@link #decodePositions()} elements are the positions 
+	 * of the current posting. It is overwritten when the iterator moves, and replaced when it grows.
+	 * 
+	 * @return the buffer of positions
+	 */
+	public int[] getPositionsBuffer()
+	{
+		return positionsBuffer;
+	}
+	
+	/**
+	 * Return the next position of the current posting, decoding positions one at a time, so that a caller 
+	 * can stop as soon as it has found what it needs.
+	 * 
+	 * @return the next position, or {@link #END_OF_POSITIONS} if all positions of the current posting have been returned
+	 */
+	public int nextPosition()
+	{
+		if (nextPositionIndex >= super.getFrequency())
+			return END_OF_POSITIONS;
+		readPositions(nextPositionIndex + 1);
+		return positionsBuffer[nextPositionIndex++];
+	}
+	
+	/**
+	 * Make sure the first positions of the current posting have been read into the positions buffer.
+	 */
+	private void readPositions(final int count)
+	{
+		if (positionsRead >= count)
+			return;
+		if (positionsRead == 0) {
+			final int numPositions = super.getFrequency();
+			if (positionsBuffer.length < numPositions)
+				positionsBuffer = new int[Math.max(numPositions, 2 * positionsBuffer.length)];
+			positionsBuffer[positionsRead++] = posReader.getFirstPosition(super.freqReader.prevPrefixSum() + super.freqReader.currentIndex() - 1);
+		}
+		while (positionsRead < count)
+			positionsBuffer[positionsRead++] = posReader.getNextPosition();
+	}
+	
+	/**
+	 * Forget the positions of the previous posting.
+	 */
+	private void resetPositions()
+	{
+		currentPositions = null;
+		positionsRead = 0;
+		nextPositionIndex = 0;
+	}
+	
 	/** {@inheritDoc} */
 	@Override
 	public int next() throws IOException 
 	{
+		assert usable() : "Posting list moved after it was closed";
 		if ( currentDocument == IterablePosting.END_OF_LIST ) 
 			return IterablePosting.END_OF_LIST;
 
 		if ( ( currentDocument = docidReader.getNextPrefixSum() ) >= N ) {
 			currentDocument = IterablePosting.END_OF_LIST;
 		} else {
-			currentFrequency = freqReader.getLong( docidReader.currentIndex - 1 );
-			positionsDecoded = false;
+			freqDecoded = false;
+			resetPositions();
 		}
 		
 		return (int) currentDocument;	
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public int nextBatch(final int[] docids, final int[] freqs) throws IOException 
+	{
+		resetPositions();
+		return super.nextBatch(docids, freqs);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public int next(int targetId) throws IOException 
 	{
+		assert usable() : "Posting list moved after it was closed";
 		if ( targetId >= N ) 
 			return (int) (currentDocument = IterablePosting.END_OF_LIST);
 
@@ -135,8 +245,8 @@ public class EFBlockIterablePosting extends EFBasicIterablePosting implements Bl
 		if ( ( currentDocument = docidReader.skipTo( targetId ) ) >= N ) {
 			currentDocument = IterablePosting.END_OF_LIST;
 		}  else {
-			currentFrequency = freqReader.getLong( docidReader.currentIndex - 1 );
-			positionsDecoded = false;
+			freqDecoded = false;
+			resetPositions();
 		}
 		
 		return (int) currentDocument;
@@ -0,0 +1,151 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.structures;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.terrier.structures.IndexOnDisk;
+
+import it.cnr.isti.hpclab.ef.BlockMaxEncoder;
+import it.cnr.isti.hpclab.ef.EliasFano;
+
+/**
+ * The block-max metadata of an Elias-Fano index, written at compression time by {@link BlockMaxEncoder}: for every quantum 
+ * of postings of a term, the last docid, the maximum freq and the minimum document length. 
+ * Blocks are read on demand with positional reads, so this structure can be shared by many threads.
+ */
+public class EFBlockMaxIndex implements Closeable
+{
+	/**
+	 * The blocks of a posting list.
+	 */
+	public static final class Blocks
+	{
+		/** The last docid of every block. */
+		public final int[] lastDocids;
+		/** The maximum freq of every block. */
+		public final int[] maxFreqs;
+		/** The minimum document length of every block. */
+		public final int[] minDocLengths;
+		
+		private Blocks(final int numBlocks)
+		{
+			this.lastDocids = new int[numBlocks];
+			this.maxFreqs = new int[numBlocks];
+			this.minDocLengths = new int[numBlocks];
+		}
+		
+		/**
+		 * Return the number of blocks.
+		 * @return the number of blocks
+		 */
+		public int size()
+		{
+			return lastDocids.length;
+		}
+	}
+	
+	private final FileChannel offsets;
+	private final FileChannel blocks;
+	private final int log2Quantum;
+	
+	/**
+	 * Constructor.
+	 * @param index the Elias-Fano index containing the block-max metadata
+	 * @throws IOException if something goes wrong in opening the block-max files
+	 */
+	public EFBlockMaxIndex(final IndexOnDisk index) throws IOException
+	{
+		this(index.getPath() + File.separator + index.getPrefix(), Integer.parseInt(index.getIndexProperty(EliasFano.LOG2QUANTUM, "8")));
+	}
+	
+	/**
+	 * Constructor.
+	 * @param path the path and prefix of the Elias-Fano index containing the block-max metadata
+	 * @param log2Quantum log2 of quantum, i.e., of the number of postings per block
+	 * @throws IOException if something goes wrong in opening the block-max files
+	 */
+	public EFBlockMaxIndex(final String path, final int log2Quantum) throws IOException
+	{
+		this.offsets = FileChannel.open(Paths.get(path + EliasFano.BLOCKMAX_OFFSETS_EXTENSION), StandardOpenOption.READ);
+		this.blocks = FileChannel.open(Paths.get(path + EliasFano.BLOCKMAX_EXTENSION), StandardOpenOption.READ);
+		this.log2Quantum = log2Quantum;
+	}
+	
+	/**
+	 * Return the number of postings per block.
+	 * @return the number of postings per block
+	 */
+	public int blockSize()
+	{
+		return 1 << log2Quantum;
+	}
+	
+	/**
+	 * Read the blocks of a posting list.
+	 * 
+	 * @param termId the termid of the posting list
+	 * @return the blocks of the posting list
+	 * @throws IOException if something goes wrong
+	 */
+	public Blocks read(final int termId) throws IOException
+	{
+		final ByteBuffer range = ByteBuffer.allocate(2 * Long.BYTES);
+		readFully(offsets, range, (long) termId * Long.BYTES);
+		final long firstBlock = range.getLong(0);
+		final int numBlocks = (int) (range.getLong(Long.BYTES) - firstBlock);
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(numBlocks * BlockMaxEncoder.BLOCK_SIZE);
+		readFully(blocks, buffer, firstBlock * BlockMaxEncoder.BLOCK_SIZE);
+		
+		final Blocks res = new Blocks(numBlocks);
+		for (int i = 0; i < numBlocks; i++) {
+			res.lastDocids[i] = buffer.getInt();
+			res.maxFreqs[i] = buffer.getInt();
+			res.minDocLengths[i] = buffer.getInt();
+		}
+		return res;
+	}
+	
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("Unexpected end of block-max file at position " + position);
+			position += read;
+		}
+		buffer.flip();
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		offsets.close();
+		blocks.close();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.structures;
+
+import java.io.IOException;
+
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * An iterable posting over a posting list inlined in its lexicon entry, see {@link EFLexiconEntry#isInline()}.
+ * It reads the postings from the entry only, so opening and traversing it never accesses the docid and freq files.
+ */
+public class EFInlineIterablePosting extends EFBasicIterablePosting
+{
+	private final int[] docids = new int[EFLexiconEntry.MAX_INLINE_ENTRIES];
+	private final int[] freqs = new int[EFLexiconEntry.MAX_INLINE_ENTRIES];
+	// the index of the current posting
+	private int current;
+	
+	/** 
+	 * Create an empty EFInlineIterablePosting.
+	 */
+	public EFInlineIterablePosting()
+	{
+	}
+	
+	/**
+	 * Create a EFInlineIterablePosting object.
+	 * 
+	 * @param doi the document index to use to read document lengths
+	 * @param upperBoundDocid upper bound on the docids
+	 * @param le the lexicon entry containing the inlined posting list
+	 */
+	public EFInlineIterablePosting(final DocumentIndex doi, final int upperBoundDocid, final EFLexiconEntry le)
+	{
+		reset(doi, upperBoundDocid, le);
+	}
+	
+	/**
+	 * Reset this EFInlineIterablePosting to the beginning of another inlined posting list, 
+	 * with the same parameters of {@link #EFInlineIterablePosting(DocumentIndex, int, EFLexiconEntry)}.
+	 * 
+	 * @throws IllegalArgumentException if the posting list of the lexicon entry is not inlined
+	 */
+	public void reset(final DocumentIndex doi, final int upperBoundDocid, final EFLexiconEntry le)
+	{
+		if (!le.isInline())
+			throw new IllegalArgumentException("The posting list of term " + le.getTermId() + " is not inlined in its lexicon entry");
+		this.doi = doi;
+		this.N = upperBoundDocid;
+		this.numEntries = le.getDocumentFrequency();
+		for (int i = 0; i < numEntries; i++) {
+			docids[i] = le.getInlineDocid(i);
+			freqs[i] = le.getInlineFrequency(i);
+		}
+		current = -1;
+		currentDocument = -1;
+		currentFrequency = 0;
+		// freqs are never decoded lazily
+		freqDecoded = true;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int next() throws IOException
+	{
+		assert usable() : "Posting list moved after it was closed";
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return IterablePosting.END_OF_LIST;
+		
+		if (++current < numEntries) {
+			currentDocument = docids[current];
+			currentFrequency = freqs[current];
+		} else {
+			currentDocument = IterablePosting.END_OF_LIST;
+		}
+		return (int) currentDocument;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int next(final int targetId) throws IOException
+	{
+		assert usable() : "Posting list moved after it was closed";
+		if ( targetId >= N ) 
+			return (int) (currentDocument = IterablePosting.END_OF_LIST);
+		
+		while (currentDocument < targetId && currentDocument != IterablePosting.END_OF_LIST)
+			next();
+		return (int) currentDocument;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int nextBatch(final int[] docids, final int[] freqs) throws IOException
+	{
+		assert usable() : "Posting list moved after it was closed";
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return 0;
+		
+		final int count = (int) Math.min(docids.length, numEntries - current - 1);
+		if (count <= 0) {
+			currentDocument = IterablePosting.END_OF_LIST;
+			return 0;
+		}
+		System.arraycopy(this.docids, current + 1, docids, 0, count);
+		System.arraycopy(this.freqs, current + 1, freqs, 0, count);
+		
+		current += count;
+		currentDocument = this.docids[current];
+		currentFrequency = this.freqs[current];
+		return count;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int get(final int index)
+	{
+		if (index < 0 || index >= numEntries)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + numEntries + " postings");
+		return docids[index];
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int rank(final int docid)
+	{
+		int rank = 0;
+		while (rank < numEntries && docids[rank] < docid)
+			rank++;
+		return rank;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public long getCurrentDocidPosition()
+	{
+		return current;
+	}
+}
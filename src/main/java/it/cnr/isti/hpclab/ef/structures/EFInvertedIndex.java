@@ -23,15 +23,17 @@ package it.cnr.isti.hpclab.ef.structures;
 import it.cnr.isti.hpclab.ef.EliasFano;
 import it.unimi.dsi.fastutil.longs.LongBigList;
 import it.unimi.dsi.util.ByteBufferLongBigList;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.Map;
 import org.terrier.structures.BitIndexPointer;
 import org.terrier.structures.DocumentIndex;
-import org.terrier.structures.FSOMapFileLexicon.MapFileLexiconIterator;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.Pointer;
@@ -43,6 +45,9 @@ import org.terrier.structures.postings.IterablePosting;
  * Class to access an Elias-Fano encoded inverted index in Terrier.
  */
 public class EFInvertedIndex implements PostingIndex<BitIndexPointer> {
+    /** The maximum number of closed posting lists kept by every thread for reuse. */
+    protected static final int MAX_POOLED_POSTINGS = 64;
+    
     protected final IndexOnDisk index;
     protected final DocumentIndex doi;
     
@@ -50,6 +55,17 @@ public class EFInvertedIndex implements PostingIndex<BitIndexPointer> {
     protected final LongBigList freqsList;
     protected final LongBigList posList;
     
+    // index constants, cached to open posting lists without property lookups
+    protected final int N;
+    protected final int log2Quantum;
+    protected final boolean hasPositions;
+    
+    // closed posting lists, reset when a new one is opened by the same thread: a posting list is reused as soon as it is closed, 
+    // so a reference kept after closing it reads the postings of another term (moving it fails only when assertions are enabled)
+    private final ThreadLocal<ArrayDeque<EFBasicIterablePosting>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<ArrayDeque<EFBasicIterablePosting>> blockPool = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<ArrayDeque<EFBasicIterablePosting>> inlinePool = ThreadLocal.withInitial(ArrayDeque::new);
+    
     /**
      * Basic Constructor.
      * @param index the index containing the inverted index
@@ -76,40 +92,79 @@ public class EFInvertedIndex implements PostingIndex<BitIndexPointer> {
             throw new IllegalStateException();
         }
 
+        N           = index.getCollectionStatistics().getNumberOfDocuments();
+        log2Quantum = index.getIntIndexProperty(EliasFano.LOG2QUANTUM, 0);
+        hasPositions = "true".equals(index.getIndexProperty(EliasFano.HAS_POSITIONS, "false"));
+        
+        // Sanity check
+        if (log2Quantum == 0) {
+            throw new IllegalStateException();
+        }
+
         docidsList  = ByteBufferLongBigList.map( new FileInputStream( index.getPath() + File.separator + index.getPrefix() + EliasFano.DOCID_EXTENSION ).getChannel(), byteOrder, MapMode.READ_ONLY );
         freqsList   = ByteBufferLongBigList.map( new FileInputStream( index.getPath() + File.separator + index.getPrefix() + EliasFano.FREQ_EXTENSION  ).getChannel(), byteOrder, MapMode.READ_ONLY );
         
-        if (hasPositions())
+        if (hasPositions)
             posList = ByteBufferLongBigList.map( new FileInputStream( index.getPath() + File.separator + index.getPrefix() + EliasFano.POS_EXTENSION   ).getChannel(), byteOrder, MapMode.READ_ONLY );
         else
             posList = null;
     }
     
+    /**
+     * {@inheritDoc}
+     * Posting lists are taken from a per-thread pool of closed posting lists of the same kind and reset, 
+     * so opening them allocates nothing: they return to the pool when closed.
+     * Posting lists inlined in their lexicon entries are read from the entries, without accessing the docid and freq files.
+     */
     @Override
     public IterablePosting getPostings(final Pointer pointer) throws IOException {
-        int df           = ((EFLexiconEntry)pointer).getDocumentFrequency();
-        long docidOffset = ((EFLexiconEntry)pointer).getDocidOffset();
-        long freqOffset  = ((EFLexiconEntry)pointer).getFreqOffset();
-        int F            = ((EFLexiconEntry)pointer).getFrequency();
-        
-        int N            = index.getCollectionStatistics().getNumberOfDocuments();
-        int log2Quantum  = index.getIntIndexProperty(EliasFano.LOG2QUANTUM, 0);
-        
-        // Sanity check
-        if (log2Quantum == 0) {
-            throw new IllegalStateException();
+        if (((EFLexiconEntry) pointer).isInline()) {
+            EFBasicIterablePosting rtr = inlinePool.get().poll();
+            if (rtr == null)
+                rtr = new EFInlineIterablePosting();
+            reset(rtr, (EFLexiconEntry) pointer);
+            return rtr;
         }
         
-        IterablePosting rtr = null;
-        if (hasPositions()) {
-            long posOffset  = ((EFBlockLexiconEntry)pointer).getPosOffset();
-            rtr = new EFBlockIterablePosting(docidsList, freqsList, posList, doi, df, N, F, log2Quantum, docidOffset, freqOffset, posOffset);
-        } else {
-            rtr = new EFBasicIterablePosting(docidsList, freqsList, doi, df, N, F, log2Quantum, docidOffset, freqOffset);
-        }
+        EFBasicIterablePosting rtr = (hasPositions ? blockPool : pool).get().poll();
+        if (rtr == null)
+            rtr = hasPositions ? new EFBlockIterablePosting() : new EFBasicIterablePosting();
+        reset(rtr, (EFLexiconEntry) pointer);
         return rtr;
     }
     
+    /**
+     * Reset a posting list opened by this inverted index to the beginning of the posting list of another term.
+     * 
+     * @param posting the posting list to reset
+     * @param le the lexicon entry of the term
+     * @throws IllegalArgumentException if the posting list of the term is inlined and the posting list to reset is not, or vice versa
+     */
+    void reset(final EFBasicIterablePosting posting, final EFLexiconEntry le) {
+        if (posting instanceof EFInlineIterablePosting)
+            ((EFInlineIterablePosting) posting).reset(doi, N, le);
+        else if (le.isInline())
+            throw new IllegalArgumentException("The posting list of term " + le.getTermId() + " is inlined in its lexicon entry");
+        else if (posting instanceof EFBlockIterablePosting)
+            ((EFBlockIterablePosting) posting).reset(docidsList, freqsList, posList, doi, le.getDocumentFrequency(), N, le.getFrequency(), log2Quantum, le.getDocidOffset(), le.getFreqOffset(), ((EFBlockLexiconEntry) le).getPosOffset());
+        else
+            posting.reset(docidsList, freqsList, doi, le.getDocumentFrequency(), N, le.getFrequency(), log2Quantum, le.getDocidOffset(), le.getFreqOffset());
+        posting.owner = this;
+        posting.open = true;
+    }
+    
+    /**
+     * Keep a closed posting list for reuse by the current thread.
+     * 
+     * @param posting the closed posting list
+     */
+    void recycle(final EFBasicIterablePosting posting) {
+        final ArrayDeque<EFBasicIterablePosting> postings = (posting instanceof EFInlineIterablePosting) ? inlinePool.get() 
+                                                          : (posting instanceof EFBlockIterablePosting) ? blockPool.get() : pool.get();
+        if (postings.size() < MAX_POOLED_POSTINGS)
+            postings.push(posting);
+    }
+    
     /**  Empty method, nothing to close. */
     @Override
     public void close() {
@@ -121,23 +176,26 @@ public class EFInvertedIndex implements PostingIndex<BitIndexPointer> {
      * @return true if the index contains positional information, false otherwise.
      */
     public boolean hasPositions() {
-        return "true".equals(index.getIndexProperty(EliasFano.HAS_POSITIONS, "false"));
+        return hasPositions;
     }
     
     public static class InputIterator implements PostingIndexInputStream {
-        private final MapFileLexiconIterator lexIter;
+        // the lexicon input stream, of a FSOMapFileLexicon or of an EFLexicon
+        private final Iterator<Map.Entry<String, LexiconEntry>> lexIter;
         private final EFInvertedIndex invIndex;
         private LexiconEntry currentPointer;
         private int entriesSkipped;
         
+        @SuppressWarnings("unchecked")
         public InputIterator(final IndexOnDisk index) {
-            lexIter = (MapFileLexiconIterator) index.getIndexStructureInputStream("lexicon");
+            lexIter = (Iterator<Map.Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
             invIndex = (EFInvertedIndex) index.getInvertedIndex();
         }
         
         @Override
         public void close() throws IOException {
-            lexIter.close();
+            if (lexIter instanceof Closeable)
+                ((Closeable) lexIter).close();
             invIndex.close();
         }
 
@@ -0,0 +1,406 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef.structures;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.util.BitPackedArray;
+import it.cnr.isti.hpclab.ef.util.EFSequence;
+import it.cnr.isti.hpclab.ef.util.FrontCodedTerms;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * A memory-resident lexicon for Elias-Fano indexes with aligned termids, replacing the binary search over the fixed-size records of a
+ * FSOMapFileLexicon with a hash table from terms to termids, and the records with termid-indexed columns of statistics and offsets.
+ * Terms are front coded in blocks, see {@link FrontCodedTerms}, and the hash table is open addressing with linear probing over termids, 
+ * so a lookup costs the hash of the term and, on average, less than two decodings of a term in its block.
+ * Since termids are aligned, the terms starting with a prefix, e.g., of a wildcard, have contiguous termids, 
+ * found with a binary search over the first terms of the blocks, see {@link #getPrefixRange(String)}.
+ * The columns are compressed with random access by termid: the offsets, monotone in termid order, with Elias-Fano, 
+ * in constant time on average (see {@link EFSequence}), and the statistics packed with the bit width of their largest value, in constant time. The offsets of the posting lists inlined in their entries, 
+ * see {@link EFLexiconEntry#isInline()}, are not monotone, so they are kept in separate columns over the inlined terms only, 
+ * indexed by the Elias-Fano encoded number of inlined terms before every termid.
+ * It is written by {@link #write(IndexOnDisk)} from the lexicon input stream of the index, and loaded by Terrier through the
+ * <code>index.lexicon.class</code> property, then it can be streamed by {@link InputIterator} through the 
+ * <code>index.lexicon-inputstream.class</code> property.
+ */
+public class EFLexicon extends Lexicon<String>
+{
+	protected final int numTerms;
+	protected final boolean hasPositions;
+	
+	protected final FrontCodedTerms terms;
+	// termid + 1 of the terms by hash, 0 for empty slots
+	protected final int[] table;
+	
+	protected final BitPackedArray n_t;
+	protected final BitPackedArray TF;
+	protected final BitPackedArray maxtf;
+	protected final EFSequence docidOffsets;
+	protected final EFSequence freqOffsets;
+	protected final EFSequence posOffsets;
+	// the number of inlined terms before every termid, and the inlined offsets, indexed by this number
+	protected final EFSequence inlineRanks;
+	protected final long[] inlineDocids;
+	protected final BitPackedArray inlineFreqs;
+	
+	/**
+	 * Constructor.
+	 * @param structureName the name of the lexicon structure, usually <code>lexicon</code>
+	 * @param index the Elias-Fano index containing the lexicon
+	 * @throws IOException if something goes wrong in reading the lexicon file
+	 */
+	public EFLexicon(final String structureName, final IndexOnDisk index) throws IOException
+	{
+		this(index.getPath() + File.separator + index.getPrefix() + "." + structureName + EliasFano.LEXICON_EXTENSION);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param filename the lexicon file
+	 * @throws IOException if something goes wrong in reading the lexicon file
+	 */
+	public EFLexicon(final String filename) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			numTerms = in.readInt();
+			hasPositions = in.readBoolean();
+			
+			terms = FrontCodedTerms.read(in);
+			table = new int[in.readInt()];
+			for (int i = 0; i < table.length; i++)
+				table[i] = in.readInt();
+			
+			n_t = BitPackedArray.read(in);
+			TF = BitPackedArray.read(in);
+			maxtf = BitPackedArray.read(in);
+			docidOffsets = EFSequence.read(in);
+			freqOffsets = EFSequence.read(in);
+			posOffsets = hasPositions ? EFSequence.read(in) : null;
+			
+			inlineRanks = EFSequence.read(in);
+			inlineDocids = new long[in.readInt()];
+			for (int i = 0; i < inlineDocids.length; i++)
+				inlineDocids[i] = in.readLong();
+			inlineFreqs = BitPackedArray.read(in);
+		}
+	}
+	
+	/**
+	 * Write the lexicon file of an index, reading its lexicon input stream, whose termids must be aligned.
+	 * 
+	 * @param index the Elias-Fano index
+	 * @throws IOException if something goes wrong
+	 */
+	public static void write(final IndexOnDisk index) throws IOException
+	{
+		final boolean hasPositions = "true".equals(index.getIndexProperty(EliasFano.HAS_POSITIONS, "false"));
+		
+		final FrontCodedTerms.Builder terms = new FrontCodedTerms.Builder();
+		final IntArrayList hashes = new IntArrayList();
+		final IntArrayList n_t = new IntArrayList(), TF = new IntArrayList(), maxtf = new IntArrayList();
+		final LongArrayList docidOffsets = new LongArrayList(), freqOffsets = new LongArrayList(), posOffsets = new LongArrayList();
+		final LongArrayList inlineRanks = new LongArrayList(), inlineDocids = new LongArrayList();
+		final IntArrayList inlineFreqs = new IntArrayList();
+		
+		@SuppressWarnings("unchecked")
+		final Iterator<Map.Entry<String, LexiconEntry>> lexIter = (Iterator<Map.Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		while (lexIter.hasNext()) {
+			final Map.Entry<String, LexiconEntry> e = lexIter.next();
+			final EFLexiconEntry le = (EFLexiconEntry) e.getValue();
+			if (le.getTermId() != hashes.size())
+				throw new IllegalStateException("Termids of " + index + " are not aligned, found termid " + le.getTermId() + " at position " + hashes.size());
+			
+			final byte[] term = e.getKey().getBytes(StandardCharsets.UTF_8);
+			terms.add(term);
+			hashes.add(hash(term));
+			n_t.add(le.getDocumentFrequency());
+			TF.add(le.getFrequency());
+			maxtf.add(le.getMaxFrequencyInDocuments());
+			inlineRanks.add(inlineDocids.size());
+			if (le.isInline()) {
+				// the offsets of the previous term keep the offset columns monotone
+				docidOffsets.add(docidOffsets.isEmpty() ? 0 : docidOffsets.getLong(docidOffsets.size() - 1));
+				freqOffsets.add(freqOffsets.isEmpty() ? 0 : freqOffsets.getLong(freqOffsets.size() - 1));
+				inlineDocids.add(le.getDocidField());
+				inlineFreqs.add((int) le.getFreqField());
+			} else {
+				docidOffsets.add(le.getDocidOffset());
+				freqOffsets.add(le.getFreqOffset());
+			}
+			if (hasPositions)
+				posOffsets.add(((EFBlockLexiconEntry) le).getPosOffset());
+		}
+		if (lexIter instanceof Closeable)
+			((Closeable) lexIter).close();
+		
+		final int numTerms = hashes.size();
+		inlineRanks.add(inlineDocids.size());
+		
+		// at least twice as many slots as terms, so the load factor is at most 1/2
+		final int[] table = new int[Integer.highestOneBit(Math.max(1, numTerms)) << 2];
+		for (int termId = 0; termId < numTerms; termId++) {
+			int slot = hashes.getInt(termId) & (table.length - 1);
+			while (table[slot] != 0)
+				slot = (slot + 1) & (table.length - 1);
+			table[slot] = termId + 1;
+		}
+		
+		final String filename = index.getPath() + File.separator + index.getPrefix() + ".lexicon" + EliasFano.LEXICON_EXTENSION;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			out.writeInt(numTerms);
+			out.writeBoolean(hasPositions);
+			terms.build().write(out);
+			out.writeInt(table.length);
+			for (int slot: table)
+				out.writeInt(slot);
+			BitPackedArray.of(n_t.elements(), numTerms).write(out);
+			BitPackedArray.of(TF.elements(), numTerms).write(out);
+			BitPackedArray.of(maxtf.elements(), numTerms).write(out);
+			EFSequence.of(docidOffsets.elements(), numTerms).write(out);
+			EFSequence.of(freqOffsets.elements(), numTerms).write(out);
+			if (hasPositions)
+				EFSequence.of(posOffsets.elements(), numTerms).write(out);
+			
+			EFSequence.of(inlineRanks.elements(), numTerms + 1).write(out);
+			out.writeInt(inlineDocids.size());
+			for (int i = 0; i < inlineDocids.size(); i++)
+				out.writeLong(inlineDocids.getLong(i));
+			BitPackedArray.of(inlineFreqs.elements(), inlineFreqs.size()).write(out);
+		}
+	}
+	
+	/** Return the hash of the UTF-8 bytes of a term, whose lowest bits are its first slot in the hash table. */
+	private static int hash(final byte[] term)
+	{
+		return HashCommon.murmurHash3(Arrays.hashCode(term));
+	}
+	
+	/**
+	 * Return the termid of a term, with a lookup in the hash table.
+	 * 
+	 * @param term the term
+	 * @return the termid of the term, or -1 if the term is not in the lexicon
+	 */
+	public int getTermId(final String term)
+	{
+		final byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+		final int mask = table.length - 1;
+		for (int slot = hash(bytes) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			final int termId = table[slot] - 1;
+			if (terms.equals(termId, bytes))
+				return termId;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Return the term of a termid.
+	 * 
+	 * @param termId the termid
+	 * @return the term
+	 */
+	public String getTerm(final int termId)
+	{
+		return terms.get(termId);
+	}
+	
+	/**
+	 * Return a new lexicon entry with the statistics and offsets of a termid.
+	 * 
+	 * @param termId the termid
+	 * @return the lexicon entry of the termid
+	 */
+	public EFLexiconEntry newLexiconEntry(final int termId)
+	{
+		if (hasPositions)
+			return new EFBlockLexiconEntry(termId, n_t.getInt(termId), TF.getInt(termId), maxtf.getInt(termId), docidOffsets.get(termId), freqOffsets.get(termId), posOffsets.get(termId));
+		final long inlineRank = inlineRanks.get(termId);
+		if (inlineRanks.get(termId + 1) != inlineRank) {
+			final EFLexiconEntry le = new EFLexiconEntry(termId, n_t.getInt(termId), TF.getInt(termId), maxtf.getInt(termId), 0, 0);
+			le.setFields(inlineDocids[(int) inlineRank], inlineFreqs.getInt(inlineRank));
+			return le;
+		}
+		return new EFLexiconEntry(termId, n_t.getInt(termId), TF.getInt(termId), maxtf.getInt(termId), docidOffsets.get(termId), freqOffsets.get(termId));
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int numberOfEntries() 
+	{
+		return numTerms;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public LexiconEntry getLexiconEntry(final String term) 
+	{
+		final int termId = getTermId(term);
+		return termId < 0 ? null : newLexiconEntry(termId);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Map.Entry<String, LexiconEntry> getLexiconEntry(final int termId) 
+	{
+		if (termId < 0 || termId >= numTerms)
+			return null;
+		return new AbstractMap.SimpleImmutableEntry<>(getTerm(termId), newLexiconEntry(termId));
+	}
+
+	/** Termids are aligned, so the i-th entry is the one of termid i. */
+	@Override
+	public Map.Entry<String, LexiconEntry> getIthLexiconEntry(final int index) 
+	{
+		return getLexiconEntry(index);
+	}
+	
+	/**
+	 * Return the range of termids of the terms starting with a prefix.
+	 * 
+	 * @param prefix the prefix
+	 * @return the first termid, inclusive, and the last termid, exclusive, of the terms starting with the prefix
+	 */
+	public int[] getTermIdRange(final String prefix)
+	{
+		return terms.prefixRange(prefix.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Return the entries of the terms starting with a prefix, in termid order.
+	 * 
+	 * @param prefix the prefix
+	 * @return the entries of the terms starting with the prefix
+	 */
+	public Iterator<Map.Entry<String, LexiconEntry>> getPrefixRange(final String prefix)
+	{
+		final int[] range = getTermIdRange(prefix);
+		return new TermIdIterator(range[0], range[1]);
+	}
+
+	/** Return the entries of the terms from <code>from</code>, inclusive, to <code>to</code>, exclusive. */
+	@Override
+	public Iterator<Map.Entry<String, LexiconEntry>> getLexiconEntryRange(final String from, final String to) 
+	{
+		return new TermIdIterator(terms.rank(from.getBytes(StandardCharsets.UTF_8)), terms.rank(to.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<Map.Entry<String, LexiconEntry>> iterator() 
+	{
+		return new TermIdIterator(0, numTerms);
+	}
+	
+	/** Nothing to close, the lexicon is in memory. */
+	@Override
+	public void close() throws IOException 
+	{
+		// do nothing
+	}
+	
+	/** An iterator over the entries of a range of termids, decoding the terms sequentially. */
+	private class TermIdIterator implements Iterator<Map.Entry<String, LexiconEntry>>
+	{
+		private final Iterator<String> termIter;
+		private int termId;
+		private final int end;
+		
+		TermIdIterator(final int begin, final int end)
+		{
+			this.termIter = terms.iterator(begin);
+			this.termId = begin;
+			this.end = end;
+		}
+		
+		@Override
+		public boolean hasNext() 
+		{
+			return termId < end;
+		}
+
+		@Override
+		public Map.Entry<String, LexiconEntry> next() 
+		{
+			if (termId >= end)
+				throw new NoSuchElementException();
+			final String term = termIter.next();
+			return new AbstractMap.SimpleImmutableEntry<>(term, newLexiconEntry(termId++));
+		}
+	}
+	
+	/**
+	 * An input stream over the entries of the lexicon of an index, in termid order.
+	 */
+	public static class InputIterator implements Iterator<Map.Entry<String, LexiconEntry>>, Closeable
+	{
+		private final Iterator<Map.Entry<String, LexiconEntry>> iter;
+		
+		/**
+		 * Constructor.
+		 * @param structureName the name of the lexicon structure, usually <code>lexicon</code>
+		 * @param index the Elias-Fano index containing the lexicon
+		 */
+		public InputIterator(final String structureName, final IndexOnDisk index)
+		{
+			this.iter = ((EFLexicon) index.getIndexStructure(structureName)).iterator();
+		}
+		
+		@Override
+		public boolean hasNext() 
+		{
+			return iter.hasNext();
+		}
+
+		@Override
+		public Map.Entry<String, LexiconEntry> next() 
+		{
+			return iter.next();
+		}
+		
+		/** Nothing to close, the lexicon is in memory. */
+		@Override
+		public void close() 
+		{
+			// do nothing
+		}
+	}
+}
@@ -33,10 +33,19 @@ import org.terrier.structures.seralization.FixedSizeWriteableFactory;
  * Contains all the information about one entry in the Lexicon.
  * Based on the BasicLexiconEntry class in Terrier. 
  * Include offsets for docid and freq files compressed with Elias-Fano.  
+ * The posting lists of at most {@link #MAX_INLINE_ENTRIES} postings can be inlined in the entry, see {@link #isInline()}:
+ * the entry then has no offsets, but the 31-bit docids packed in a long and the first freq, the freq of a second posting 
+ * being the TF of the term minus the first freq. When written, they take the place of the docid and freq offsets, 
+ * with the sign bit of the docid offset, never set in a bit offset, marking the inlined entries.
  */
 public class EFLexiconEntry extends LexiconEntry implements BitIndexPointer
 {
 	private static final long serialVersionUID = 1L;
+	
+	/** The largest number of postings of a posting list that can be inlined in its entry */
+	public static final int MAX_INLINE_ENTRIES = 2;
+	
+	private static final int INLINE_DOCID_BITS = 31;
 
 	/** the term id of this entry */
 	public int termId;
@@ -51,6 +60,11 @@ public class EFLexiconEntry extends LexiconEntry implements BitIndexPointer
 	public long docidOffset;
 	public long freqOffset;
 	
+	/** whether the posting list is inlined in this entry, and its packed docids and first freq */
+	protected boolean inline;
+	protected long inlineDocids;
+	protected int inlineFreq;
+	
 	/** 
 	 * Factory for creating EFLexiconEntry objects
 	 */
@@ -116,19 +130,111 @@ public class EFLexiconEntry extends LexiconEntry implements BitIndexPointer
 
 	/** 
 	 * Return the bit offset of the posting list in the docid file 
+	 * @throws IllegalStateException if the posting list is inlined in this entry
 	 */
 	public long getDocidOffset() 
 	{
+		checkNotInline();
 		return this.docidOffset;
 	}
 
 	/** 
 	 * Return the bit offset of the posting list in the freq file 
+	 * @throws IllegalStateException if the posting list is inlined in this entry
 	 */
 	public long getFreqOffset() 
 	{
+		checkNotInline();
 		return this.freqOffset;
 	}
+	
+	private void checkNotInline()
+	{
+		if (inline)
+			throw new IllegalStateException("The posting list of term " + termId + " is inlined in its lexicon entry, it has no offsets");
+	}
+
+	/**
+	 * Return true if the posting list is inlined in this entry, false if it is in the docid and freq files.
+	 */
+	public boolean isInline()
+	{
+		return this.inline;
+	}
+	
+	/**
+	 * Return the docid offset as written in the lexicon file, i.e., the packed docids with the sign bit set if the posting list is inlined.
+	 */
+	long getDocidField()
+	{
+		return inline ? inlineDocids | Long.MIN_VALUE : docidOffset;
+	}
+	
+	/**
+	 * Return the freq offset as written in the lexicon file, i.e., the first freq if the posting list is inlined.
+	 */
+	long getFreqField()
+	{
+		return inline ? inlineFreq : freqOffset;
+	}
+	
+	/**
+	 * Set the offsets, or the inlined posting list, as written in the lexicon file, see {@link #getDocidField()} and {@link #getFreqField()}.
+	 */
+	void setFields(final long docidField, final long freqField)
+	{
+		this.inline = docidField < 0;
+		if (inline) {
+			this.inlineDocids = docidField & Long.MAX_VALUE;
+			this.inlineFreq = (int) freqField;
+			this.docidOffset = this.freqOffset = 0;
+		} else {
+			this.docidOffset = docidField;
+			this.freqOffset = freqField;
+		}
+	}
+	
+	/**
+	 * Inline the posting list in this entry, replacing its offsets. The df and TF of the entry must be set.
+	 * 
+	 * @param docids the increasing docids of the posting list, as many as the df of the entry
+	 * @param freqs the freqs of the posting list, as many as the df of the entry
+	 * @throws IllegalArgumentException if the posting list is longer than {@link #MAX_INLINE_ENTRIES} or does not match the df
+	 */
+	public void setInlinePostings(final int[] docids, final int[] freqs)
+	{
+		if (n_t > MAX_INLINE_ENTRIES || n_t < 1 || docids.length < n_t || freqs.length < n_t)
+			throw new IllegalArgumentException("Posting lists of " + n_t + " postings cannot be inlined");
+		long packed = 0;
+		for (int i = 0; i < n_t; i++)
+			packed |= (long) docids[i] << (i * INLINE_DOCID_BITS);
+		this.inline = true;
+		this.inlineDocids = packed;
+		this.inlineFreq = freqs[0];
+		this.docidOffset = this.freqOffset = 0;
+	}
+	
+	/**
+	 * Return a docid of the posting list inlined in this entry.
+	 * 
+	 * @param index the index of the posting, smaller than the df of the entry
+	 * @return the docid of given index
+	 */
+	public int getInlineDocid(final int index)
+	{
+		return (int) (this.inlineDocids >>> (index * INLINE_DOCID_BITS)) & Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Return a freq of the posting list inlined in this entry.
+	 * 
+	 * @param index the index of the posting, smaller than the df of the entry
+	 * @return the freq of given index
+	 */
+	public int getInlineFrequency(final int index)
+	{
+		return (index == 0) ? this.inlineFreq : TF - this.inlineFreq;
+	}
 
 	/** {@inheritDoc} */
 	@Override
@@ -138,8 +244,7 @@ public class EFLexiconEntry extends LexiconEntry implements BitIndexPointer
 		this.TF          = in.readInt();
 		this.n_t         = in.readInt();
 		this.maxtf		 = in.readInt();
-		this.docidOffset = in.readLong();
-		this.freqOffset  = in.readLong();
+		setFields(in.readLong(), in.readLong());
 	}
 	
 	/** {@inheritDoc} */
@@ -150,14 +255,16 @@ public class EFLexiconEntry extends LexiconEntry implements BitIndexPointer
 		out.writeInt (TF);
 		out.writeInt (n_t);
 		out.writeInt (maxtf);
-		out.writeLong(docidOffset);
-		out.writeLong(freqOffset);
+		out.writeLong(getDocidField());
+		out.writeLong(getFreqField());
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public String toString()
 	{
+		if (inline)
+			return "term "+ termId + " Nt = " + n_t + " TF = " + TF  + "max tf = " + maxtf + " [inline docids " + getInlineDocid(0) + (n_t > 1 ? ", " + getInlineDocid(1) : "") + "]";
 		return "term "+ termId + " Nt = " + n_t + " TF = " + TF  + "max tf = " + maxtf + " [docid @ " + this.docidOffset + " freq @ " + this.freqOffset + "]";
 	}
 
@@ -0,0 +1,407 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef.structures;
+
+import java.io.IOException;
+
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+
+/**
+ * A disjunction of Elias-Fano posting lists: it iterates over the documents containing at least one term.
+ * Every list is decoded in batches with {@link EFBasicIterablePosting#nextBatch(int[], int[])}, and the batches are merged with a loser tree,
+ * costing log(n) comparisons per posting.
+ * With many lists, e.g., wildcard or query expansion terms, the union is instead accumulated in a dense bitmap over windows of docids,
+ * costing a constant time per posting, and the documents are then read from the bitmap in order.
+ */
+public class EFOrIterablePosting implements IterablePosting
+{
+	/** The number of lists from which the dense bitmap is used by default. */
+	public static final int DENSE_THRESHOLD = 32;
+	
+	private static final int BATCH_SIZE = 128;
+	private static final int LOG2_WINDOW_SIZE = 16;
+	private static final int WINDOW_SIZE = 1 << LOG2_WINDOW_SIZE;
+	
+	/** A posting list with its current batch of decoded postings. */
+	private static final class Cursor
+	{
+		final EFBasicIterablePosting posting;
+		final int[] docids = new int[BATCH_SIZE];
+		final int[] freqs = new int[BATCH_SIZE];
+		int pos;
+		int count;
+		
+		Cursor(final EFBasicIterablePosting posting) throws IOException
+		{
+			this.posting = posting;
+			fill();
+		}
+		
+		private void fill() throws IOException
+		{
+			count = posting.nextBatch(docids, freqs);
+			pos = 0;
+		}
+		
+		int docid()
+		{
+			return pos < count ? docids[pos] : IterablePosting.END_OF_LIST;
+		}
+		
+		int freq()
+		{
+			return freqs[pos];
+		}
+		
+		void advance() throws IOException
+		{
+			if (++pos == count)
+				fill();
+		}
+		
+		/** Move to the first posting with docid not less than the target. */
+		void advance(final int target) throws IOException
+		{
+			if (pos >= count || docids[pos] >= target)
+				return;
+			if (docids[count - 1] >= target) {
+				while (docids[pos] < target)
+					pos++;
+				return;
+			}
+			// the target is beyond the batch, so the list skips to it and the batch restarts from there
+			final int docid = posting.next(target);
+			if (docid == IterablePosting.END_OF_LIST) {
+				pos = count = 0;
+			} else {
+				docids[0] = docid;
+				freqs[0] = posting.getFrequency();
+				pos = 0;
+				count = 1;
+			}
+		}
+	}
+	
+	protected final EFBasicIterablePosting[] postings;
+	protected final boolean dense;
+	private final Cursor[] cursors;
+	private final DocumentIndex doi;
+	
+	// loser tree: tree[0] is the winner, i.e., the cursor with the smallest docid, tree[i] the loser at internal node i
+	private int[] tree;
+	private int leaves;
+	
+	// dense window: a bit and the sum of freqs for each docid from windowBase, with bits and freqs cleared once read
+	private long[] windowBits;
+	private int[] windowFreqs;
+	private int windowBase;
+	private int windowPos;
+	
+	protected int currentDocument = -1;
+	protected int currentFrequency = 0;
+	
+	/**
+	 * Constructor, using the dense bitmap from {@link #DENSE_THRESHOLD} lists.
+	 * @param postings the posting lists of the terms
+	 * @throws IOException if something goes wrong
+	 */
+	public EFOrIterablePosting(final EFBasicIterablePosting[] postings) throws IOException
+	{
+		this(postings, postings.length >= DENSE_THRESHOLD);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param postings the posting lists of the terms
+	 * @param dense whether to accumulate the union in a dense bitmap rather than merging with a loser tree
+	 * @throws IOException if something goes wrong
+	 */
+	public EFOrIterablePosting(final EFBasicIterablePosting[] postings, final boolean dense) throws IOException
+	{
+		if (postings.length == 0)
+			throw new IllegalArgumentException("At least one posting list is required");
+		this.postings = postings;
+		this.dense = dense;
+		this.doi = postings[0].getDocumentIndex();
+		this.cursors = new Cursor[postings.length];
+		for (int i = 0; i < postings.length; i++)
+			cursors[i] = new Cursor(postings[i]);
+		
+		if (dense) {
+			windowBits = new long[WINDOW_SIZE >>> 6];
+			windowFreqs = new int[WINDOW_SIZE];
+			// no window read yet, so that skipping moves the lists
+			windowBase = -WINDOW_SIZE;
+			windowPos = WINDOW_SIZE;
+		} else {
+			leaves = Integer.highestOneBit(Math.max(1, cursors.length - 1)) << 1;
+			tree = new int[leaves];
+			buildTree();
+		}
+	}
+	
+	/**
+	 * Return the posting lists of the terms, in the given order. They are positioned at the end of their current batches,
+	 * not on the current document.
+	 * @return the posting lists of the terms
+	 */
+	public EFBasicIterablePosting[] getPostings()
+	{
+		return postings;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int next() throws IOException 
+	{
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return IterablePosting.END_OF_LIST;
+		return dense ? nextDense() : nextMerged();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int next(final int targetId) throws IOException 
+	{
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return IterablePosting.END_OF_LIST;
+		if (currentDocument >= targetId)
+			return currentDocument;
+		
+		if (dense) {
+			if ((long) targetId - windowBase < WINDOW_SIZE) {
+				clearWindow(targetId - windowBase);
+			} else {
+				clearWindow(WINDOW_SIZE);
+				for (Cursor cursor: cursors)
+					cursor.advance(targetId);
+			}
+			return nextDense();
+		}
+		
+		// only the cursors behind the target are moved, each one becoming the winner in turn
+		int winner;
+		while (key(winner = tree[0]) < targetId) {
+			cursors[winner].advance(targetId);
+			replay(winner);
+		}
+		return nextMerged();
+	}
+	
+	private int key(final int leaf)
+	{
+		return leaf < cursors.length ? cursors[leaf].docid() : IterablePosting.END_OF_LIST;
+	}
+	
+	/** Build the loser tree bottom up, with the leaves padded to a power of two. */
+	private void buildTree()
+	{
+		final int[] winners = new int[2 * leaves];
+		for (int i = 0; i < leaves; i++)
+			winners[leaves + i] = i;
+		for (int node = leaves - 1; node >= 1; node--) {
+			final int left = winners[2 * node];
+			final int right = winners[2 * node + 1];
+			if (key(left) <= key(right)) {
+				winners[node] = left;
+				tree[node] = right;
+			} else {
+				winners[node] = right;
+				tree[node] = left;
+			}
+		}
+		tree[0] = winners[1];
+	}
+	
+	/** Replay the matches from a leaf, whose key has changed, to the root. */
+	private void replay(final int leaf)
+	{
+		int winner = leaf;
+		int winnerKey = key(winner);
+		for (int node = (leaf + leaves) >>> 1; node >= 1; node >>>= 1) {
+			final int loserKey = key(tree[node]);
+			if (loserKey < winnerKey) {
+				final int tmp = tree[node];
+				tree[node] = winner;
+				winner = tmp;
+				winnerKey = loserKey;
+			}
+		}
+		tree[0] = winner;
+	}
+	
+	/** Pop all cursors on the smallest docid from the loser tree, summing their freqs. */
+	private int nextMerged() throws IOException
+	{
+		final int docid = key(tree[0]);
+		if (docid == IterablePosting.END_OF_LIST)
+			return currentDocument = IterablePosting.END_OF_LIST;
+		
+		int freq = 0;
+		int winner;
+		while (key(winner = tree[0]) == docid) {
+			final Cursor cursor = cursors[winner];
+			freq += cursor.freq();
+			cursor.advance();
+			replay(winner);
+		}
+		currentFrequency = freq;
+		return currentDocument = docid;
+	}
+	
+	/** Read the next document from the window, filling the next window from the lists when the current one is exhausted. */
+	private int nextDense() throws IOException
+	{
+		while (true) {
+			int word = windowPos >>> 6;
+			if (word < windowBits.length) {
+				long bits = windowBits[word] & (-1L << windowPos);
+				while (bits == 0 && ++word < windowBits.length)
+					bits = windowBits[word];
+				if (bits != 0) {
+					final int offset = (word << 6) + Long.numberOfTrailingZeros(bits);
+					windowBits[word] &= ~(1L << offset);
+					currentFrequency = windowFreqs[offset];
+					windowFreqs[offset] = 0;
+					windowPos = offset + 1;
+					return currentDocument = windowBase + offset;
+				}
+			}
+			if (!fillWindow())
+				return currentDocument = IterablePosting.END_OF_LIST;
+		}
+	}
+	
+	/** Accumulate the postings of all lists in the window starting at the smallest current docid. */
+	private boolean fillWindow() throws IOException
+	{
+		int min = IterablePosting.END_OF_LIST;
+		for (Cursor cursor: cursors)
+			min = Math.min(min, cursor.docid());
+		if (min == IterablePosting.END_OF_LIST)
+			return false;
+		
+		windowBase = min;
+		final long windowEnd = (long) min + WINDOW_SIZE;
+		for (Cursor cursor: cursors) {
+			while (cursor.pos < cursor.count) {
+				final int[] docids = cursor.docids;
+				final int[] freqs = cursor.freqs;
+				int pos = cursor.pos;
+				final int count = cursor.count;
+				while (pos < count && docids[pos] < windowEnd) {
+					final int offset = docids[pos] - min;
+					windowBits[offset >>> 6] |= 1L << offset;
+					windowFreqs[offset] += freqs[pos];
+					pos++;
+				}
+				if (pos < count) {
+					cursor.pos = pos;
+					break;
+				}
+				cursor.pos = pos - 1;
+				cursor.advance();
+			}
+		}
+		windowPos = 0;
+		return true;
+	}
+	
+	/** Clear the bits and freqs of the window before the given offset, so that reading goes on from there. */
+	private void clearWindow(final int limit)
+	{
+		for (int word = windowPos >>> 6; windowPos < limit; word++) {
+			final int end = Math.min(limit, (word + 1) << 6);
+			long bits = windowBits[word] & (-1L << windowPos) & (end - (word << 6) == 64 ? -1L : (1L << end) - 1);
+			windowBits[word] &= ~bits;
+			while (bits != 0) {
+				windowFreqs[(word << 6) + Long.numberOfTrailingZeros(bits)] = 0;
+				bits &= bits - 1;
+			}
+			windowPos = end;
+		}
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int getId() 
+	{
+		return currentDocument;
+	}
+
+	/** 
+	 * Return the sum of the freqs of the terms in the current document.
+	 */
+	@Override
+	public int getFrequency() 
+	{
+		return currentFrequency;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getDocumentLength() 
+	{
+		try {
+			return doi.getDocumentLength(currentDocument);
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setId(final int id) 
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public WritablePosting asWritablePosting() 
+	{
+		return new BasicPostingImpl(currentDocument, currentFrequency);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean endOfPostings() 
+	{
+		return currentDocument == IterablePosting.END_OF_LIST;
+	}
+
+	/** Close all posting lists. */
+	@Override
+	public void close() throws IOException 
+	{
+		for (EFBasicIterablePosting posting: postings)
+			posting.close();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "(" + currentDocument + "," + currentFrequency + ")";
+	}
+}
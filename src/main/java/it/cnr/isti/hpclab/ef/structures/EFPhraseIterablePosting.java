@@ -0,0 +1,67 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.structures;
+
+/**
+ * An exact phrase operator (<code>#1</code>) over Elias-Fano posting lists with positions: a document matches if
+ * the i-th term occurs at position <code>p + i</code> for some position <code>p</code>.
+ * Its frequency is the number of occurrences of the phrase.
+ */
+public class EFPhraseIterablePosting extends EFPositionalIterablePosting
+{
+	/**
+	 * Constructor.
+	 * @param postings the posting lists of the terms, in phrase order
+	 */
+	public EFPhraseIterablePosting(final EFBlockIterablePosting[] postings)
+	{
+		super(postings);
+	}
+	
+	@Override
+	protected boolean match()
+	{
+		// every term must be at the same offset from the first one as in the phrase
+		int start = positions[0];
+		int i = 1;
+		while (i < postings.length) {
+			while (positions[i] - i < start)
+				if (!nextPosition(i))
+					return false;
+			if (positions[i] - i > start) {
+				while (positions[0] < positions[i] - i)
+					if (!nextPosition(0))
+						return false;
+				start = positions[0];
+				i = 1;
+			} else {
+				i++;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	protected boolean advance()
+	{
+		return nextPosition(0);
+	}
+}
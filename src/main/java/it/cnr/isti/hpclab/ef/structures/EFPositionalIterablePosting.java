@@ -0,0 +1,220 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.structures;
+
+import java.io.IOException;
+
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+
+/**
+ * Base class of positional operators over Elias-Fano posting lists with positions, e.g., phrases and windows.
+ * Candidate documents are found by an {@link EFAndIterablePosting} conjunction of the posting lists, 
+ * so the positions of the documents not containing all terms are never decoded. The positions of a candidate document are then
+ * streamed with {@link EFBlockIterablePosting#nextPosition()}, only until a first match is found or no match is possible.
+ * The remaining matches are counted only if the frequency of the operator is requested.
+ */
+public abstract class EFPositionalIterablePosting implements IterablePosting
+{
+	protected final EFBlockIterablePosting[] postings;
+	/** The docid conjunction of the posting lists. */
+	protected final EFAndIterablePosting conjunction;
+	/** The current position of every posting list in the current document. */
+	protected final int[] positions;
+	
+	protected int currentDocument = -1;
+	// the number of matches in the current document, -1 until counted
+	protected int currentFrequency = -1;
+	
+	/**
+	 * Constructor.
+	 * @param postings the posting lists of the terms, in query order
+	 */
+	protected EFPositionalIterablePosting(final EFBlockIterablePosting[] postings)
+	{
+		if (postings.length == 0)
+			throw new IllegalArgumentException("At least one posting list is required");
+		this.postings = postings;
+		this.conjunction = new EFAndIterablePosting(postings);
+		this.positions = new int[postings.length];
+	}
+	
+	/**
+	 * Open the posting lists of the given terms, for a positional operator.
+	 * 
+	 * @param index an Elias-Fano index with positions
+	 * @param terms the terms, already processed by the term pipeline of the index
+	 * @return the posting lists of the terms, or <code>null</code> if some term is not in the lexicon
+	 * @throws IOException if something goes wrong
+	 */
+	public static EFBlockIterablePosting[] postings(final Index index, final String... terms) throws IOException
+	{
+		final EFBlockIterablePosting[] postings = new EFBlockIterablePosting[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			final LexiconEntry le = index.getLexicon().getLexiconEntry(terms[i]);
+			if (le == null) {
+				for (int j = 0; j < i; j++)
+					postings[j].close();
+				return null;
+			}
+			postings[i] = (EFBlockIterablePosting) index.getInvertedIndex().getPostings(le);
+		}
+		return postings;
+	}
+	
+	/**
+	 * Load the first position of every posting list in the current document, and look for the first match.
+	 * 
+	 * @return true if the current document contains a match
+	 */
+	protected boolean firstMatch()
+	{
+		for (int i = 0; i < postings.length; i++)
+			if ((positions[i] = postings[i].nextPosition()) == EFBlockIterablePosting.END_OF_POSITIONS)
+				return false;
+		return match();
+	}
+	
+	/**
+	 * Advance the positions until they match, if possible.
+	 * 
+	 * @return true if the positions match, false if no more matches are possible in the current document
+	 */
+	protected abstract boolean match();
+	
+	/**
+	 * Advance the positions past the current match.
+	 * 
+	 * @return false if no more matches are possible in the current document
+	 */
+	protected abstract boolean advance();
+	
+	/**
+	 * Advance the posting list at the given index to its next position in the current document.
+	 * 
+	 * @return false if the posting list has no more positions in the current document
+	 */
+	protected final boolean nextPosition(final int i)
+	{
+		return (positions[i] = postings[i].nextPosition()) != EFBlockIterablePosting.END_OF_POSITIONS;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int next() throws IOException 
+	{
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return IterablePosting.END_OF_LIST;
+		return align(conjunction.next());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int next(final int targetId) throws IOException 
+	{
+		if (currentDocument == IterablePosting.END_OF_LIST)
+			return IterablePosting.END_OF_LIST;
+		if (currentDocument >= targetId)
+			return currentDocument;
+		return align(conjunction.next(targetId));
+	}
+	
+	/**
+	 * Move to the first document, not before the candidate containing all terms, with a match.
+	 */
+	private int align(int candidate) throws IOException
+	{
+		while (candidate != IterablePosting.END_OF_LIST) {
+			if (firstMatch()) {
+				currentFrequency = -1;
+				return currentDocument = candidate;
+			}
+			candidate = conjunction.next();
+		}
+		return currentDocument = IterablePosting.END_OF_LIST;
+	}
+	
+	/** 
+	 * Return the number of matches in the current document, counting them on the first call.
+	 */
+	@Override
+	public int getFrequency() 
+	{
+		if (currentFrequency < 0) {
+			currentFrequency = 1;
+			while (advance() && match())
+				currentFrequency++;
+		}
+		return currentFrequency;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int getId() 
+	{
+		return currentDocument;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getDocumentLength() 
+	{
+		return postings[0].getDocumentLength();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setId(final int id) 
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public WritablePosting asWritablePosting() 
+	{
+		return new BasicPostingImpl(currentDocument, getFrequency());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean endOfPostings() 
+	{
+		return currentDocument == IterablePosting.END_OF_LIST;
+	}
+
+	/** Close all posting lists. */
+	@Override
+	public void close() throws IOException 
+	{
+		conjunction.close();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		return "(" + currentDocument + "," + currentFrequency + ")";
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.structures;
+
+/**
+ * An unordered window operator (<code>#uwN</code>) over Elias-Fano posting lists with positions: a document matches if
+ * all terms occur, in any order, within a window of <code>N</code> consecutive positions.
+ * Its frequency is the number of such windows found by moving the term at the smallest position, one at a time.
+ * A position holds a single term, so posting lists at the same position belong to a repeated term: they are moved apart,
+ * and a term repeated <code>n</code> times matches only with <code>n</code> distinct occurrences in the window.
+ */
+public class EFProximityIterablePosting extends EFPositionalIterablePosting
+{
+	protected final int windowSize;
+	// the posting list at the smallest position in the last match
+	private int min;
+	
+	/**
+	 * Constructor.
+	 * @param postings the posting lists of the terms
+	 * @param windowSize the number of positions of the window
+	 */
+	public EFProximityIterablePosting(final EFBlockIterablePosting[] postings, final int windowSize)
+	{
+		super(postings);
+		if (windowSize < postings.length)
+			throw new IllegalArgumentException("A window of " + windowSize + " positions cannot contain " + postings.length + " terms");
+		this.windowSize = windowSize;
+	}
+	
+	@Override
+	protected boolean match()
+	{
+		while (true) {
+			if (!separate())
+				return false;
+			min = 0;
+			int max = positions[0];
+			for (int i = 1; i < postings.length; i++) {
+				if (positions[i] < positions[min])
+					min = i;
+				if (positions[i] > max)
+					max = positions[i];
+			}
+			if (max - positions[min] < windowSize)
+				return true;
+			// the term at the smallest position can only be in a window if it moves forward
+			while (positions[min] <= max - windowSize)
+				if (!nextPosition(min))
+					return false;
+		}
+	}
+	
+	/**
+	 * Move forward the posting lists at the same position as a preceding one, until all positions are distinct.
+	 * 
+	 * @return false if some posting list has no more positions in the current document
+	 */
+	private boolean separate()
+	{
+		for (int i = 1; i < postings.length; i++) {
+			for (int j = 0; j < i; j++) {
+				if (positions[i] == positions[j]) {
+					if (!nextPosition(i))
+						return false;
+					// the new position may collide with any preceding one
+					j = -1;
+				}
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	protected boolean advance()
+	{
+		return nextPosition(min);
+	}
+}
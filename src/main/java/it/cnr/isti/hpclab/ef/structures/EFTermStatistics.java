@@ -0,0 +1,254 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef.structures;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.unimi.dsi.fastutil.longs.LongBigList;
+import it.unimi.dsi.util.ByteBufferLongBigList;
+
+/**
+ * The statistics and offsets of the terms of an Elias-Fano index with aligned termids, as a memory-mapped array of fixed-size records 
+ * indexed by termid: df, F and maxtf as ints, the docid and freq offsets, and the positions offset if the index has positions, as longs.
+ * The offsets of the posting lists inlined in their lexicon entries hold the inlined postings, as in the lexicon file.
+ * Records are big-endian and 4-byte aligned, and the file is padded to a multiple of 8 bytes, so it is mapped as an array of longs, 
+ * and a long field of a record starting in the middle of a long is read from two longs.
+ * Consumers of termids, e.g., of direct posting lists for query expansion, get the statistics of a term, or a lexicon entry to open its 
+ * posting list, at the cost of an array access, without a lexicon lookup.
+ */
+public class EFTermStatistics implements Closeable
+{
+	// the byte position of the offsets in a record, after df, F and maxtf
+	private static final int OFFSETS = 3 * Integer.BYTES;
+	
+	private final FileChannel channel;
+	private final LongBigList records;
+	// the size of a record, in bytes
+	private final int recordSize;
+	private final int numTerms;
+	private final boolean hasPositions;
+	
+	/**
+	 * Constructor.
+	 * @param index the Elias-Fano index containing the term statistics
+	 * @throws IOException if something goes wrong in mapping the term statistics file
+	 */
+	@SuppressWarnings("resource")
+	public EFTermStatistics(final IndexOnDisk index) throws IOException
+	{
+		this.hasPositions = "true".equals(index.getIndexProperty(EliasFano.HAS_POSITIONS, "false"));
+		this.recordSize = recordSize(hasPositions);
+		this.channel = new FileInputStream(index.getPath() + File.separator + index.getPrefix() + EliasFano.TERMSTATS_EXTENSION).getChannel();
+		this.records = ByteBufferLongBigList.map(channel, ByteOrder.BIG_ENDIAN, MapMode.READ_ONLY);
+		this.numTerms = (int) (records.size64() * Long.BYTES / recordSize);
+	}
+	
+	/** Return the number of bytes of a record. */
+	private static int recordSize(final boolean hasPositions)
+	{
+		return 3 * Integer.BYTES + (hasPositions ? 3 : 2) * Long.BYTES;
+	}
+	
+	/** Return the int at the given byte position, a multiple of 4, always within a long. */
+	private int getInt(final long position)
+	{
+		final long word = records.getLong(position >>> 3);
+		return (int) ((position & 4) == 0 ? word >>> Integer.SIZE : word);
+	}
+	
+	/** Return the long at the given byte position, a multiple of 4, spanning two longs if not a multiple of 8. */
+	private long getLong(final long position)
+	{
+		if ((position & 4) == 0)
+			return records.getLong(position >>> 3);
+		return records.getLong(position >>> 3) << Integer.SIZE | records.getLong((position >>> 3) + 1) >>> Integer.SIZE;
+	}
+	
+	/**
+	 * Write the term statistics file of an index, reading its lexicon input stream, whose termids must be aligned.
+	 * 
+	 * @param index the Elias-Fano index
+	 * @throws IOException if something goes wrong
+	 */
+	public static void write(final IndexOnDisk index) throws IOException
+	{
+		final boolean hasPositions = "true".equals(index.getIndexProperty(EliasFano.HAS_POSITIONS, "false"));
+		final String filename = index.getPath() + File.separator + index.getPrefix() + EliasFano.TERMSTATS_EXTENSION;
+		
+		@SuppressWarnings("unchecked")
+		final Iterator<Map.Entry<String, LexiconEntry>> lexIter = (Iterator<Map.Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			int termId = 0;
+			while (lexIter.hasNext()) {
+				final EFLexiconEntry le = (EFLexiconEntry) lexIter.next().getValue();
+				if (le.getTermId() != termId)
+					throw new IllegalStateException("Termids of " + index + " are not aligned, found termid " + le.getTermId() + " at position " + termId);
+				
+				out.writeInt(le.getDocumentFrequency());
+				out.writeInt(le.getFrequency());
+				out.writeInt(le.getMaxFrequencyInDocuments());
+				out.writeLong(le.getDocidField());
+				out.writeLong(le.getFreqField());
+				if (hasPositions)
+					out.writeLong(((EFBlockLexiconEntry) le).getPosOffset());
+				termId++;
+			}
+			// padding to a whole number of longs
+			if (((long) termId * recordSize(hasPositions)) % Long.BYTES != 0)
+				out.writeInt(0);
+		} finally {
+			if (lexIter instanceof Closeable)
+				((Closeable) lexIter).close();
+		}
+	}
+	
+	/**
+	 * Return the number of terms.
+	 * @return the number of terms
+	 */
+	public int numberOfEntries()
+	{
+		return numTerms;
+	}
+	
+	/**
+	 * Return the number of documents containing a term.
+	 * @param termId the termid
+	 * @return the number of documents containing the term
+	 */
+	public int getDocumentFrequency(final int termId)
+	{
+		return getInt((long) termId * recordSize);
+	}
+	
+	/**
+	 * Return the number of occurrences of a term.
+	 * @param termId the termid
+	 * @return the number of occurrences of the term
+	 */
+	public int getFrequency(final int termId)
+	{
+		return getInt((long) termId * recordSize + Integer.BYTES);
+	}
+	
+	/**
+	 * Return the largest in-document frequency of a term.
+	 * @param termId the termid
+	 * @return the largest in-document frequency of the term
+	 */
+	public int getMaxFrequencyInDocuments(final int termId)
+	{
+		return getInt((long) termId * recordSize + 2 * Integer.BYTES);
+	}
+	
+	/**
+	 * Return true if the posting list of a term is inlined in its lexicon entry, see {@link EFLexiconEntry#isInline()}.
+	 * @param termId the termid
+	 * @return true if the posting list of the term is inlined
+	 */
+	public boolean isInline(final int termId)
+	{
+		// the docid offset is written with the sign bit set for inlined posting lists
+		return getLong((long) termId * recordSize + OFFSETS) < 0;
+	}
+	
+	/**
+	 * Return the bit offset of the posting list of a term in the docid file.
+	 * @param termId the termid
+	 * @return the bit offset of the posting list in the docid file
+	 * @throws IllegalStateException if the posting list is inlined in its lexicon entry
+	 */
+	public long getDocidOffset(final int termId)
+	{
+		checkNotInline(termId);
+		return getLong((long) termId * recordSize + OFFSETS);
+	}
+	
+	/**
+	 * Return the bit offset of the posting list of a term in the freq file.
+	 * @param termId the termid
+	 * @return the bit offset of the posting list in the freq file
+	 * @throws IllegalStateException if the posting list is inlined in its lexicon entry
+	 */
+	public long getFreqOffset(final int termId)
+	{
+		checkNotInline(termId);
+		return getLong((long) termId * recordSize + OFFSETS + Long.BYTES);
+	}
+	
+	private void checkNotInline(final int termId)
+	{
+		if (isInline(termId))
+			throw new IllegalStateException("The posting list of term " + termId + " is inlined in its lexicon entry, it has no offsets");
+	}
+	
+	/**
+	 * Return the bit offset of the posting list of a term in the positions file.
+	 * @param termId the termid
+	 * @return the bit offset of the posting list in the positions file
+	 * @throws IllegalStateException if the index has no positions
+	 */
+	public long getPosOffset(final int termId)
+	{
+		if (!hasPositions)
+			throw new IllegalStateException("The index has no positions");
+		return getLong((long) termId * recordSize + OFFSETS + 2 * Long.BYTES);
+	}
+	
+	/**
+	 * Return a new lexicon entry of a term, to open its posting list.
+	 * @param termId the termid
+	 * @return the lexicon entry of the term
+	 */
+	public EFLexiconEntry getLexiconEntry(final int termId)
+	{
+		final long base = (long) termId * recordSize;
+		final int n_t = getInt(base);
+		final int TF = getInt(base + Integer.BYTES);
+		final int maxtf = getInt(base + 2 * Integer.BYTES);
+		final long docidField = getLong(base + OFFSETS);
+		final long freqField = getLong(base + OFFSETS + Long.BYTES);
+		final EFLexiconEntry le = hasPositions ? new EFBlockLexiconEntry(termId, n_t, TF, maxtf, 0, 0, getLong(base + OFFSETS + 2 * Long.BYTES))
+		                                       : new EFLexiconEntry(termId, n_t, TF, maxtf, 0, 0);
+		le.setFields(docidField, freqField);
+		return le;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+}
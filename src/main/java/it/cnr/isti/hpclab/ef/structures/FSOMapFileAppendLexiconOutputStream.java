@@ -20,7 +20,7 @@ import org.terrier.structures.seralization.FixedSizeWriteableFactory;
 /**
  * This class is a copy of the org.terrier.structures.FSOMapFileLexiconOutputStream,
  * but the only difference being the underlying map file (local filesystem only), which is opened in append mode.
- * This class is used only by the CompressorReducer class, to avoid wasting time in copying lexicons. 
+ * It can be used to append entries to an existing lexicon, to avoid wasting time in copying lexicons. 
  */
 public class FSOMapFileAppendLexiconOutputStream extends LexiconOutputStream<String>
 {
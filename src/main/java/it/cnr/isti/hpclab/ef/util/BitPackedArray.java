@@ -0,0 +1,139 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import it.unimi.dsi.bits.Fast;
+
+/**
+ * An immutable, memory-resident array of natural numbers, packed with the minimal bit width of its largest element, 
+ * with constant time random access.
+ */
+public final class BitPackedArray
+{
+	private final long length;
+	private final int width;
+	private final long[] bits;
+	
+	private BitPackedArray(final long length, final int width, final long[] bits)
+	{
+		this.length = length;
+		this.width = width;
+		this.bits = bits;
+	}
+	
+	/**
+	 * Pack the first elements of an array.
+	 * 
+	 * @param values the natural numbers to pack
+	 * @param length the number of elements to pack
+	 * @return the packed array
+	 * @throws IllegalArgumentException if an element is negative
+	 */
+	public static BitPackedArray of(final int[] values, final int length)
+	{
+		int max = 0;
+		for (int i = 0; i < length; i++) {
+			if (values[i] < 0)
+				throw new IllegalArgumentException("Negative element " + values[i] + " at index " + i);
+			max = Math.max(max, values[i]);
+		}
+		final int width = Fast.mostSignificantBit(max) + 1;
+		
+		final long[] bits = new long[(int) (((long) length * width + Long.SIZE - 1) / Long.SIZE) + 1];
+		if (width != 0) {
+			for (int i = 0; i < length; i++) {
+				final long position = (long) i * width;
+				final int bit = (int) (position % Long.SIZE);
+				bits[(int) (position / Long.SIZE)] |= (long) values[i] << bit;
+				if (bit + width > Long.SIZE)
+					bits[(int) (position / Long.SIZE) + 1] |= (long) values[i] >>> -bit;
+			}
+		}
+		return new BitPackedArray(length, width, bits);
+	}
+	
+	/**
+	 * Return the number of elements.
+	 * @return the number of elements
+	 */
+	public long size()
+	{
+		return length;
+	}
+	
+	/**
+	 * Return the element of given index.
+	 * 
+	 * @param index the index of the element
+	 * @return the element of given index
+	 */
+	public int getInt(final long index)
+	{
+		if (width == 0)
+			return 0;
+		final long position = index * width;
+		final int bit = (int) (position % Long.SIZE);
+		final int word = (int) (position / Long.SIZE);
+		long value = bits[word] >>> bit;
+		if (bit + width > Long.SIZE)
+			value |= bits[word + 1] << -bit;
+		return (int) (value & (1L << width) - 1);
+	}
+	
+	/**
+	 * Return the number of bits used by this array.
+	 * @return the number of bits used by this array
+	 */
+	public long numBits()
+	{
+		return (long) Long.SIZE * bits.length;
+	}
+	
+	/**
+	 * Write this array.
+	 * 
+	 * @param out the output to write to
+	 * @throws IOException if something goes wrong
+	 */
+	public void write(final DataOutput out) throws IOException
+	{
+		out.writeLong(length);
+		out.writeInt(width);
+		EFSequence.writeLongs(out, bits);
+	}
+	
+	/**
+	 * Read an array written by {@link #write(DataOutput)}.
+	 * 
+	 * @param in the input to read from
+	 * @return the array
+	 * @throws IOException if something goes wrong
+	 */
+	public static BitPackedArray read(final DataInput in) throws IOException
+	{
+		final long length = in.readLong();
+		final int width = in.readInt();
+		return new BitPackedArray(length, width, EFSequence.readLongs(in));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.cnr.isti.hpclab.ef.EliasFano;
+
+/**
+ * This is the off-heap memory budget shared by all {@link LongWordCache}s of a JVM.
+ * Every cache starts with a small memory buffer, borrowed from the budget if available and allocated on heap otherwise, 
+ * and borrows from the budget to grow it up to its maximum size, giving the memory back when cleared or closed.
+ * When the budget is exhausted, caches spill to disk instead of growing, so the off-heap memory of all caches never exceeds the budget.
+ * The total budget is given in bytes by the {@link EliasFano#CACHE_BUDGET} system property, 
+ * and defaults to a quarter of the maximum heap size.
+ */
+public final class CacheBudget 
+{
+	/** The total budget, in bytes. */
+	private static volatile long total = Long.getLong(EliasFano.CACHE_BUDGET, Runtime.getRuntime().maxMemory() / 4);
+	/** The memory currently borrowed by caches, in bytes. */
+	private static final AtomicLong used = new AtomicLong(0);
+	
+	private CacheBudget()
+	{
+	}
+	
+	/**
+	 * Set the total budget. Caches already holding more memory than the new budget keep it until they are cleared or closed.
+	 * 
+	 * @param bytes the total budget, in bytes
+	 */
+	public static void set(final long bytes)
+	{
+		total = bytes;
+	}
+	
+	/**
+	 * Return the total budget.
+	 * 
+	 * @return the total budget, in bytes
+	 */
+	public static long total()
+	{
+		return total;
+	}
+
+	/**
+	 * Return the memory currently borrowed by caches.
+	 * 
+	 * @return the memory currently borrowed, in bytes
+	 */
+	public static long used()
+	{
+		return used.get();
+	}
+	
+	/**
+	 * Borrow memory from the budget, if available.
+	 * 
+	 * @param bytes the memory to borrow, in bytes
+	 * @return true if the memory has been borrowed, false if the budget is exhausted
+	 */
+	public static boolean tryAcquire(final long bytes)
+	{
+		long current;
+		do {
+			current = used.get();
+			if (current + bytes > total)
+				return false;
+		} while (!used.compareAndSet(current, current + bytes));
+		return true;
+	}
+	
+	/**
+	 * Give memory back to the budget.
+	 * 
+	 * @param bytes the memory to give back, in bytes
+	 */
+	public static void release(final long bytes)
+	{
+		used.addAndGet(-bytes);
+	}
+}
@@ -42,23 +42,23 @@ import it.unimi.dsi.fastutil.longs.LongBigList;
 public class DocidReader 
 {
 	/** The underlying list. */
-	protected final LongBigList list;
+	protected LongBigList list;
 	/** The longword bit reader for pointers. */
-	protected final LongWordBitReader skipPointers;
+	protected LongWordBitReader skipPointers;
 	/** The starting position of the pointers. */
-	protected final long skipPointersStart;
+	protected long skipPointersStart;
 	/** The starting position of the upper bits. */
-	protected final long upperBitsStart;
+	protected long upperBitsStart;
 	/** The logarithm of the quantum, cached from the index. */
-	protected final int log2Quantum;
+	protected int log2Quantum;
 	/** The quantum, cached from the index. */
-	protected final int quantum;
+	protected int quantum;
 	/** The size of a pointer. */
-	protected final int pointerSize;
+	protected int pointerSize;
 	/** The number of pointers. */
-	protected final long numberOfPointers;
+	protected long numberOfPointers;
 	/** The frequency of the term (i.e., the number of elements of the current list). */
-	protected final long frequency;
+	protected long frequency;
 	/** The 64-bit window. */
 	protected long window;
 	/** The current word position in the list of upper bits. */
@@ -68,16 +68,26 @@ public class DocidReader
 		
 	private final static int SKIPPING_THRESHOLD = 8;
 	/** The number of lower bits. */
-	private final int l;
+	private int l;
 	/** The longword bit reader for the lower bits. */
-	private final LongWordBitReader lowerBits;
+	private LongWordBitReader lowerBits;
 	/** The starting position of the power bits. */
-	private final long lowerBitsStart;
+	private long lowerBitsStart;
 	/** The last value returned by {@link #getNextUpperBits()}. */ 
 	private long lastUpperBits;
 		
 	public DocidReader(final LongBigList list, final LongWordBitReader lowerBits, final long lowerBitsStart, final int l, final LongWordBitReader skipPointers, final long skipPointersStart, final long numberOfPointers, final int pointerSize, final long frequency, final int log2Quantum) 
 	{
+		reset(list, lowerBits, lowerBitsStart, l, skipPointers, skipPointersStart, numberOfPointers, pointerSize, frequency, log2Quantum);
+	}
+	
+	/**
+	 * Reset this reader to the beginning of a new list, as a new reader would be.
+	 */
+	public void reset(final LongBigList list, final LongWordBitReader lowerBits, final long lowerBitsStart, final int l, final LongWordBitReader skipPointers, final long skipPointersStart, final long numberOfPointers, final int pointerSize, final long frequency, final int log2Quantum) 
+	{
+		this.currentIndex = 0;
+		this.lastUpperBits = 0;
 		this.list = list;
 		this.upperBitsStart = lowerBitsStart + l * ( frequency + 1L );
 		this.skipPointers = skipPointers;
@@ -115,6 +125,34 @@ public class DocidReader
 		return getNextUpperBits() << l | lowerBits.extract();
 	}
 
+	/**
+	 * Decode the next <code>count</code> prefix sums, the same returned by as many calls to {@link #getNextPrefixSum()}, 
+	 * in a tight loop over the upper bits. The caller must not read past the end of the list.
+	 * 
+	 * @param buffer the array to fill with the prefix sums, from its beginning
+	 * @param count the number of prefix sums to decode
+	 */
+	public void getNextPrefixSums(final int[] buffer, final int count)
+	{
+		long window = this.window;
+		long curr = this.curr;
+		long index = this.currentIndex;
+		long upperBits = this.lastUpperBits;
+		
+		for (int i = 0; i < count; i++) {
+			while (window == 0)
+				window = list.getLong(++curr);
+			upperBits = curr * Long.SIZE + Long.numberOfTrailingZeros(window) - index++ - upperBitsStart;
+			window &= window - 1;
+			buffer[i] = (int) (upperBits << l | lowerBits.extract());
+		}
+		
+		this.window = window;
+		this.curr = curr;
+		this.currentIndex = index;
+		this.lastUpperBits = upperBits;
+	}
+
 	public long skipTo(final long lowerBound) 
 	{
 		final long zeroesToSkip = lowerBound >>> l;
@@ -182,6 +220,96 @@ public class DocidReader
 		}
 	}
 	
+	/**
+	 * Return the prefix sum of given index, without moving this reader. 
+	 * The skip pointers are binary searched for the last block starting before the element, 
+	 * and the element is then selected in the upper bits word by word, with broadword selection in the last word.
+	 * 
+	 * @param index the index of the prefix sum, not greater than the frequency
+	 * @return the prefix sum of given index
+	 */
+	public long getPrefixSum(final long index)
+	{
+		// the last skip pointer preceded by at most index ones, i.e., by block * quantum zeroes and skip - block * quantum ones
+		long lo = 0, hi = numberOfPointers;
+		while (lo < hi) {
+			final long mid = (lo + hi + 1) >>> 1;
+			final long skip = skipPointer(mid);
+			if (skip != 0 && skip - (mid << log2Quantum) <= index)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		final long skip = skipPointer(lo);
+		long rank = index - (skip - (lo << log2Quantum));
+		
+		final long position = upperBitsStart + skip;
+		long word = position / Long.SIZE;
+		long bits = list.getLong(word) & -1L << (int)(position);
+		for (int bitCount; (bitCount = Long.bitCount(bits)) <= rank; ) {
+			rank -= bitCount;
+			bits = list.getLong(++word);
+		}
+		final long upperBits = word * Long.SIZE + Fast.select(bits, (int) rank) - upperBitsStart - index;
+		return upperBits << l | extract(lowerBitsStart + l * index, l);
+	}
+	
+	/**
+	 * Return the number of prefix sums smaller than the given bound, without moving this reader. 
+	 * The skip pointers locate the block of the upper bits of the bound, the upper bits are scanned word by word from there,
+	 * and the lower bits are compared only for the elements sharing the upper bits of the bound.
+	 * 
+	 * @param bound the bound, not greater than the last prefix sum
+	 * @return the number of prefix sums smaller than the bound
+	 */
+	public long rank(final long bound)
+	{
+		final long zeroes = bound >>> l;
+		long block = Math.min(zeroes >>> log2Quantum, numberOfPointers);
+		long skip;
+		while ((skip = skipPointer(block)) == 0 && block > 0)
+			block--;
+		long toSkip = zeroes - (block << log2Quantum);
+		
+		// the position following the zeroes-th zero, i.e., the first element with upper bits not smaller than the bound ones
+		long position = upperBitsStart + skip;
+		if (toSkip > 0) {
+			long word = position / Long.SIZE;
+			long bits = ~list.getLong(word) & -1L << (int)(position);
+			for (int bitCount; (bitCount = Long.bitCount(bits)) < toSkip; ) {
+				toSkip -= bitCount;
+				bits = ~list.getLong(++word);
+			}
+			position = word * Long.SIZE + Fast.select(bits, (int) toSkip - 1) + 1;
+		}
+		long index = position - upperBitsStart - zeroes;
+		
+		final long lowerBound = bound & ((1L << l) - 1);
+		while (index < frequency && (list.getLong(position / Long.SIZE) & 1L << position) != 0 && extract(lowerBitsStart + l * index, l) < lowerBound) {
+			index++;
+			position++;
+		}
+		return index;
+	}
+	
+	/** Return the skip pointer of given block, relative to the start of the upper bits, i.e., 0 for block 0 and for the padding pointers. */
+	private long skipPointer(final long block)
+	{
+		return block == 0 ? 0 : extract(skipPointersStart + (block - 1) * pointerSize, pointerSize);
+	}
+	
+	/** Extract the bits at given position without using, hence without moving, the sequential readers. */
+	private long extract(final long position, final int width)
+	{
+		if (width == 0)
+			return 0;
+		final int bitPosition = (int) (position % Long.SIZE);
+		final long result = list.getLong(position / Long.SIZE) >>> bitPosition;
+		if (bitPosition + width <= Long.SIZE)
+			return result & (1L << width) - 1;
+		return (result | list.getLong(position / Long.SIZE + 1) << -bitPosition) & (1L << width) - 1;
+	}
+	
 	@Override
 	public String toString() 
 	{
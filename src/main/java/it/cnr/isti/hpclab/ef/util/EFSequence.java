@@ -0,0 +1,212 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import it.unimi.dsi.bits.Fast;
+
+/**
+ * An immutable, memory-resident, non-decreasing sequence of natural numbers encoded with Elias-Fano, with random access.
+ * Unlike posting lists, whose skip pointers index the zeroes of the upper bits to skip to a docid, this sequence has forward pointers
+ * indexing the ones, i.e., the position of every quantum of elements, so the i-th element is selected in the upper bits scanning 
+ * from its forward pointer.
+ * <p>
+ * The scan reads the words of the upper bits spanned by the quantum of the element, i.e., its ones and the zeroes between them. 
+ * The upper bits of n elements are at most 3n bits long, so a quantum spans 3 quantum bits on average, i.e., 12 words with 
+ * the default quantum, and random access takes constant time on average over the quanta. It is not bounded in the worst case: 
+ * a quantum with a large gap between its elements, e.g., the offsets around a very long posting list, spans a zero for every 
+ * 2<sup>l</sup> of the gap, where l is the number of lower bits.
+ */
+public final class EFSequence
+{
+	/** The default log2 of the number of elements between forward pointers. */
+	public static final int DEFAULT_LOG2_QUANTUM = 8;
+	
+	private final long length;
+	private final int l;
+	private final int log2Quantum;
+	private final long[] lowerBits;
+	private final long[] upperBits;
+	// the position in the upper bits of the element of index (i + 1) * quantum
+	private final long[] pointers;
+	
+	private EFSequence(final long length, final int l, final int log2Quantum, final long[] lowerBits, final long[] upperBits, final long[] pointers)
+	{
+		this.length = length;
+		this.l = l;
+		this.log2Quantum = log2Quantum;
+		this.lowerBits = lowerBits;
+		this.upperBits = upperBits;
+		this.pointers = pointers;
+	}
+	
+	/**
+	 * Encode the first elements of an array.
+	 * 
+	 * @param values the non-decreasing natural numbers to encode
+	 * @param length the number of elements to encode
+	 * @return the encoded sequence
+	 * @throws IllegalArgumentException if the elements are negative or decreasing
+	 */
+	public static EFSequence of(final long[] values, final int length)
+	{
+		return of(values, length, DEFAULT_LOG2_QUANTUM);
+	}
+	
+	/**
+	 * Encode the first elements of an array.
+	 * 
+	 * @param values the non-decreasing natural numbers to encode
+	 * @param length the number of elements to encode
+	 * @param log2Quantum the log2 of the number of elements between forward pointers
+	 * @return the encoded sequence
+	 * @throws IllegalArgumentException if the elements are negative or decreasing
+	 */
+	public static EFSequence of(final long[] values, final int length, final int log2Quantum)
+	{
+		final long upperBound = length == 0 ? 0 : values[length - 1];
+		final int l = EFUtils.lowerBits(length, upperBound, false);
+		
+		final long[] lowerBits = new long[(int) (((long) length * l + Long.SIZE - 1) / Long.SIZE) + 1];
+		final long[] upperBits = new long[(int) ((length + (upperBound >>> l) + Long.SIZE) / Long.SIZE) + 1];
+		final long[] pointers = new long[length == 0 ? 0 : (length - 1) >>> log2Quantum];
+		
+		long prev = 0;
+		for (int i = 0; i < length; i++) {
+			final long value = values[i];
+			if (value < prev)
+				throw new IllegalArgumentException("Decreasing or negative element " + value + " at index " + i);
+			prev = value;
+			
+			if (l != 0) {
+				final long position = (long) i * l;
+				final int bit = (int) (position % Long.SIZE);
+				final long lower = value & (1L << l) - 1;
+				lowerBits[(int) (position / Long.SIZE)] |= lower << bit;
+				if (bit + l > Long.SIZE)
+					lowerBits[(int) (position / Long.SIZE) + 1] |= lower >>> -bit;
+			}
+			final long position = (value >>> l) + i;
+			upperBits[(int) (position / Long.SIZE)] |= 1L << position;
+			if (i != 0 && (i & (1 << log2Quantum) - 1) == 0)
+				pointers[(i >>> log2Quantum) - 1] = position;
+		}
+		return new EFSequence(length, l, log2Quantum, lowerBits, upperBits, pointers);
+	}
+	
+	/**
+	 * Return the number of elements.
+	 * @return the number of elements
+	 */
+	public long size()
+	{
+		return length;
+	}
+	
+	/**
+	 * Return the element of given index, scanning the upper bits from the forward pointer of its quantum (see the class documentation 
+	 * for the number of words read).
+	 * 
+	 * @param index the index of the element
+	 * @return the element of given index
+	 */
+	public long get(final long index)
+	{
+		final long block = index >>> log2Quantum;
+		final long position = block == 0 ? 0 : pointers[(int) block - 1];
+		long rank = index - (block << log2Quantum);
+		
+		int word = (int) (position / Long.SIZE);
+		long bits = upperBits[word] & -1L << position;
+		for (int bitCount; (bitCount = Long.bitCount(bits)) <= rank; ) {
+			rank -= bitCount;
+			bits = upperBits[++word];
+		}
+		final long upper = (long) word * Long.SIZE + Fast.select(bits, (int) rank) - index;
+		if (l == 0)
+			return upper;
+		
+		final long lowerPosition = index * l;
+		final int bit = (int) (lowerPosition % Long.SIZE);
+		final int lowerWord = (int) (lowerPosition / Long.SIZE);
+		long lower = lowerBits[lowerWord] >>> bit;
+		if (bit + l > Long.SIZE)
+			lower |= lowerBits[lowerWord + 1] << -bit;
+		return upper << l | lower & (1L << l) - 1;
+	}
+	
+	/**
+	 * Return the number of bits used by this sequence.
+	 * @return the number of bits used by this sequence
+	 */
+	public long numBits()
+	{
+		return (long) Long.SIZE * (lowerBits.length + upperBits.length + pointers.length);
+	}
+	
+	/**
+	 * Write this sequence.
+	 * 
+	 * @param out the output to write to
+	 * @throws IOException if something goes wrong
+	 */
+	public void write(final DataOutput out) throws IOException
+	{
+		out.writeLong(length);
+		out.writeInt(l);
+		out.writeInt(log2Quantum);
+		writeLongs(out, lowerBits);
+		writeLongs(out, upperBits);
+		writeLongs(out, pointers);
+	}
+	
+	/**
+	 * Read a sequence written by {@link #write(DataOutput)}.
+	 * 
+	 * @param in the input to read from
+	 * @return the sequence
+	 * @throws IOException if something goes wrong
+	 */
+	public static EFSequence read(final DataInput in) throws IOException
+	{
+		final long length = in.readLong();
+		final int l = in.readInt();
+		final int log2Quantum = in.readInt();
+		return new EFSequence(length, l, log2Quantum, readLongs(in), readLongs(in), readLongs(in));
+	}
+	
+	static void writeLongs(final DataOutput out, final long[] a) throws IOException
+	{
+		out.writeInt(a.length);
+		for (long x: a)
+			out.writeLong(x);
+	}
+	
+	static long[] readLongs(final DataInput in) throws IOException
+	{
+		final long[] a = new long[in.readInt()];
+		for (int i = 0; i < a.length; i++)
+			a[i] = in.readLong();
+		return a;
+	}
+}
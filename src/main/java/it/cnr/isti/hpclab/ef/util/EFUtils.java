@@ -89,4 +89,41 @@ public class EFUtils
 			return ( ( upperBound - ( strict ? length : 0 ) ) >>> lowerBits( length, upperBound, strict ) ) >>> log2Quantum;
 		return length >>> log2Quantum;
 	}
+
+	/**
+	 * Returns the exact number of bits of the Elias&ndash;Fano encoding of a docid list, as dumped by a {@link SequenceEncoder}
+	 * (skip pointers, lower bits and upper bits, including the final fictional docid equal to the upper bound).
+	 * 
+	 * @param df the number of docids in the list.
+	 * @param N the upper bound on docids, i.e., the number of documents.
+	 * @param log2Quantum the logarithm of the quantum size.
+	 * @return the number of bits of the encoded docid list.
+	 */
+	public static long docidsBits(final long df, final long N, final int log2Quantum)
+	{
+		final long length = df + 1; // including the final fictional docid
+		final int l = lowerBits(length, N, false);
+		return numberOfPointers(length, N, log2Quantum, false, true) * pointerSize(length, N, false, true)
+				+ length * l
+				+ (N >>> l) + length;
+	}
+
+	/**
+	 * Returns the exact number of bits of the Elias&ndash;Fano encoding of a frequency list, as dumped by a {@link SequenceEncoder}
+	 * (forward pointers, lower bits and upper bits), assuming the frequencies sum up to <code>F</code>.
+	 * 
+	 * @param df the number of frequencies in the list.
+	 * @param F the sum of all frequencies in the list.
+	 * @param log2Quantum the logarithm of the quantum size.
+	 * @return the number of bits of the encoded frequency list.
+	 */
+	public static long freqsBits(final long df, final long F, final int log2Quantum)
+	{
+		if (df == 0)
+			return 0;
+		final int l = lowerBits(df, F, true);
+		return numberOfPointers(df, F, log2Quantum, true, false) * pointerSize(df, F, true, false)
+				+ df * l
+				+ ((F - df) >>> l) + df;
+	}
 }
\ No newline at end of file
@@ -41,34 +41,34 @@ import it.unimi.dsi.fastutil.longs.LongBigList;
 public class FreqReader 
 {
 	/** The longword bit reader for pointers. */
-	private final LongWordBitReader skipPointers;
+	private LongWordBitReader skipPointers;
 	/** The longword bit reader for the lower bits. */
-	private final LongWordBitReader lowerBits;
+	private LongWordBitReader lowerBits;
 
 	/** The underlying list. */
-	private final LongBigList list;
+	private LongBigList list;
 	/** The 64-bit window. */
 	private long window;
 	/** The current word position in the list of upper bits. */
 	private long curr;
 
 	/** The starting position of the pointers. */
-	private final long skipPointersStart;
+	private long skipPointersStart;
 	/** The starting position of the power bits. */
-	private final long lowerBitsStart;
+	private long lowerBitsStart;
 	/** The starting position of the upper bits. */
-	private final long upperBitsStart;
+	private long upperBitsStart;
 
 	/** The number of lower bits. */
-	private final int l;
+	private int l;
 	/** The size of a pointer. */
-	private final int pointerSize;
+	private int pointerSize;
 	/** The number of pointers. */
-	private final long numberOfPointers;
+	private long numberOfPointers;
 	/** The logarithm of the quantum, cached from the index. */
-	private final int log2Quantum;
+	private int log2Quantum;
 	/** The quantum. */
-	private final int quantum;
+	private int quantum;
 
 	/** The current prefix sum (the sum of the first {@link #currentIndex} elements). */
 	private long prefixSum;
@@ -78,13 +78,21 @@ public class FreqReader
 	protected long currentIndex;
 
 	public FreqReader(final LongBigList list, final long position, final long frequency, final long occurrency, final int log2Quantum) 
+	{
+		reset(list, position, frequency, occurrency, log2Quantum);
+	}
+	
+	/**
+	 * Reset this reader to the beginning of a new list, as a new reader would be, reusing its bit readers.
+	 */
+	public void reset(final LongBigList list, final long position, final long frequency, final long occurrency, final int log2Quantum) 
 	{
 		this.l = EFUtils.lowerBits(frequency, occurrency, true);
 		this.pointerSize = EFUtils.pointerSize(frequency,	occurrency, true, false);
 		numberOfPointers = EFUtils.numberOfPointers(frequency, -1, log2Quantum, true, false);
 
-		skipPointers = new LongWordBitReader(list, pointerSize);
-		lowerBits = new LongWordBitReader(list, l);
+		skipPointers = (skipPointers == null) ? new LongWordBitReader(list, pointerSize) : skipPointers.reset(list, pointerSize);
+		lowerBits = (lowerBits == null) ? new LongWordBitReader(list, l) : lowerBits.reset(list, l);
 		this.list = list;
 
 		skipPointersStart = position;
@@ -166,6 +174,43 @@ public class FreqReader
 		return prefixSum - prevPrefixSum + 1;
 	}
 
+	/**
+	 * Decode <code>count</code> consecutive elements, starting at the given index, the same returned by as many calls 
+	 * to {@link #getLong(long)}. The first element is reached as {@link #getLong(long)} does, and the following ones 
+	 * are decoded in a tight loop over the upper bits. The caller must not read past the end of the list.
+	 * 
+	 * @param index the index of the first element
+	 * @param buffer the array to fill with the elements, from its beginning
+	 * @param count the number of elements to decode
+	 */
+	public void getLongs(final long index, final int[] buffer, final int count)
+	{
+		if (count == 0)
+			return;
+		buffer[0] = (int) getLong(index);
+		
+		long window = this.window;
+		long curr = this.curr;
+		long i = this.currentIndex;
+		long prefixSum = this.prefixSum;
+		long prevPrefixSum = this.prevPrefixSum;
+		
+		for (int j = 1; j < count; j++) {
+			prevPrefixSum = prefixSum;
+			while (window == 0)
+				window = list.getLong(++curr);
+			prefixSum = curr * Long.SIZE + Long.numberOfTrailingZeros(window) - i++ - upperBitsStart << l | lowerBits.extract();
+			window &= window - 1;
+			buffer[j] = (int) (prefixSum - prevPrefixSum + 1);
+		}
+		
+		this.window = window;
+		this.curr = curr;
+		this.currentIndex = i;
+		this.prefixSum = prefixSum;
+		this.prevPrefixSum = prevPrefixSum;
+	}
+
 	@Override
 	public String toString() 
 	{
@@ -0,0 +1,408 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * An immutable, memory-resident, sorted dictionary of terms, front coded in blocks.
+ * The first term of every block is stored in full, and every following term as the length of the prefix it shares with 
+ * the previous term and the remaining suffix, all lengths in variable byte. The offsets of the blocks are compressed with Elias-Fano.
+ * Terms are ordered as their UTF-8 bytes compared unsigned, i.e., as Terrier lexicons, so a term is found with a binary search 
+ * over the first terms of the blocks followed by a scan of a single block, and the terms sharing a prefix have contiguous indices.
+ */
+public final class FrontCodedTerms
+{
+	/** The default number of terms per block. */
+	public static final int DEFAULT_BLOCK_SIZE = 16;
+	
+	private final int size;
+	private final int blockSize;
+	private final byte[] data;
+	private final EFSequence blockOffsets;
+	
+	private FrontCodedTerms(final int size, final int blockSize, final byte[] data, final EFSequence blockOffsets)
+	{
+		this.size = size;
+		this.blockSize = blockSize;
+		this.data = data;
+		this.blockOffsets = blockOffsets;
+	}
+	
+	/**
+	 * A builder of dictionaries, from terms added in increasing order.
+	 */
+	public static final class Builder
+	{
+		private final int blockSize;
+		private final ByteArrayList data = new ByteArrayList();
+		private final LongArrayList blockOffsets = new LongArrayList();
+		private byte[] last = new byte[0];
+		private int size = 0;
+		
+		/**
+		 * Constructor, with {@link FrontCodedTerms#DEFAULT_BLOCK_SIZE} terms per block.
+		 */
+		public Builder()
+		{
+			this(DEFAULT_BLOCK_SIZE);
+		}
+		
+		/**
+		 * Constructor.
+		 * @param blockSize the number of terms per block
+		 */
+		public Builder(final int blockSize)
+		{
+			this.blockSize = blockSize;
+		}
+		
+		/**
+		 * Add a term, greater than the terms already added.
+		 * 
+		 * @param term the UTF-8 bytes of the term
+		 * @return this builder
+		 * @throws IllegalArgumentException if the term is not greater than the last term added
+		 */
+		public Builder add(final byte[] term)
+		{
+			if (size > 0 && Arrays.compareUnsigned(last, term) >= 0)
+				throw new IllegalArgumentException("Term " + new String(term, StandardCharsets.UTF_8) + " is not greater than the previous term " + new String(last, StandardCharsets.UTF_8));
+			
+			if (size % blockSize == 0) {
+				blockOffsets.add(data.size());
+				writeVByte(term.length);
+				data.addElements(data.size(), term);
+			} else {
+				final int prefix = Math.max(0, Arrays.mismatch(last, term));
+				writeVByte(prefix);
+				writeVByte(term.length - prefix);
+				data.addElements(data.size(), term, prefix, term.length - prefix);
+			}
+			last = term;
+			size++;
+			return this;
+		}
+		
+		private void writeVByte(int x)
+		{
+			while (x >= 0x80) {
+				data.add((byte) (x | 0x80));
+				x >>>= 7;
+			}
+			data.add((byte) x);
+		}
+		
+		/**
+		 * Build the dictionary of the terms added.
+		 * @return the dictionary
+		 */
+		public FrontCodedTerms build()
+		{
+			return new FrontCodedTerms(size, blockSize, data.toByteArray(), EFSequence.of(blockOffsets.elements(), blockOffsets.size()));
+		}
+	}
+	
+	/** A sequential decoder of the terms of a block, the current term being in a growable buffer. */
+	private final class Decoder
+	{
+		private int pos;
+		private byte[] term = new byte[32];
+		private int length;
+		
+		/** Decode the first term of a block. */
+		void first(final int block)
+		{
+			pos = (int) blockOffsets.get(block);
+			length = 0;
+			append(readVByte());
+		}
+		
+		/** Decode the next term of the block. */
+		void next()
+		{
+			length = readVByte();
+			append(readVByte());
+		}
+		
+		private void append(final int suffix)
+		{
+			if (length + suffix > term.length)
+				term = Arrays.copyOf(term, Math.max(2 * term.length, length + suffix));
+			System.arraycopy(data, pos, term, length, suffix);
+			length += suffix;
+			pos += suffix;
+		}
+		
+		private int readVByte()
+		{
+			final int x = FrontCodedTerms.readVByte(data, pos);
+			pos += vByteSize(x);
+			return x;
+		}
+		
+		/** Move to the term of given index. */
+		void seek(final int index)
+		{
+			first(index / blockSize);
+			for (int i = index % blockSize; i > 0; i--)
+				next();
+		}
+		
+		int compareTo(final byte[] key)
+		{
+			return Arrays.compareUnsigned(term, 0, length, key, 0, key.length);
+		}
+		
+		String term()
+		{
+			return new String(term, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+	
+	/**
+	 * Return the number of terms.
+	 * @return the number of terms
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Return the term of given index.
+	 * 
+	 * @param index the index of the term
+	 * @return the term
+	 */
+	public String get(final int index)
+	{
+		final Decoder decoder = new Decoder();
+		decoder.seek(index);
+		return decoder.term();
+	}
+	
+	/**
+	 * Return true if the term of given index is equal to the given one.
+	 * The terms of its block are scanned in place, up to the term of given index, without decoding them: only the length 
+	 * of the prefix every term shares with the given one is tracked, so only the suffixes within that prefix are compared.
+	 * 
+	 * @param index the index of the term
+	 * @param term the UTF-8 bytes of the term to compare with
+	 * @return true if the term of given index is equal to the given one
+	 */
+	public boolean equals(final int index, final byte[] term)
+	{
+		int pos = (int) blockOffsets.get(index / blockSize);
+		int length = 0, common = 0;
+		for (int i = 0, last = index % blockSize; i <= last; i++) {
+			// the first term of the block is stored in full
+			final int prefix = (i == 0) ? 0 : readVByte(data, pos);
+			if (i > 0)
+				pos += vByteSize(prefix);
+			final int suffix = readVByte(data, pos);
+			pos += vByteSize(suffix);
+			// the shared prefix grows only if the term keeps all the bytes shared with the given one
+			if (prefix <= common) {
+				final int n = Math.min(suffix, term.length - prefix);
+				final int mismatch = (n > 0) ? Arrays.mismatch(data, pos, pos + n, term, prefix, prefix + n) : 0;
+				common = prefix + ((mismatch < 0) ? n : mismatch);
+			}
+			length = prefix + suffix;
+			pos += suffix;
+		}
+		return common == length && length == term.length;
+	}
+	
+	private static int readVByte(final byte[] data, int pos)
+	{
+		int x = 0;
+		for (int shift = 0; ; shift += 7) {
+			final byte b = data[pos++];
+			x |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return x;
+		}
+	}
+	
+	private static int vByteSize(int x)
+	{
+		int size = 1;
+		while (x >= 0x80) {
+			x >>>= 7;
+			size++;
+		}
+		return size;
+	}
+	
+	/**
+	 * Return the number of terms smaller than the given one, with a binary search over the first terms of the blocks
+	 * and a scan of the block of the term.
+	 * 
+	 * @param term the UTF-8 bytes of the term
+	 * @return the number of terms smaller than the given one
+	 */
+	public int rank(final byte[] term)
+	{
+		final Decoder decoder = new Decoder();
+		
+		// the number of blocks whose first term is smaller than the given one
+		int lo = 0, hi = (int) blockOffsets.size();
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			decoder.first(mid);
+			if (decoder.compareTo(term) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		if (lo == 0)
+			return 0;
+		
+		final int block = lo - 1;
+		final int end = Math.min(size, (block + 1) * blockSize);
+		int rank = block * blockSize + 1;
+		decoder.first(block);
+		while (rank < end) {
+			decoder.next();
+			if (decoder.compareTo(term) >= 0)
+				break;
+			rank++;
+		}
+		return rank;
+	}
+	
+	/**
+	 * Return the index of the given term.
+	 * 
+	 * @param term the UTF-8 bytes of the term
+	 * @return the index of the given term, or -1 if the term is not in the dictionary
+	 */
+	public int indexOf(final byte[] term)
+	{
+		final int rank = rank(term);
+		return (rank < size && equals(rank, term)) ? rank : -1;
+	}
+	
+	/**
+	 * Return the range of indices of the terms starting with the given prefix, i.e., from the rank of the prefix to the rank
+	 * of the smallest byte sequence greater than all terms starting with the prefix.
+	 * 
+	 * @param prefix the UTF-8 bytes of the prefix
+	 * @return the first index, inclusive, and the last index, exclusive, of the terms starting with the prefix
+	 */
+	public int[] prefixRange(final byte[] prefix)
+	{
+		int last = prefix.length - 1;
+		while (last >= 0 && prefix[last] == (byte) 0xFF)
+			last--;
+		if (last < 0)
+			return new int[] { rank(prefix), size };
+		
+		final byte[] successor = Arrays.copyOf(prefix, last + 1);
+		successor[last]++;
+		return new int[] { rank(prefix), rank(successor) };
+	}
+	
+	/**
+	 * Return an iterator over the terms, in increasing order, from the term of given index.
+	 * Terms are decoded sequentially, so every term costs the copy of its suffix.
+	 * 
+	 * @param from the index of the first term
+	 * @return an iterator over the terms from the term of given index
+	 */
+	public Iterator<String> iterator(final int from)
+	{
+		return new Iterator<String>() {
+			private final Decoder decoder = new Decoder();
+			private int index = from;
+			
+			@Override
+			public boolean hasNext()
+			{
+				return index < size;
+			}
+			
+			@Override
+			public String next()
+			{
+				if (index >= size)
+					throw new NoSuchElementException();
+				if (index == from)
+					decoder.seek(index);
+				else if (index % blockSize == 0)
+					decoder.first(index / blockSize);
+				else
+					decoder.next();
+				index++;
+				return decoder.term();
+			}
+		};
+	}
+	
+	/**
+	 * Return the number of bytes used by this dictionary.
+	 * @return the number of bytes used by this dictionary
+	 */
+	public long numBytes()
+	{
+		return data.length + blockOffsets.numBits() / Byte.SIZE;
+	}
+	
+	/**
+	 * Write this dictionary.
+	 * 
+	 * @param out the output to write to
+	 * @throws IOException if something goes wrong
+	 */
+	public void write(final DataOutput out) throws IOException
+	{
+		out.writeInt(size);
+		out.writeInt(blockSize);
+		out.writeInt(data.length);
+		out.write(data);
+		blockOffsets.write(out);
+	}
+	
+	/**
+	 * Read a dictionary written by {@link #write(DataOutput)}.
+	 * 
+	 * @param in the input to read from
+	 * @return the dictionary
+	 * @throws IOException if something goes wrong
+	 */
+	public static FrontCodedTerms read(final DataInput in) throws IOException
+	{
+		final int size = in.readInt();
+		final int blockSize = in.readInt();
+		final byte[] data = new byte[in.readInt()];
+		in.readFully(data);
+		return new FrontCodedTerms(size, blockSize, data, EFSequence.read(in));
+	}
+}
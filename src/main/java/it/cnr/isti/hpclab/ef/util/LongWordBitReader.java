@@ -36,13 +36,13 @@ import it.unimi.dsi.fastutil.longs.LongBigList;
 public final class LongWordBitReader 
 {
 	/** The underlying list. */
-	private final LongBigList list;
+	private LongBigList list;
 	/** The extraction width for {@link #extract()} and {@link #extract(long)}. */
-	private final int l;
+	private int l;
 	/** {@link Long#SIZE} minus {@link #l}, cached. */
-	private final int longSizeMinusl;
+	private int longSizeMinusl;
 	/** The extraction mask for {@link #l} bits. */
-	private final long mask;
+	private long mask;
 
 	/** The 64-bit buffer, whose lower {@link #filled} bits contain data. */
 	private long buffer;
@@ -52,6 +52,18 @@ public final class LongWordBitReader
 	private long curr;
 
 	public LongWordBitReader(final LongBigList list, final int l) 
+	{
+		reset(list, l);
+	}
+	
+	/**
+	 * Reset this reader to a new list and extraction width, as a new reader would be.
+	 * 
+	 * @param list the underlying list
+	 * @param l the extraction width
+	 * @return this reader
+	 */
+	public LongWordBitReader reset(final LongBigList list, final int l)
 	{
 		assert l < Long.SIZE;
 		
@@ -60,6 +72,9 @@ public final class LongWordBitReader
 		this.longSizeMinusl = Long.SIZE - l;
 		this.mask = (1L << l) - 1;
 		this.curr = -1;
+		this.buffer = 0;
+		this.filled = 0;
+		return this;
 	}
 
 	public LongWordBitReader position(final long position) 
@@ -32,12 +32,17 @@
 package it.cnr.isti.hpclab.ef.util;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import it.unimi.dsi.bits.Fast;
 
@@ -58,6 +63,17 @@ public final class LongWordBitWriter
 	/** The output channel. */
 	private WritableByteChannel writableByteChannel;
 	
+	/** The executor performing asynchronous writes, shared by all writers. */
+	private static final ExecutorService WRITES = Executors.newCachedThreadPool(r -> {
+		final Thread t = new Thread(r, LongWordBitWriter.class.getSimpleName() + "-write");
+		t.setDaemon(true);
+		return t;
+	});
+	/** The buffer being written asynchronously, or <code>null</code> if writes are synchronous. */
+	private ByteBuffer spareBuffer;
+	/** The asynchronous write in progress, if any. */
+	private Future<?> pendingWrite;
+	
 	/**
 	 * Constructor.
 	 * 
@@ -65,9 +81,22 @@ public final class LongWordBitWriter
 	 * @param byteOrder the prescribed endianess for writing.
 	 */
 	public LongWordBitWriter(final WritableByteChannel writableByteChannel, final ByteOrder byteOrder) 
+	{
+		this(writableByteChannel, byteOrder, false);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param writableByteChannel the channel where to write.
+	 * @param byteOrder the prescribed endianess for writing.
+	 * @param asynchronous if true, a full buffer is written in background while a second buffer is filled.
+	 */
+	public LongWordBitWriter(final WritableByteChannel writableByteChannel, final ByteOrder byteOrder, final boolean asynchronous) 
 	{
 		this.writableByteChannel = writableByteChannel;
 		byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(byteOrder);
+		spareBuffer = asynchronous ? ByteBuffer.allocateDirect(BUFFER_SIZE).order(byteOrder) : null;
 		free = Long.SIZE;
 	}
 
@@ -86,11 +115,8 @@ public final class LongWordBitWriter
 			free -= width;
 		else {
 			byteBuffer.putLong(buffer); // filled
-			if (!byteBuffer.hasRemaining()) {
-				((Buffer)byteBuffer).flip();
-				writableByteChannel.write(byteBuffer);
-				((Buffer)byteBuffer).clear();
-			}
+			if (!byteBuffer.hasRemaining())
+				flush();
 
 			if (width == free) {
 				buffer = 0;
@@ -130,6 +156,9 @@ public final class LongWordBitWriter
 	 */
 	public long append(final LongWordCache cache) throws IOException 
 	{
+		if (cache.inMemory())
+			return appendInMemory(cache);
+		
 		long l = cache.length();
 		cache.rewind();
 		while (l > 0) {
@@ -140,11 +169,83 @@ public final class LongWordBitWriter
 		return cache.length();
 	}
 	
+	/**
+	 * Writes the bits of a cache that has not been spilled to disk, reading its memory buffer directly.
+	 * If this writer is aligned to a long word, complete long words are copied in bulk.
+	 */
+	private long appendInMemory(final LongWordCache cache) throws IOException 
+	{
+		final ByteBuffer words = cache.words();
+		if (free == Long.SIZE && words.order() == byteBuffer.order()) {
+			while (words.hasRemaining()) {
+				final int bytes = Math.min(words.remaining(), byteBuffer.remaining());
+				final int limit = words.limit();
+				((Buffer)words).limit(words.position() + bytes);
+				byteBuffer.put(words);
+				((Buffer)words).limit(limit);
+				if (!byteBuffer.hasRemaining())
+					flush();
+			}
+		} else {
+			while (words.hasRemaining())
+				append(words.getLong(), Long.SIZE);
+		}
+		final int rest = (int) (cache.length() % Long.SIZE);
+		if (rest != 0)
+			append(cache.lastWord(), rest);
+		return cache.length();
+	}
+	
+	/**
+	 * Write the full {@link #byteBuffer}: immediately, or in background after swapping it with {@link #spareBuffer}.
+	 */
+	private void flush() throws IOException 
+	{
+		((Buffer)byteBuffer).flip();
+		if (spareBuffer == null) {
+			writeFully(byteBuffer);
+			((Buffer)byteBuffer).clear();
+			return;
+		}
+		awaitPendingWrite();
+		final ByteBuffer fullBuffer = byteBuffer;
+		byteBuffer = spareBuffer;
+		spareBuffer = fullBuffer;
+		((Buffer)byteBuffer).clear();
+		pendingWrite = WRITES.submit(() -> { 
+			writeFully(fullBuffer); 
+			return null; 
+		});
+	}
+	
+	private void writeFully(final ByteBuffer buffer) throws IOException 
+	{
+		while (buffer.hasRemaining())
+			writableByteChannel.write(buffer);
+	}
+	
+	private void awaitPendingWrite() throws IOException 
+	{
+		if (pendingWrite == null)
+			return;
+		try {
+			pendingWrite.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a write");
+		} catch (ExecutionException e) {
+			throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			pendingWrite = null;
+		}
+	}
+	
 	public void close() throws IOException 
 	{
 		byteBuffer.putLong(buffer);
 		((Buffer)byteBuffer).flip();
-		writableByteChannel.write(byteBuffer);
+		awaitPendingWrite();
+		writeFully(byteBuffer);
 		writableByteChannel.close();
 	}
 	
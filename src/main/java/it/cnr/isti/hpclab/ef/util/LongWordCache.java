@@ -36,6 +36,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -45,24 +48,55 @@ import java.nio.channels.FileChannel;
 /**
  * This is a cache for long (i.e., 64 bits) objects, accessible at bit level. 
  * This cache contains three levels: (1) a long {@link #buffer}, storing 64 bits,
- * (2) a in-memory byte {@link #cache}, storing {@link #cache_bit_length} bits, and 
+ * (2) a in-memory byte {@link #cache}, growing up to {@link #max_cache_size} bytes 
+ * as long as the shared {@link CacheBudget} allows, and shrinking back to its initial size when cleared, and 
  * (3) a {@link #spill_file} random access file on disk accessed via Java NIO's 
- * {@link #spill_channel}. 
- * The cache must be populated first, then "rewinded", then accessed sequentially.
+ * {@link #spill_channel}, created only when the cache overflows for the first time. 
+ * The cache must be populated first, then "rewinded", then accessed sequentially,
+ * or, if {@link #inMemory()}, accessed directly via {@link #words()} and {@link #lastWord()}.
  */
 public final class LongWordCache implements Closeable 
 {
 	/** The spill file. */
-	private final File spill_file;
+	private File spill_file;
 	/** A channel opened on {@link #spill_file}. */
-	private final FileChannel spill_channel;
-	/** Whether {@link #spill_channel} should be repositioned at 0 <b>before usage</b>. */
-	private boolean spill_must_be_rewind;
+	private FileChannel spill_channel;
+	/** The suffix of {@link #spill_file}. */
+	private final String spill_suffix;
+	/** Whether {@link #cache} has been spilled to {@link #spill_channel} since the last {@link #clear()}. */
+	private boolean spilled;
+	
+	/** The initial size of the cache, in bytes. */
+	private static final int INITIAL_CACHE_SIZE = 64 * 1024;
 	
-	/** A cache for longwords. Will be spilled to {@link #spill_channel} in case more than {@link #cache_bit_length} bits are added. */
-	private final ByteBuffer cache;
-	/** The length of the cache, in <b>bits</b>. */
-	private final long cache_bit_length;
+	// sun.misc.Unsafe and its invokeCleaner method, to free direct buffers without waiting for the garbage collector, if available
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// direct buffers are freed when garbage collected
+			unsafe = invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+	
+	/** A cache for longwords. Will be spilled to {@link #spill_channel} when full and not allowed to grow anymore. */
+	private ByteBuffer cache;
+	/** The maximum size of the cache, in bytes. */
+	private final int max_cache_size;
+	/** The initial size of the cache, in bytes. */
+	private final int initial_cache_size;
+	/** The memory borrowed from the {@link CacheBudget}, in bytes, i.e., the capacity of {@link #cache} if direct, 0 otherwise. */
+	private long borrowed;
 	
 	/** The current bit buffer. */
 	private long buffer;
@@ -73,25 +107,25 @@ public final class LongWordCache implements Closeable
 	private long length;
 	
 	/**
-	 * Creates a cache with a length of <code>cache_size</code> bytes. 
+	 * Creates a cache with a length of at most <code>cache_size</code> bytes. 
+	 * The cache starts small, off-heap if the {@link CacheBudget} allows it and on heap otherwise, 
+	 * and grows by borrowing memory from the {@link CacheBudget}.
 	 * The <code>suffix</code> is the suffix of the temporary file created to back up
-	 * the cache on disk. It is deleted on exit.
+	 * the cache on disk, if needed. It is deleted on exit.
 	 * 
-	 * @param cache_size the length of the cache memory buffer in bytes
+	 * @param cache_size the maximum length of the cache memory buffer in bytes
 	 * @param tmp_suffix the suffix of the temporary file backing up the cache on disk
 	 * 
 	 * @throws IOException if something goes wrong
 	 */
-	@SuppressWarnings("resource")
 	public LongWordCache(final int cache_size, final String tmp_suffix) throws IOException 
 	{
-		spill_file = File.createTempFile(LongWordCache.class.getName(), tmp_suffix);
-		spill_file.deleteOnExit();
-		spill_channel = new RandomAccessFile(spill_file, "rw").getChannel();
+		spill_suffix = tmp_suffix;
 		
-		cache = ByteBuffer.allocateDirect(cache_size).order(ByteOrder.nativeOrder());
+		max_cache_size = cache_size;
+		initial_cache_size = Math.min(cache_size, INITIAL_CACHE_SIZE);
+		allocateInitialCache();
 		
-		cache_bit_length = cache_size * Byte.SIZE; // in bits
 		length = buffer = 0;
 		free = Long.SIZE;
 	}
@@ -129,14 +163,51 @@ public final class LongWordCache implements Closeable
 	}
 
 	/**
-	 * Empty the cache
+	 * Empty the cache, shrinking it back to its initial size and giving back to the {@link CacheBudget} the memory borrowed to grow it.
 	 */
 	public void clear() 
 	{
 		length = buffer = 0;
 		free = Long.SIZE;
-		((Buffer)cache).clear();
-		spill_must_be_rewind = true;
+		if (cache.capacity() > initial_cache_size) {
+			releaseCache();
+			allocateInitialCache();
+		} else {
+			((Buffer)cache).clear();
+		}
+		spilled = false;
+	}
+	
+	/** Allocate a cache of the initial size, off-heap if the {@link CacheBudget} allows it, on heap otherwise. */
+	private void allocateInitialCache()
+	{
+		if (CacheBudget.tryAcquire(initial_cache_size)) {
+			borrowed = initial_cache_size;
+			cache = ByteBuffer.allocateDirect(initial_cache_size).order(ByteOrder.nativeOrder());
+		} else {
+			borrowed = 0;
+			cache = ByteBuffer.allocate(initial_cache_size).order(ByteOrder.nativeOrder());
+		}
+	}
+	
+	/** Free the cache, and give its memory back to the {@link CacheBudget}. */
+	private void releaseCache()
+	{
+		free(cache);
+		CacheBudget.release(borrowed);
+		borrowed = 0;
+	}
+	
+	/** Free the memory of a direct buffer now, if the JVM allows it, rather than when the buffer is garbage collected. */
+	private static void free(final ByteBuffer buffer)
+	{
+		if (!buffer.isDirect() || INVOKE_CLEANER == null)
+			return;
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// freed when garbage collected
+		}
 	}
 
 	/**
@@ -145,8 +216,13 @@ public final class LongWordCache implements Closeable
 	@Override
 	public void close() throws IOException 
 	{
-		spill_channel.close();
-		spill_file.delete();
+		if (spill_channel != null) {
+			spill_channel.close();
+			spill_file.delete();
+		}
+		releaseCache();
+		// the freed memory must not be accessed anymore
+		cache = ByteBuffer.allocate(0);
 	}
 
 	/**
@@ -184,6 +260,37 @@ public final class LongWordCache implements Closeable
 		append(1L << l, l + 1);
 	}
 
+	/**
+	 * Return whether all bits are stored in memory, i.e., the cache has not been spilled since the last {@link #clear()}.
+	 * @return true if all bits are stored in memory
+	 */
+	public boolean inMemory() 
+	{
+		return !spilled;
+	}
+
+	/**
+	 * Return a read-only view on the complete long words stored in memory, i.e., the first 
+	 * <code>{@link #length()} / 64</code> long words. The cache must be {@link #inMemory()} and not rewinded.
+	 * @return a read-only view on the complete long words
+	 */
+	public ByteBuffer words() 
+	{
+		assert !spilled;
+		final ByteBuffer words = cache.asReadOnlyBuffer().order(cache.order());
+		((Buffer)words).flip();
+		return words;
+	}
+
+	/**
+	 * Return the last, incomplete long word, storing the last <code>{@link #length()} % 64</code> bits.
+	 * @return the last, incomplete long word
+	 */
+	public long lastWord() 
+	{
+		return buffer;
+	}
+
 	/**
 	 * Return the next long from the cache
 	 * @return the next long from the cache 
@@ -208,7 +315,7 @@ public final class LongWordCache implements Closeable
 		if (free != Long.SIZE)
 			cache.putLong(buffer);
 
-		if (length > cache_bit_length) {
+		if (spilled) {
 			((Buffer)cache).flip();
 			spill_channel.write(cache);
 			spill_channel.position(0);
@@ -223,13 +330,49 @@ public final class LongWordCache implements Closeable
 	{
 		cache.putLong(buffer);
 		if (!cache.hasRemaining()) {
-			if (spill_must_be_rewind) {
-				spill_must_be_rewind = false;
-				spill_channel.position(0);
+			// once spilled, the cache cannot grow anymore, since the spill file must precede the cache content
+			if (!spilled && grow())
+				return;
+			if (!spilled) {
+				spilled = true;
+				if (spill_channel == null)
+					createSpillFile();
+				else
+					spill_channel.position(0);
 			}
 			((Buffer)cache).flip();
 			spill_channel.write(cache);
 			((Buffer)cache).clear();
 		}
 	}
+	
+	@SuppressWarnings("resource")
+	private void createSpillFile() throws IOException
+	{
+		spill_file = File.createTempFile(LongWordCache.class.getName(), spill_suffix);
+		spill_file.deleteOnExit();
+		spill_channel = new RandomAccessFile(spill_file, "rw").getChannel();
+	}
+	
+	/**
+	 * Double the cache size, if allowed by the maximum cache size and by the {@link CacheBudget}.
+	 * 
+	 * @return true if the cache has grown
+	 */
+	private boolean grow()
+	{
+		final int capacity = cache.capacity();
+		final int new_capacity = (int) Math.min(2L * capacity, max_cache_size);
+		// an initial cache on heap is replaced by a direct one, borrowing all its memory
+		if (new_capacity <= capacity || !CacheBudget.tryAcquire(new_capacity - borrowed))
+			return false;
+		
+		final ByteBuffer new_cache = ByteBuffer.allocateDirect(new_capacity).order(ByteOrder.nativeOrder());
+		((Buffer)cache).flip();
+		new_cache.put(cache);
+		free(cache);
+		cache = new_cache;
+		borrowed = new_capacity;
+		return true;
+	}
 }
\ No newline at end of file
@@ -47,29 +47,29 @@ public class PositionReader
 	private final LongWordBitReader lowerBits;
 
 	/** The underlying list. */
-	private final LongBigList list;
+	private LongBigList list;
 	/** The 64-bit window. */
 	private long window;
 	/** The current word position in the list of upper bits. */
 	private long curr;
 
 	/** The starting position of the pointers. */
-	private final long skipPointersStart;
+	private long skipPointersStart;
 	/** The starting position of the power bits. */
-	private final long lowerBitsStart;
+	private long lowerBitsStart;
 	/** The starting position of the upper bits. */
-	private final long upperBitsStart;
+	private long upperBitsStart;
 
 	/** The number of lower bits. */
-	private final int l;
+	private int l;
 	/** The size of a pointer. */
-	private final int pointerSize;
+	private int pointerSize;
 	/** The number of pointers. */
-	private final long numberOfPointers;
+	private long numberOfPointers;
 	/** The logarithm of the quantum, cached from the index. */
-	private final int log2Quantum;
+	private int log2Quantum;
 	/** The quantum. */
-	private final int quantum;
+	private int quantum;
 
 	/** The current prefix sum (the sum of the first {@link #currentIndex} elements). */
 	private long prefixSum;
@@ -79,6 +79,19 @@ public class PositionReader
 	private long base;
 
 	public PositionReader(final LongBigList list, final int l, final long skipPointersStart, final long numberOfPointers, final int pointerSize, final long occurrency, final int log2Quantum) 
+	{
+		skipPointers = new LongWordBitReader( list, pointerSize );
+		lowerBits = new LongWordBitReader( list, l );
+		reset( list, l, skipPointersStart, numberOfPointers, pointerSize, occurrency, log2Quantum );
+	}
+
+	/**
+	 * Reset this reader to the beginning of the positions of another posting list, with the same parameters of 
+	 * {@link #PositionReader(LongBigList, int, long, long, int, long, int)}. Its bit readers are reused, so no objects are allocated.
+	 * 
+	 * @return this reader
+	 */
+	public PositionReader reset(final LongBigList list, final int l, final long skipPointersStart, final long numberOfPointers, final int pointerSize, final long occurrency, final int log2Quantum) 
 	{
 		this.list = list; 
 		this.l = l;
@@ -86,8 +99,8 @@ public class PositionReader
 		this.numberOfPointers = numberOfPointers;
 		this.pointerSize = pointerSize;
 
-		skipPointers = new LongWordBitReader( list, pointerSize );
-		lowerBits = new LongWordBitReader( list, l );
+		skipPointers.reset( list, pointerSize );
+		lowerBits.reset( list, l );
 		lowerBitsStart = skipPointersStart + pointerSize * numberOfPointers;
 		lowerBits.position( lowerBitsStart );
 		upperBitsStart = lowerBitsStart + l * occurrency;
@@ -97,6 +110,7 @@ public class PositionReader
 
 		this.log2Quantum = log2Quantum;
 		quantum = 1 << log2Quantum;
+		return this;
 	}
 
 	private void position(final long position) 
@@ -0,0 +1,131 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.io.Text;
+import org.terrier.structures.FSOMapFileLexicon;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.collections.FSOrderedMapFile;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+
+import it.cnr.isti.hpclab.ef.structures.EFLexicon;
+
+/**
+ * This is an iterator over a fixed-size records lexicon file, starting from a given termid.
+ * If termids are aligned, the entry of a termid is found at a fixed offset in the lexicon file, 
+ * so the iterator is positioned there without reading the previous entries.
+ * Every iterator has its own file channel, so many threads can iterate over the same lexicon.
+ */
+public final class SeekableLexiconIterator implements Iterator<Entry<String, LexiconEntry>>, Closeable 
+{
+	// lexicons backed by a fixed-size records lexicon file
+	private static final Set<String> LEXICON_CLASSES = Set.of(FSOMapFileLexicon.class.getName(), EFLexicon.class.getName());
+	
+	private final FixedSizeWriteableFactory<Text> keyFactory;
+	private final FixedSizeWriteableFactory<LexiconEntry> valueFactory;
+	private final DataInputStream in;
+	private long remaining;
+	
+	private SeekableLexiconIterator(final String filename, final FixedSizeWriteableFactory<Text> keyFactory, final FixedSizeWriteableFactory<LexiconEntry> valueFactory, final int termid) throws IOException 
+	{
+		this.keyFactory = keyFactory;
+		this.valueFactory = valueFactory;
+		
+		final long entrySize = keyFactory.getSize() + valueFactory.getSize();
+		@SuppressWarnings("resource")
+		final FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		this.remaining = Math.max(0, channel.size() / entrySize - termid);
+		channel.position(termid * entrySize);
+		this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+	}
+	
+	/**
+	 * Return an iterator over the lexicon of the given index, whose first entry is the one with the given termid, 
+	 * if the lexicon is an aligned {@link FSOMapFileLexicon}, or an {@link EFLexicon} written from one. Otherwise, return an iterator over the whole lexicon.
+	 * 
+	 * @param index the index
+	 * @param termid the termid of the first entry
+	 * @return an iterator over the lexicon, starting from the given termid if possible
+	 * @throws IOException if something goes wrong
+	 */
+	@SuppressWarnings("unchecked")
+	public static Iterator<Entry<String, LexiconEntry>> from(final Index index, final int termid) throws IOException
+	{
+		if (index instanceof IndexOnDisk 
+				&& LEXICON_CLASSES.contains(index.getIndexProperty("index.lexicon.class", null))
+				&& "aligned".equals(index.getIndexProperty("index.lexicon.termids", null))) {
+			final IndexOnDisk iod = (IndexOnDisk) index;
+			return new SeekableLexiconIterator(
+					iod.getPath() + File.separator + iod.getPrefix() + ".lexicon" + FSOrderedMapFile.USUAL_EXTENSION, 
+					(FixedSizeWriteableFactory<Text>) iod.getIndexStructure("lexicon-keyfactory"), 
+					(FixedSizeWriteableFactory<LexiconEntry>) iod.getIndexStructure("lexicon-valuefactory"), 
+					termid);
+		}
+		return index.getLexicon().iterator();
+	}
+	
+	@Override
+	public boolean hasNext() 
+	{
+		return remaining > 0;
+	}
+
+	@Override
+	public Entry<String, LexiconEntry> next() 
+	{
+		if (remaining == 0)
+			throw new NoSuchElementException();
+		try {
+			final Text key = keyFactory.newInstance();
+			key.readFields(in);
+			final LexiconEntry value = valueFactory.newInstance();
+			value.readFields(in);
+			remaining--;
+			return new AbstractMap.SimpleImmutableEntry<>(key.toString(), value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException 
+	{
+		in.close();
+	}
+}
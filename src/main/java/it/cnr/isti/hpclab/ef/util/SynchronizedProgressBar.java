@@ -45,4 +45,9 @@ public final class SynchronizedProgressBar
 	{
 		this.pb.step();
 	}
+	
+	public synchronized void stepBy(final long n)
+	{
+		this.pb.stepBy(n);
+	}
 }
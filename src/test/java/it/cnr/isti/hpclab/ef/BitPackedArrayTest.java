@@ -0,0 +1,92 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.cnr.isti.hpclab.ef.util.BitPackedArray;
+
+public class BitPackedArrayTest 
+{
+    private final Random rnd = new Random(42);
+    
+    /**
+     * Check all elements of the array packing the given values, and of the array written and read back.
+     */
+    private static void check(final int[] values) throws IOException
+    {
+        final BitPackedArray array = BitPackedArray.of(values, values.length);
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        array.write(new DataOutputStream(bytes));
+        final BitPackedArray read = BitPackedArray.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        
+        assertEquals(values.length, array.size());
+        assertEquals(values.length, read.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], array.getInt(i));
+            assertEquals(values[i], read.getInt(i));
+        }
+    }
+    
+    @Test
+    public void testEmpty() throws IOException
+    {
+        check(new int[0]);
+        assertEquals(0, BitPackedArray.of(new int[] { 1, 2, 3 }, 0).size());
+    }
+    
+    @Test
+    public void testZeroWidth() throws IOException
+    {
+        // all zeroes take no bits
+        check(new int[100]);
+        assertEquals(Long.SIZE, BitPackedArray.of(new int[100], 100).numBits());
+    }
+    
+    @Test
+    public void testStraddlingWidths() throws IOException
+    {
+        // every width, most not dividing 64, so that elements straddle word boundaries, up to the largest int
+        for (int width = 1; width < Integer.SIZE; width++) {
+            final int[] values = new int[200];
+            for (int i = 0; i < values.length; i++)
+                values[i] = (int) (rnd.nextDouble() * (1L << width));
+            values[rnd.nextInt(values.length)] = (int) ((1L << width) - 1);
+            check(values);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegative()
+    {
+        BitPackedArray.of(new int[] { 1, -1 }, 2);
+    }
+}
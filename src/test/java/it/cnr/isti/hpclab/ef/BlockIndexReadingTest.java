@@ -126,6 +126,41 @@ public class BlockIndexReadingTest extends EFSetupTest
 		}
 	}
 
+	@Test 
+	public void testPooledPostingLists() throws IOException
+	{
+		IterablePosting previous = null;
+		EFBlockIterablePosting reset = null;
+		for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+			final LexiconEntry ble = originalIndex.getLexicon().getIthLexiconEntry(i).getValue();
+			final EFLexiconEntry sle = (EFLexiconEntry) efIndex.getLexicon().getIthLexiconEntry(i).getValue();
+			
+			// closed posting lists with positions are reused by the next one opened, the reset one is moved along the lexicon
+			EFBlockIterablePosting sp = (EFBlockIterablePosting) efIndex.getInvertedIndex().getPostings(sle);
+			if (previous != null)
+				assertTrue(previous == sp);
+			if (reset == null)
+				reset = (EFBlockIterablePosting) efIndex.getInvertedIndex().getPostings(sle);
+			else
+				reset.reset(sle);
+			
+			BlockIterablePosting op = (BlockIterablePosting) originalIndex.getInvertedIndex().getPostings(ble);
+			while (op.next() != IterablePosting.EOL) {
+				assertEquals(op.getId(), sp.next());
+				assertEquals(op.getId(), reset.next());
+				assertEquals(op.getFrequency(), sp.getFrequency());
+				assertArrayEquals(op.getPositions(), sp.getPositions());
+				assertArrayEquals(op.getPositions(), reset.getPositions());
+			}
+			assertEquals(IterablePosting.EOL, sp.next());
+			assertEquals(IterablePosting.EOL, reset.next());
+			op.close();
+			sp.close();
+			previous = sp;
+		}
+		reset.close();
+	}
+
 	@Test 
 	public void testPostingListsLazyPositionsRead() throws IOException
 	{
@@ -197,6 +232,42 @@ public class BlockIndexReadingTest extends EFSetupTest
 		}
 	}
 
+	@Test 
+	public void testPostingListsStreamedPositionsRead() throws IOException
+	{
+		Map.Entry<String, LexiconEntry> originalEntry;
+		Map.Entry<String, LexiconEntry> efEntry;
+		
+		int[] buffer = new int[1];
+		for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+			originalEntry = originalIndex.getLexicon().getIthLexiconEntry(i);
+			efEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+			
+			BlockIterablePosting op = (BlockIterablePosting) originalIndex.getInvertedIndex().getPostings(originalEntry.getValue());
+			EFBlockIterablePosting sp = (EFBlockIterablePosting) efIndex.getInvertedIndex().getPostings(efEntry.getValue());
+			
+			int cnt = 0;
+			while (op.next() != IterablePosting.EOL && sp.next() != IterablePosting.EOL) {
+				final int[] positions = op.getPositions();
+				// alternately, stream the first half of the positions and then decode them all, or decode them in a caller buffer
+				if (cnt++ % 2 == 0) {
+					for (int j = 0; j < (positions.length + 1) / 2; j++)
+						assertEquals(positions[j], sp.nextPosition());
+					assertEquals(positions.length, sp.decodePositions());
+					assertArrayEquals(positions, Arrays.copyOf(sp.getPositionsBuffer(), positions.length));
+					for (int j = (positions.length + 1) / 2; j < positions.length; j++)
+						assertEquals(positions[j], sp.nextPosition());
+					assertEquals(EFBlockIterablePosting.END_OF_POSITIONS, sp.nextPosition());
+				} else {
+					if (buffer.length < positions.length)
+						buffer = new int[positions.length];
+					assertEquals(positions.length, sp.getPositions(buffer));
+					assertArrayEquals(positions, Arrays.copyOf(buffer, positions.length));
+				}
+			}
+		}
+	}
+
 	@Test
 	public void nextIntoEverySkip() throws IOException
 	{
@@ -0,0 +1,149 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.querying.IndexRef;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+public class CheckpointTest extends EFSetupTest
+{
+    private static final int LOG2QUANTUM = 3;
+    private static final long CHUNK_SIZE = 1000;
+    
+    protected IndexOnDisk originalIndex = null;
+    
+    @Before 
+    public void createIndex() throws Exception
+    {
+        super.doShakespeareIndexing();
+        originalIndex = IndexOnDisk.createIndex();
+        
+        System.setProperty(EliasFano.LOG2QUANTUM, Integer.toString(LOG2QUANTUM));
+    }
+    
+    private Generator.Args args()
+    {
+        Generator.Args args = new Generator.Args();
+        args.index = originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties";
+        args.path = originalIndex.getPath();
+        args.prefix = originalIndex.getPrefix() + ".ef";
+        args.parallelism = "2";
+        args.chunkSize = Long.toString(CHUNK_SIZE);
+        args.resume = true;
+        return args;
+    }
+    
+    /**
+     * Compress every other chunk and write its marker, as an interrupted compression would have done.
+     * The last chunk is compressed too, but without its marker, as if interrupted before writing it.
+     * 
+     * @return the chunks
+     */
+    private TermPartition[] interruptedCompression(final Generator.Args args) throws Exception
+    {
+        final IndexRef refDst = IndexRef.of(args.path + File.separator + args.prefix + ".properties");
+        TermPartition[] chunks;
+        try (Generator generator = new Generator(IndexRef.of(args.index), refDst)) {
+            chunks = generator.partition(generator.numChunks(2, false, CHUNK_SIZE), false);
+        }
+        assertTrue(chunks.length > 2);
+        
+        Checkpoint checkpoint = new Checkpoint(args.path, args.prefix, args.index, false, CHUNK_SIZE, LOG2QUANTUM, false, true);
+        checkpoint.save(chunks);
+        
+        Compressor compressor = new CompressorMapper(originalIndex, refDst, false).compressor();
+        for (TermPartition chunk: chunks) {
+            if (chunk.id() % 2 == 0 || chunk.id() == chunks.length - 1) {
+                chunk.prefix("_partition_" + chunk.id());
+                compressor.compress(chunk);
+                if (chunk.id() < chunks.length - 1)
+                    checkpoint.markDone(chunk);
+            }
+        }
+        return chunks;
+    }
+    
+    @Test
+    public void testResume() throws Exception
+    {
+        final Generator.Args args = args();
+        final TermPartition[] chunks = interruptedCompression(args);
+        
+        assertEquals(0, Generator.process(args));
+        
+        // markers and layout are removed once the compression has completed
+        for (TermPartition chunk: chunks)
+            assertFalse(Files.exists(Paths.get(args.path, "_partition_" + chunk.id() + ".done")));
+        assertFalse(Files.exists(Paths.get(args.path, args.prefix + ".chunks")));
+        
+        IndexOnDisk efIndex = IndexOnDisk.createIndex(args.path, args.prefix);
+        assertEquals(originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(), efIndex.getCollectionStatistics().getNumberOfUniqueTerms());
+        for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+            LexiconEntry ole = originalIndex.getLexicon().getIthLexiconEntry(i).getValue();
+            LexiconEntry sle = efIndex.getLexicon().getIthLexiconEntry(i).getValue();
+            assertEquals(ole.getDocumentFrequency(), sle.getDocumentFrequency());
+            assertEquals(ole.getFrequency(), sle.getFrequency());
+            
+            IterablePosting op = originalIndex.getInvertedIndex().getPostings(ole);
+            IterablePosting sp = efIndex.getInvertedIndex().getPostings(sle);
+            while (op.next() != IterablePosting.EOL) {
+                assertEquals(op.getId(), sp.next());
+                assertEquals(op.getFrequency(), sp.getFrequency());
+            }
+            assertEquals(IterablePosting.EOL, sp.next());
+        }
+        efIndex.close();
+    }
+    
+    @Test
+    public void testResumeWithDifferentOptions() throws Exception
+    {
+        final Generator.Args args = args();
+        interruptedCompression(args);
+        
+        args.chunkSize = Long.toString(2 * CHUNK_SIZE);
+        assertEquals(-1, Generator.process(args));
+        args.chunkSize = Long.toString(CHUNK_SIZE);
+        
+        args.blockMax = true;
+        assertEquals(-1, Generator.process(args));
+        args.blockMax = false;
+        
+        System.setProperty(EliasFano.LOG2QUANTUM, Integer.toString(LOG2QUANTUM + 1));
+        assertEquals(-1, Generator.process(args));
+        System.setProperty(EliasFano.LOG2QUANTUM, Integer.toString(LOG2QUANTUM));
+        
+        // the refused compressions did not touch the checkpoint
+        assertTrue(Files.exists(Paths.get(args.path, args.prefix + ".chunks")));
+        assertEquals(0, Generator.process(args));
+    }
+}
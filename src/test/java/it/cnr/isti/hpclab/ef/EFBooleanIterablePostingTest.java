@@ -0,0 +1,186 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.structures.EFAndIterablePosting;
+import it.cnr.isti.hpclab.ef.structures.EFBasicIterablePosting;
+import it.cnr.isti.hpclab.ef.structures.EFOrIterablePosting;
+
+@RunWith(value = Parameterized.class)
+public class EFBooleanIterablePostingTest extends EFSetupTest
+{
+    protected IndexOnDisk originalIndex = null;
+    protected IndexOnDisk efIndex = null;
+    
+    // additional options of the generator
+    private String options;
+    // the positions of the terms in the lexicon, by decreasing document frequency
+    private int[] byDf;
+    
+    public EFBooleanIterablePostingTest(String options)
+    {
+        this.options = options;
+    }
+    
+    @Parameters
+    public static Collection<Object[]> getParameters()
+    {
+        // with -n, the short posting lists are inlined in the lexicon
+        return Arrays.asList(new Object[][] { {""}, {"-n"} });
+    }
+    
+    @Before 
+    public void createIndex() throws Exception
+    {
+        super.doShakespeareIndexing();
+        originalIndex = IndexOnDisk.createIndex();
+        
+        String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(1)};
+        if (!options.isEmpty()) {
+            final String[] extra = options.split(" ");
+            args = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, args, args.length - extra.length, extra.length);
+        }
+
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+
+        Generator.main(args);
+        
+        efIndex = IndexOnDisk.createIndex(args[1], args[3]);
+        
+        final int numTerms = originalIndex.getCollectionStatistics().getNumberOfUniqueTerms();
+        final int[] dfs = new int[numTerms];
+        for (int i = 0; i < numTerms; i++)
+            dfs[i] = originalIndex.getLexicon().getIthLexiconEntry(i).getValue().getDocumentFrequency();
+        byDf = IntStream.range(0, numTerms).boxed().sorted((a, b) -> Integer.compare(dfs[b], dfs[a])).mapToInt(Integer::intValue).toArray();
+    }
+    
+    @Test
+    public void testConjunction() throws IOException
+    {
+        for (int[] query: queries()) {
+            // the two most frequent terms, then all three
+            for (int n = 2; n <= query.length; n++) {
+                // expected: the documents in all original lists, with the sum of their frequencies
+                SortedMap<Integer, Integer> expected = originalPostings(query[0]);
+                for (int j = 1; j < n; j++) {
+                    final SortedMap<Integer, Integer> other = originalPostings(query[j]);
+                    expected.keySet().retainAll(other.keySet());
+                    for (Map.Entry<Integer, Integer> e: expected.entrySet())
+                        e.setValue(e.getValue() + other.get(e.getKey()));
+                }
+                
+                IterablePosting and = new EFAndIterablePosting(efPostings(Arrays.copyOf(query, n)));
+                for (Map.Entry<Integer, Integer> e: expected.entrySet()) {
+                    assertEquals(e.getKey().intValue(), and.next());
+                    assertEquals(e.getValue().intValue(), and.getFrequency());
+                }
+                assertEquals(IterablePosting.EOL, and.next());
+                and.close();
+            }
+        }
+    }
+    
+    @Test
+    public void testDisjunction() throws IOException
+    {
+        for (int[] query: queries()) {
+            // expected: the documents in any original list, with the sum of their frequencies
+            SortedMap<Integer, Integer> expected = new TreeMap<>();
+            for (int i: query)
+                for (Map.Entry<Integer, Integer> e: originalPostings(i).entrySet())
+                    expected.merge(e.getKey(), e.getValue(), Integer::sum);
+            
+            // merged and dense, reading all documents or skipping every other one
+            for (boolean dense: new boolean[] { false, true }) {
+                for (boolean skip: new boolean[] { false, true }) {
+                    IterablePosting or = new EFOrIterablePosting(efPostings(query), dense);
+                    int k = 0;
+                    for (Map.Entry<Integer, Integer> e: expected.entrySet()) {
+                        if (skip && k++ % 2 == 0)
+                            continue;
+                        assertEquals(e.getKey().intValue(), skip ? or.next(e.getKey()) : or.next());
+                        assertEquals(e.getValue().intValue(), or.getFrequency());
+                    }
+                    assertEquals(IterablePosting.EOL, skip ? or.next(Integer.MAX_VALUE) : or.next());
+                    or.close();
+                }
+            }
+        }
+    }
+    
+    /** Return a frequent, a mid frequency and a rare term, moving down the document frequencies by 97 terms at a time. */
+    private List<int[]> queries()
+    {
+        final int numTerms = byDf.length;
+        List<int[]> queries = new ArrayList<>();
+        for (int i = 0; numTerms / 2 + i < numTerms - 1 - i; i += 97)
+            queries.add(new int[] { byDf[i], byDf[numTerms / 2 + i], byDf[numTerms - 1 - i] });
+        return queries;
+    }
+    
+    /** Return the frequencies of the i-th term of the original index, by docid. */
+    private SortedMap<Integer, Integer> originalPostings(final int i) throws IOException
+    {
+        SortedMap<Integer, Integer> res = new TreeMap<>();
+        IterablePosting p = originalIndex.getInvertedIndex().getPostings(originalIndex.getLexicon().getIthLexiconEntry(i).getValue());
+        while (p.next() != IterablePosting.EOL)
+            res.put(p.getId(), p.getFrequency());
+        p.close();
+        return res;
+    }
+    
+    private EFBasicIterablePosting[] efPostings(final int[] query) throws IOException
+    {
+        EFBasicIterablePosting[] postings = new EFBasicIterablePosting[query.length];
+        for (int j = 0; j < query.length; j++)
+            postings[j] = (EFBasicIterablePosting) efIndex.getInvertedIndex().getPostings(efIndex.getLexicon().getIthLexiconEntry(query[j]).getValue());
+        return postings;
+    }
+    
+    @After 
+    public void deleteIndex() throws IOException
+    {
+        originalIndex.close();
+        efIndex.close();
+    } 
+}
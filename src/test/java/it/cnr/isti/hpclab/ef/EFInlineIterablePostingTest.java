@@ -0,0 +1,152 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.structures.EFBasicIterablePosting;
+import it.cnr.isti.hpclab.ef.structures.EFInlineIterablePosting;
+import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+
+@RunWith(value = Parameterized.class)
+public class EFInlineIterablePostingTest extends EFSetupTest
+{
+    protected IndexOnDisk originalIndex = null;
+    protected IndexOnDisk efIndex = null;
+    
+    // additional options of the generator
+    private String options;
+    
+    public EFInlineIterablePostingTest(String options)
+    {
+        this.options = options;
+    }
+    
+    @Parameters
+    public static Collection<Object[]> getParameters()
+    {
+        // without -n, the test inlines the short posting lists in the entries it reads
+        return Arrays.asList(new Object[][] { {""}, {"-n"} });
+    }
+    
+    @Before 
+    public void createIndex() throws Exception
+    {
+        super.doShakespeareIndexing();
+        originalIndex = IndexOnDisk.createIndex();
+        
+        String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(1)};
+        if (!options.isEmpty()) {
+            final String[] extra = options.split(" ");
+            args = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, args, args.length - extra.length, extra.length);
+        }
+
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+
+        Generator.main(args);
+        
+        efIndex = IndexOnDisk.createIndex(args[1], args[3]);
+    }
+    
+    @Test
+    public void testInlinePostings() throws IOException
+    {
+        final int[] docids = new int[EFLexiconEntry.MAX_INLINE_ENTRIES];
+        final int[] freqs  = new int[EFLexiconEntry.MAX_INLINE_ENTRIES];
+        
+        for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+            EFLexiconEntry ole = (EFLexiconEntry) efIndex.getLexicon().getIthLexiconEntry(i).getValue();
+            if (ole.getDocumentFrequency() > EFLexiconEntry.MAX_INLINE_ENTRIES)
+                continue;
+            // with -n, the generator inlines the short posting lists
+            assertEquals(options.contains("-n"), ole.isInline());
+            
+            // the inlined entry of the posting list, read from the original index
+            IterablePosting op = originalIndex.getInvertedIndex().getPostings(originalIndex.getLexicon().getIthLexiconEntry(i).getValue());
+            for (int j = 0; op.next() != IterablePosting.EOL; j++) {
+                docids[j] = op.getId();
+                freqs[j] = op.getFrequency();
+            }
+            op.close();
+            EFLexiconEntry le = ole;
+            if (ole.isInline()) {
+                // inlined entries have no offsets
+                try {
+                    ole.getDocidOffset();
+                    fail();
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            } else {
+                le = new EFLexiconEntry(ole.getTermId(), ole.getDocumentFrequency(), ole.getFrequency(), ole.getMaxFrequencyInDocuments(), ole.getDocidOffset(), ole.getFreqOffset());
+                le.setInlinePostings(docids, freqs);
+                assertTrue(le.isInline());
+            }
+            
+            EFBasicIterablePosting ip = (EFBasicIterablePosting) efIndex.getInvertedIndex().getPostings(le);
+            assertTrue(ip instanceof EFInlineIterablePosting);
+            for (int j = 0; j < ole.getDocumentFrequency(); j++) {
+                assertEquals(docids[j], ip.get(j));
+                assertEquals(j, ip.rank(docids[j]));
+                assertEquals(docids[j], ip.next());
+                assertEquals(freqs[j], ip.getFrequency());
+            }
+            assertEquals(IterablePosting.EOL, ip.next());
+            
+            // skipping to the last docid, and decoding in bulk
+            ip.reset(le);
+            assertEquals(docids[ole.getDocumentFrequency() - 1], ip.next(docids[ole.getDocumentFrequency() - 1]));
+            ip.reset(le);
+            final int[] batchDocids = new int[EFLexiconEntry.MAX_INLINE_ENTRIES + 1];
+            final int[] batchFreqs  = new int[EFLexiconEntry.MAX_INLINE_ENTRIES + 1];
+            assertEquals(ole.getDocumentFrequency(), ip.nextBatch(batchDocids, batchFreqs));
+            for (int j = 0; j < ole.getDocumentFrequency(); j++) {
+                assertEquals(docids[j], batchDocids[j]);
+                assertEquals(freqs[j], batchFreqs[j]);
+            }
+            assertEquals(0, ip.nextBatch(batchDocids, batchFreqs));
+            ip.close();
+        }
+    }
+    
+    @After 
+    public void deleteIndex() throws IOException
+    {
+        originalIndex.close();
+        efIndex.close();
+    } 
+}
@@ -0,0 +1,198 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.structures.EFLexicon;
+import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+
+@RunWith(value = Parameterized.class)
+public class EFLexiconTest extends EFSetupTest
+{
+    protected IndexOnDisk originalIndex = null;
+    protected IndexOnDisk efIndex = null;
+    
+    // additional options of the generator
+    private String options;
+    
+    public EFLexiconTest(String options)
+    {
+        this.options = options;
+    }
+    
+    @Parameters
+    public static Collection<Object[]> getParameters()
+    {
+        // with -e, the generator writes the EF lexicon, with -n it holds the inlined posting lists too
+        return Arrays.asList(new Object[][] { {""}, {"-e"}, {"-n -e"} });
+    }
+    
+    @Before 
+    public void createIndex() throws Exception
+    {
+        super.doShakespeareIndexing();
+        originalIndex = IndexOnDisk.createIndex();
+        
+        String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(1)};
+        if (!options.isEmpty()) {
+            final String[] extra = options.split(" ");
+            args = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, args, args.length - extra.length, extra.length);
+        }
+
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+
+        Generator.main(args);
+        
+        efIndex = IndexOnDisk.createIndex(args[1], args[3]);
+    }
+    
+    @Test
+    public void testEFLexicon() throws IOException
+    {
+        EFLexicon.write(efIndex);
+        EFLexicon lexicon = new EFLexicon("lexicon", efIndex);
+        
+        final int numTerms = efIndex.getCollectionStatistics().getNumberOfUniqueTerms();
+        assertEquals(numTerms, lexicon.numberOfEntries());
+        for (int i = 0; i < numTerms; i++) {
+            Map.Entry<String, LexiconEntry> originalEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+            EFLexiconEntry ole = (EFLexiconEntry) originalEntry.getValue();
+            EFLexiconEntry le = (EFLexiconEntry) lexicon.getLexiconEntry(originalEntry.getKey());
+            
+            assertEquals(i, lexicon.getTermId(originalEntry.getKey()));
+            assertEquals(originalEntry.getKey(), lexicon.getIthLexiconEntry(i).getKey());
+            assertEquals(ole.getTermId(), le.getTermId());
+            assertEquals(ole.getDocumentFrequency(), le.getDocumentFrequency());
+            assertEquals(ole.getFrequency(), le.getFrequency());
+            assertEquals(ole.getMaxFrequencyInDocuments(), le.getMaxFrequencyInDocuments());
+            assertEquals(ole.isInline(), le.isInline());
+            if (ole.isInline()) {
+                for (int j = 0; j < ole.getDocumentFrequency(); j++) {
+                    assertEquals(ole.getInlineDocid(j), le.getInlineDocid(j));
+                    assertEquals(ole.getInlineFrequency(j), le.getInlineFrequency(j));
+                }
+            } else {
+                assertEquals(ole.getDocidOffset(), le.getDocidOffset());
+                assertEquals(ole.getFreqOffset(), le.getFreqOffset());
+            }
+        }
+        assertEquals(null, lexicon.getLexiconEntry("\u0000not a term"));
+        lexicon.close();
+    }
+    
+    @Test
+    public void testTermRanges() throws IOException
+    {
+        EFLexicon.write(efIndex);
+        EFLexicon lexicon = new EFLexicon("lexicon", efIndex);
+        
+        final int numTerms = efIndex.getCollectionStatistics().getNumberOfUniqueTerms();
+        
+        // the range of the first ten terms
+        Iterator<Map.Entry<String, LexiconEntry>> range = lexicon.getLexiconEntryRange(lexicon.getTerm(0), lexicon.getTerm(Math.min(10, numTerms - 1)));
+        for (int i = 0; i < Math.min(10, numTerms - 1); i++)
+            assertEquals(i, range.next().getValue().getTermId());
+        assertTrue(!range.hasNext());
+        
+        // the terms starting with the first two characters of a term have contiguous termids
+        for (int i = 0; i < numTerms; i += 97) {
+            final String term = lexicon.getTerm(i);
+            final String prefix = term.substring(0, Math.min(2, term.length()));
+            final int[] termIds = lexicon.getTermIdRange(prefix);
+            assertTrue(termIds[0] <= i && i < termIds[1]);
+            for (int j = Math.max(0, termIds[0] - 1); j < Math.min(numTerms, termIds[1] + 1); j++)
+                assertEquals(j >= termIds[0] && j < termIds[1], lexicon.getTerm(j).startsWith(prefix));
+        }
+        lexicon.close();
+    }
+    
+    @Test
+    public void testLexiconStructure() throws IOException
+    {
+        // with -e, the index loads its lexicon and lexicon input stream through the properties written by the generator
+        assertEquals(options.contains("-e"), efIndex.getLexicon() instanceof EFLexicon);
+        
+        @SuppressWarnings("unchecked")
+        Iterator<Map.Entry<String, LexiconEntry>> originalIter = (Iterator<Map.Entry<String, LexiconEntry>>) originalIndex.getIndexStructureInputStream("lexicon");
+        @SuppressWarnings("unchecked")
+        Iterator<Map.Entry<String, LexiconEntry>> efIter = (Iterator<Map.Entry<String, LexiconEntry>>) efIndex.getIndexStructureInputStream("lexicon");
+        assertEquals(options.contains("-e"), efIter instanceof EFLexicon.InputIterator);
+        
+        while (originalIter.hasNext()) {
+            Map.Entry<String, LexiconEntry> originalEntry = originalIter.next();
+            Map.Entry<String, LexiconEntry> efEntry = efIter.next();
+            assertEquals(originalEntry.getKey(), efEntry.getKey());
+            assertEquals(originalEntry.getValue().getTermId(), efEntry.getValue().getTermId());
+            assertEquals(originalEntry.getValue().getDocumentFrequency(), efEntry.getValue().getDocumentFrequency());
+            assertEquals(originalEntry.getValue().getFrequency(), efEntry.getValue().getFrequency());
+            
+            // lookups by term and by termid
+            LexiconEntry le = efIndex.getLexicon().getLexiconEntry(originalEntry.getKey());
+            assertEquals(originalEntry.getValue().getTermId(), le.getTermId());
+            assertEquals(originalEntry.getKey(), efIndex.getLexicon().getLexiconEntry(le.getTermId()).getKey());
+            assertArrayEquals(postings(originalIndex, originalEntry.getValue()), postings(efIndex, le));
+        }
+        assertTrue(!efIter.hasNext());
+        IndexUtil.close(originalIter);
+        IndexUtil.close(efIter);
+    }
+    
+    /** Return the docids and freqs of the posting list of a lexicon entry, interleaved. */
+    private static int[] postings(final IndexOnDisk index, final LexiconEntry le) throws IOException
+    {
+        final int[] postings = new int[2 * le.getDocumentFrequency()];
+        IterablePosting p = index.getInvertedIndex().getPostings(le);
+        for (int j = 0; p.next() != IterablePosting.EOL; j += 2) {
+            postings[j] = p.getId();
+            postings[j + 1] = p.getFrequency();
+        }
+        p.close();
+        return postings;
+    }
+    
+    @After 
+    public void deleteIndex() throws IOException
+    {
+        originalIndex.close();
+        efIndex.close();
+    } 
+}
@@ -0,0 +1,221 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.terrier.matching.Matching;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.daat.Full;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.ef.matching.EFMatching;
+
+@RunWith(value = Parameterized.class)
+public class EFMatchingTest extends EFSetupTest
+{
+    private static final int K = 10;
+    private static final int NUM_QUERIES = 100;
+    
+    protected IndexOnDisk originalIndex = null;
+    protected IndexOnDisk efIndex = null;
+    
+    private String algorithm;
+    private String model;
+    // additional options of the generator
+    private String options;
+    // the terms of the random queries, neither too rare nor too frequent
+    private List<String> terms;
+    
+    public EFMatchingTest(String algorithm, String model, String options)
+    {
+        this.algorithm = algorithm;
+        this.model = model;
+        this.options = options;
+    }
+    
+    @Parameters
+    public static Collection<Object[]> getParameters()
+    {
+        // DPH is not monotone in the freq and the document length, its queries must be matched exhaustively
+        return Arrays.asList(new Object[][] { {"maxscore", "BM25", ""}, {"wand", "BM25", ""}, {"bmw", "BM25", ""},
+                                              {"maxscore", "BM25", "-x"}, {"wand", "BM25", "-x"}, {"bmw", "BM25", "-x"},
+                                              {"maxscore", "DPH", ""}, {"bmw", "DPH", ""}, 
+                                              {"maxscore", "DPH", "-x"}, {"bmw", "DPH", "-x"} });
+    }
+    
+    @Before 
+    public void createIndex() throws Exception
+    {
+        super.doShakespeareIndexing();
+        originalIndex = IndexOnDisk.createIndex();
+        
+        String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(1)};
+        if (!options.isEmpty()) {
+            final String[] extra = options.split(" ");
+            args = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, args, args.length - extra.length, extra.length);
+        }
+
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+
+        Generator.main(args);
+        
+        efIndex = IndexOnDisk.createIndex(args[1], args[3]);
+        assertEquals(options.contains("-x"), efIndex.hasIndexStructure("blockmax"));
+        
+        ApplicationSetup.setProperty("matching.retrieved_set_size", Integer.toString(K));
+        ApplicationSetup.setProperty(EliasFano.MATCHING_ALGORITHM, algorithm);
+        
+        final int numDocs = efIndex.getCollectionStatistics().getNumberOfDocuments();
+        terms = new ArrayList<>();
+        for (Map.Entry<String, LexiconEntry> entry: efIndex.getLexicon())
+            if (entry.getValue().getDocumentFrequency() > 1 && entry.getValue().getDocumentFrequency() < numDocs / 10)
+                terms.add(entry.getKey());
+    }
+    
+    @After
+    public void closeIndex() throws IOException
+    {
+        efIndex.close();
+        originalIndex.close();
+    }
+    
+    private MatchingQueryTerms query(final String qid, final List<String> queryTerms) throws IOException
+    {
+        MatchingQueryTerms mqt = new MatchingQueryTerms(qid);
+        for (String term: queryTerms)
+            mqt.setTermProperty(term, 1.0d);
+        try {
+            mqt.setDefaultTermWeightingModel((WeightingModel) Class.forName(WeightingModel.class.getPackage().getName() + "." + model).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+        return mqt;
+    }
+    
+    private List<String> randomTerms(final Random rnd, final int n)
+    {
+        Set<String> queryTerms = new HashSet<>();
+        while (queryTerms.size() < n)
+            queryTerms.add(terms.get(rnd.nextInt(terms.size())));
+        return new ArrayList<>(queryTerms);
+    }
+    
+    @Test
+    public void testTopK() throws IOException
+    {
+        final Random rnd = new Random(0);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            final List<String> queryTerms = randomTerms(rnd, 1 + q % 4);
+            final ResultSet expected = new Full(efIndex).match("q" + q, query("q" + q, queryTerms));
+            final ResultSet actual = new EFMatching(efIndex).match("q" + q, query("q" + q, queryTerms));
+            assertSameTopK(queryTerms.toString(), expected, actual);
+        }
+    }
+    
+    @Test
+    public void testRequiredAndNegatedTerms() throws IOException
+    {
+        final Random rnd = new Random(0);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            final List<String> queryTerms = randomTerms(rnd, 3);
+            MatchingQueryTerms mqt = query("q" + q, queryTerms);
+            mqt.get(0).getValue().required = true;
+            mqt.get(1).getValue().required = false;
+            final ResultSet actual = new EFMatching(efIndex).match("q" + q, mqt);
+            
+            final Set<Integer> required = docids(queryTerms.get(0));
+            final Set<Integer> negated = docids(queryTerms.get(1));
+            for (int i = 0; i < actual.getResultSize(); i++) {
+                assertTrue(required.contains(actual.getDocids()[i]));
+                assertFalse(negated.contains(actual.getDocids()[i]));
+            }
+            
+            mqt = query("q" + q, queryTerms);
+            mqt.get(0).getValue().required = true;
+            mqt.get(1).getValue().required = false;
+            assertSameTopK(queryTerms.toString(), new Full(efIndex).match("q" + q, mqt), actual);
+        }
+    }
+    
+    private Set<Integer> docids(final String term) throws IOException
+    {
+        Set<Integer> docids = new HashSet<>();
+        IterablePosting p = efIndex.getInvertedIndex().getPostings(efIndex.getLexicon().getLexiconEntry(term));
+        while (p.next() != IterablePosting.EOL)
+            docids.add(p.getId());
+        p.close();
+        return docids;
+    }
+    
+    /**
+     * Check that two result sets have the same scores and, apart from the documents tied with the last one, the same documents.
+     */
+    private static void assertSameTopK(final String query, final ResultSet expected, final ResultSet actual)
+    {
+        assertEquals(query, expected.getResultSize(), actual.getResultSize());
+        final int n = expected.getResultSize();
+        if (n == 0)
+            return;
+        
+        final double[] expectedScores = Arrays.copyOf(expected.getScores(), n);
+        final double[] actualScores = Arrays.copyOf(actual.getScores(), n);
+        Arrays.sort(expectedScores);
+        Arrays.sort(actualScores);
+        for (int i = 0; i < n; i++)
+            assertEquals(query, expectedScores[i], actualScores[i], 1e-9);
+        
+        final Map<Integer, Double> actualDocs = new HashMap<>();
+        for (int i = 0; i < n; i++)
+            actualDocs.put(actual.getDocids()[i], actual.getScores()[i]);
+        for (int i = 0; i < n; i++) {
+            if (expected.getScores()[i] > expectedScores[0] + 1e-9) {
+                assertTrue(query, actualDocs.containsKey(expected.getDocids()[i]));
+                assertEquals(query, expected.getScores()[i], actualDocs.get(expected.getDocids()[i]), 1e-9);
+            }
+        }
+    }
+}
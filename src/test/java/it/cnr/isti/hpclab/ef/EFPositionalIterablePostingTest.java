@@ -0,0 +1,162 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.BlockPosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.ef.structures.EFPhraseIterablePosting;
+import it.cnr.isti.hpclab.ef.structures.EFPositionalIterablePosting;
+import it.cnr.isti.hpclab.ef.structures.EFProximityIterablePosting;
+
+public class EFPositionalIterablePostingTest extends EFSetupTest
+{
+	protected IndexOnDisk originalIndex = null;
+	protected IndexOnDisk efIndex = null;
+	
+	@Before 
+	public void createIndex() throws Exception
+	{
+		ApplicationSetup.BLOCK_INDEXING = true;
+		super.doShakespeareIndexing();
+		originalIndex = IndexOnDisk.createIndex();
+		
+		String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(1), "-b"};
+
+		System.setProperty(EliasFano.LOG2QUANTUM, "3");
+
+		Generator.main(args);
+		
+		efIndex = IndexOnDisk.createIndex(args[1], args[3]);
+	}
+	
+	@Test
+	public void testPhraseAndProximity() throws IOException
+	{
+		// the terms with the highest document frequencies in the original index, to find many phrases and windows
+		final int numTerms = originalIndex.getCollectionStatistics().getNumberOfUniqueTerms();
+		final String[] terms = new String[6];
+		final int[] dfs = new int[terms.length];
+		for (int i = 0; i < numTerms; i++) {
+			Map.Entry<String, LexiconEntry> entry = originalIndex.getLexicon().getIthLexiconEntry(i);
+			for (int j = 0; j < terms.length; j++) {
+				if (entry.getValue().getDocumentFrequency() > dfs[j]) {
+					System.arraycopy(terms, j, terms, j + 1, terms.length - j - 1);
+					System.arraycopy(dfs, j, dfs, j + 1, dfs.length - j - 1);
+					terms[j] = entry.getKey();
+					dfs[j] = entry.getValue().getDocumentFrequency();
+					break;
+				}
+			}
+		}
+		
+		final int windowSize = 8;
+		for (String first: terms) {
+			for (String second: terms) {
+				Map<Integer, int[]> firstPositions = positions(first);
+				Map<Integer, int[]> secondPositions = first.equals(second) ? firstPositions : positions(second);
+				
+				IterablePosting phrase = new EFPhraseIterablePosting(EFPositionalIterablePosting.postings(efIndex, first, second));
+				IterablePosting window = new EFProximityIterablePosting(EFPositionalIterablePosting.postings(efIndex, first, second), windowSize);
+				for (Map.Entry<Integer, int[]> doc: firstPositions.entrySet()) {
+					if (!secondPositions.containsKey(doc.getKey()))
+						continue;
+					int phrases = 0;
+					for (int p: doc.getValue())
+						for (int q: secondPositions.get(doc.getKey()))
+							if (q == p + 1)
+								phrases++;
+					if (phrases > 0) {
+						assertEquals(doc.getKey().intValue(), phrase.next(doc.getKey()));
+						assertEquals(phrases, phrase.getFrequency());
+					} else {
+						assertTrue(phrase.next(doc.getKey()) != doc.getKey());
+					}
+					final int windows = windows(doc.getValue(), secondPositions.get(doc.getKey()), windowSize);
+					if (windows > 0) {
+						assertEquals(doc.getKey().intValue(), window.next(doc.getKey()));
+						assertEquals(windows, window.getFrequency());
+					} else {
+						assertTrue(window.next(doc.getKey()) != doc.getKey());
+					}
+				}
+				phrase.close();
+				window.close();
+			}
+		}
+	}
+	
+	/**
+	 * Count the windows of two terms in a document, given their positions.
+	 * A window starts at every occurrence of either term followed by an occurrence of the other one less than windowSize positions later.
+	 * When the same positions are given for both terms, the other occurrence is any later occurrence of the term.
+	 */
+	private static int windows(final int[] first, final int[] second, final int windowSize)
+	{
+		int windows = 0;
+		for (int p: first)
+			if (followedWithin(p, second, windowSize))
+				windows++;
+		if (second != first)
+			for (int q: second)
+				if (followedWithin(q, first, windowSize))
+					windows++;
+		return windows;
+	}
+	
+	private static boolean followedWithin(final int position, final int[] positions, final int windowSize)
+	{
+		for (int q: positions)
+			if (q > position && q - position < windowSize)
+				return true;
+		return false;
+	}
+	
+	/** Return the positions of a term in every document of the original index. */
+	private Map<Integer, int[]> positions(final String term) throws IOException
+	{
+		Map<Integer, int[]> res = new TreeMap<>();
+		IterablePosting p = originalIndex.getInvertedIndex().getPostings(originalIndex.getLexicon().getLexiconEntry(term));
+		while (p.next() != IterablePosting.EOL)
+			res.put(p.getId(), ((BlockPosting) p).getPositions().clone());
+		p.close();
+		return res;
+	}
+	
+	@After public void deleteIndex() throws IOException
+	{
+		originalIndex.close();
+		efIndex.close();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.structures.EFBasicIterablePosting;
+
+@RunWith(value = Parameterized.class)
+public class EFRandomAccessTest extends EFSetupTest
+{
+    protected IndexOnDisk originalIndex = null;
+    protected IndexOnDisk efIndex = null;
+    
+    // additional options of the generator
+    private String options;
+    
+    public EFRandomAccessTest(String options)
+    {
+        this.options = options;
+    }
+    
+    @Parameters
+    public static Collection<Object[]> getParameters()
+    {
+        // with -n, the short posting lists are inlined in the lexicon
+        return Arrays.asList(new Object[][] { {""}, {"-n"} });
+    }
+    
+    @Before 
+    public void createIndex() throws Exception
+    {
+        super.doShakespeareIndexing();
+        originalIndex = IndexOnDisk.createIndex();
+        
+        String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(1)};
+        if (!options.isEmpty()) {
+            final String[] extra = options.split(" ");
+            args = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, args, args.length - extra.length, extra.length);
+        }
+
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+
+        Generator.main(args);
+        
+        efIndex = IndexOnDisk.createIndex(args[1], args[3]);
+    }
+    
+    @Test
+    public void testRandomAccess() throws IOException
+    {
+        for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+            IterablePosting op = originalIndex.getInvertedIndex().getPostings(originalIndex.getLexicon().getIthLexiconEntry(i).getValue());
+            EFBasicIterablePosting sp = (EFBasicIterablePosting) efIndex.getInvertedIndex().getPostings(efIndex.getLexicon().getIthLexiconEntry(i).getValue());
+            
+            // random access between the steps of the iteration must not move it
+            int index = 0;
+            while (op.next() != IterablePosting.EOL) {
+                final int docid = op.getId();
+                assertEquals(docid, sp.get(index));
+                assertEquals(index, sp.rank(docid));
+                assertEquals(index, sp.positionOf(docid));
+                assertEquals(index + 1, sp.rank(docid + 1));
+                assertEquals(docid, sp.next());
+                assertEquals(op.getFrequency(), sp.getFrequency());
+                index++;
+            }
+            assertEquals(IterablePosting.EOL, sp.next());
+            assertEquals(index, sp.rank(Integer.MAX_VALUE));
+            op.close();
+            sp.close();
+        }
+    }
+    
+    @After 
+    public void deleteIndex() throws IOException
+    {
+        originalIndex.close();
+        efIndex.close();
+    } 
+}
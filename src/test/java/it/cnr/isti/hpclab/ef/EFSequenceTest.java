@@ -0,0 +1,138 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.cnr.isti.hpclab.ef.util.EFSequence;
+import it.cnr.isti.hpclab.ef.util.EFUtils;
+
+public class EFSequenceTest 
+{
+    private final Random rnd = new Random(42);
+    
+    /**
+     * Check all elements of the sequence encoding the given values, and of the sequence written and read back.
+     */
+    private static void check(final long[] values, final int log2Quantum) throws IOException
+    {
+        final EFSequence seq = EFSequence.of(values, values.length, log2Quantum);
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        seq.write(new DataOutputStream(bytes));
+        final EFSequence read = EFSequence.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        
+        assertEquals(values.length, seq.size());
+        assertEquals(values.length, read.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], seq.get(i));
+            assertEquals(values[i], read.get(i));
+        }
+    }
+    
+    private static int lowerBits(final long[] values)
+    {
+        return EFUtils.lowerBits(values.length, values.length == 0 ? 0 : values[values.length - 1], false);
+    }
+    
+    @Test
+    public void testEmpty() throws IOException
+    {
+        check(new long[0], EFSequence.DEFAULT_LOG2_QUANTUM);
+        assertEquals(0, EFSequence.of(new long[] { 1, 2, 3 }, 0).size());
+    }
+    
+    @Test
+    public void testZeroLowerBits() throws IOException
+    {
+        // gaps of 0 or 1 leave no lower bits, so elements are their upper bits
+        final long[] values = new long[1000];
+        for (int i = 1; i < values.length; i++)
+            values[i] = values[i - 1] + rnd.nextInt(2);
+        assertEquals(0, lowerBits(values));
+        check(values, 2);
+        check(values, EFSequence.DEFAULT_LOG2_QUANTUM);
+        
+        check(new long[] { 0 }, 2);
+        check(new long[] { 0, 0, 0, 0, 0, 0 }, 2);
+    }
+    
+    @Test
+    public void testStraddlingLowerBits() throws IOException
+    {
+        // widths not dividing 64, so that lower bits straddle word boundaries, up to the widest ones
+        for (long gap: new long[] { 1L << 7, 1L << 13, 1L << 37, 1L << 53 }) {
+            final long[] values = new long[200];
+            for (int i = 0; i < values.length; i++)
+                values[i] = gap * i + (long) (rnd.nextDouble() * gap);
+            assertTrue(Long.SIZE % lowerBits(values) != 0);
+            check(values, 3);
+        }
+    }
+    
+    @Test
+    public void testLastElementOfEveryQuantum() throws IOException
+    {
+        for (int log2Quantum = 0; log2Quantum <= 4; log2Quantum++) {
+            final int quantum = 1 << log2Quantum;
+            // lengths ending on, right before and right after a forward pointer
+            for (int length: new int[] { 5 * quantum - 1, 5 * quantum, 5 * quantum + 1 }) {
+                final long[] values = new long[length];
+                for (int i = 1; i < length; i++)
+                    values[i] = values[i - 1] + rnd.nextInt(100);
+                check(values, log2Quantum);
+                
+                final EFSequence seq = EFSequence.of(values, length, log2Quantum);
+                for (int i = quantum - 1; i < length; i += quantum) {
+                    assertEquals(values[i], seq.get(i));
+                    if (i + 1 < length)
+                        assertEquals(values[i + 1], seq.get(i + 1));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testLargeGaps() throws IOException
+    {
+        // a few huge gaps, as the offsets around very long posting lists, leave long runs of zeroes in the upper bits
+        final long[] values = new long[3000];
+        for (int i = 1; i < values.length; i++)
+            values[i] = values[i - 1] + (rnd.nextInt(500) == 0 ? 1L << 30 : rnd.nextInt(64));
+        check(values, EFSequence.DEFAULT_LOG2_QUANTUM);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecreasing()
+    {
+        EFSequence.of(new long[] { 1, 3, 2 }, 3);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+import it.cnr.isti.hpclab.ef.structures.EFTermStatistics;
+
+@RunWith(value = Parameterized.class)
+public class EFTermStatisticsTest extends EFSetupTest
+{
+    protected IndexOnDisk originalIndex = null;
+    protected IndexOnDisk efIndex = null;
+    
+    // additional options of the generator
+    private String options;
+    
+    public EFTermStatisticsTest(String options)
+    {
+        this.options = options;
+    }
+    
+    @Parameters
+    public static Collection<Object[]> getParameters()
+    {
+        // without -t, the test writes the term statistics; with -n, some of them describe inlined posting lists
+        return Arrays.asList(new Object[][] { {""}, {"-t"}, {"-n -e -t"} });
+    }
+    
+    @Before 
+    public void createIndex() throws Exception
+    {
+        super.doShakespeareIndexing();
+        originalIndex = IndexOnDisk.createIndex();
+        
+        String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(1)};
+        if (!options.isEmpty()) {
+            final String[] extra = options.split(" ");
+            args = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, args, args.length - extra.length, extra.length);
+        }
+
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+
+        Generator.main(args);
+        
+        efIndex = IndexOnDisk.createIndex(args[1], args[3]);
+    }
+    
+    @Test
+    public void testTermStatistics() throws IOException
+    {
+        // with -t, the generator writes the term statistics and registers them as the termstats structure
+        assertEquals(options.contains("-t"), efIndex.hasIndexStructure("termstats"));
+        if (!options.contains("-t"))
+            EFTermStatistics.write(efIndex);
+        EFTermStatistics stats = (options.contains("-t")) ? (EFTermStatistics) efIndex.getIndexStructure("termstats") : new EFTermStatistics(efIndex);
+        
+        final int numTerms = efIndex.getCollectionStatistics().getNumberOfUniqueTerms();
+        assertEquals(numTerms, stats.numberOfEntries());
+        for (int i = 0; i < numTerms; i++) {
+            EFLexiconEntry ole = (EFLexiconEntry) efIndex.getLexicon().getLexiconEntry(i).getValue();
+            assertEquals(ole.getDocumentFrequency(), stats.getDocumentFrequency(i));
+            assertEquals(ole.getFrequency(), stats.getFrequency(i));
+            assertEquals(ole.getMaxFrequencyInDocuments(), stats.getMaxFrequencyInDocuments(i));
+            assertEquals(ole.isInline(), stats.isInline(i));
+            if (!ole.isInline()) {
+                assertEquals(ole.getDocidOffset(), stats.getDocidOffset(i));
+                assertEquals(ole.getFreqOffset(), stats.getFreqOffset(i));
+            }
+            
+            EFLexiconEntry le = stats.getLexiconEntry(i);
+            assertEquals(i, le.getTermId());
+            assertEquals(ole.isInline(), le.isInline());
+            IterablePosting op = efIndex.getInvertedIndex().getPostings(ole);
+            IterablePosting sp = efIndex.getInvertedIndex().getPostings(le);
+            while (op.next() != IterablePosting.EOL) {
+                assertEquals(op.getId(), sp.next());
+                assertEquals(op.getFrequency(), sp.getFrequency());
+            }
+            assertEquals(IterablePosting.EOL, sp.next());
+            op.close();
+            sp.close();
+        }
+        // the structure of the index is closed with the index
+        if (!options.contains("-t"))
+            stats.close();
+    }
+    
+    @After 
+    public void deleteIndex() throws IOException
+    {
+        originalIndex.close();
+        efIndex.close();
+    } 
+}
@@ -0,0 +1,121 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import it.cnr.isti.hpclab.ef.util.EFUtils;
+import it.cnr.isti.hpclab.ef.util.LongWordBitWriter;
+import it.cnr.isti.hpclab.ef.util.SequenceEncoder;
+
+public class EFUtilsTest 
+{
+    private static final int CACHE_SIZE = 64 * 1024;
+    
+    private final Random rnd = new Random(42);
+    
+    /**
+     * Return the number of bits dumped by an encoder configured as the docid encoder of {@link EliasFanoEncoders}.
+     */
+    private static long dumpedDocidBits(final int[] docids, final int N, final int log2Quantum) throws IOException
+    {
+        try (SequenceEncoder encoder = new SequenceEncoder(CACHE_SIZE, log2Quantum)) {
+            encoder.init(docids.length, N, false, true, log2Quantum);
+            long lastDocid = 0;
+            for (int docid: docids) {
+                encoder.add(docid - lastDocid);
+                lastDocid = docid;
+            }
+            return encoder.dump(new LongWordBitWriter(Channels.newChannel(new ByteArrayOutputStream()), ByteOrder.nativeOrder()));
+        }
+    }
+    
+    /**
+     * Return the number of bits dumped by an encoder configured as the freq encoder of {@link EliasFanoEncoders}.
+     */
+    private static long dumpedFreqBits(final int[] freqs, final int F, final int log2Quantum) throws IOException
+    {
+        try (SequenceEncoder encoder = new SequenceEncoder(CACHE_SIZE, log2Quantum)) {
+            encoder.init(freqs.length, F, true, false, log2Quantum);
+            for (int freq: freqs)
+                encoder.add(freq);
+            return encoder.dump(new LongWordBitWriter(Channels.newChannel(new ByteArrayOutputStream()), ByteOrder.nativeOrder()));
+        }
+    }
+    
+    /** Return <code>df</code> distinct random docids smaller than <code>N</code>, in increasing order. */
+    private int[] docids(final int df, final int N)
+    {
+        return rnd.ints(0, N).distinct().limit(df).sorted().toArray();
+    }
+    
+    /** Return <code>df</code> random positive freqs, mostly small. */
+    private int[] freqs(final int df)
+    {
+        return rnd.ints(df, 1, 1 + (rnd.nextBoolean() ? 3 : 1000)).toArray();
+    }
+    
+    @Test
+    public void testDocidsBits() throws IOException
+    {
+        for (int log2Quantum: new int[] { 3, 6, 8 }) {
+            for (int N: new int[] { 1, 2, 100, 1000, 100_000 }) {
+                for (int df: new int[] { 1, 2, 3, 7, 8, 9, 64, 65, 1000, 5000 }) {
+                    if (df > N)
+                        continue;
+                    final int[] docids = docids(df, N);
+                    assertEquals("df " + df + " N " + N + " quantum 2^" + log2Quantum, 
+                                 dumpedDocidBits(docids, N, log2Quantum), EFUtils.docidsBits(df, N, log2Quantum));
+                }
+            }
+            // the densest list, every docid
+            final int[] all = docids(1000, 1000);
+            assertEquals(dumpedDocidBits(all, 1000, log2Quantum), EFUtils.docidsBits(1000, 1000, log2Quantum));
+        }
+    }
+    
+    @Test
+    public void testFreqsBits() throws IOException
+    {
+        for (int log2Quantum: new int[] { 3, 6, 8 }) {
+            for (int df: new int[] { 1, 2, 3, 7, 8, 9, 64, 65, 1000, 5000 }) {
+                final int[] freqs = freqs(df);
+                final int F = Arrays.stream(freqs).sum();
+                assertEquals("df " + df + " F " + F + " quantum 2^" + log2Quantum, 
+                             dumpedFreqBits(freqs, F, log2Quantum), EFUtils.freqsBits(df, F, log2Quantum));
+            }
+            // all freqs equal to one, the smallest F
+            final int[] ones = new int[1000];
+            Arrays.fill(ones, 1);
+            assertEquals(dumpedFreqBits(ones, 1000, log2Quantum), EFUtils.freqsBits(1000, 1000, log2Quantum));
+        }
+        assertEquals(0, EFUtils.freqsBits(0, 0, 3));
+    }
+}
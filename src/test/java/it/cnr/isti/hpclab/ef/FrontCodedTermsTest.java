@@ -0,0 +1,179 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import it.cnr.isti.hpclab.ef.util.FrontCodedTerms;
+
+public class FrontCodedTermsTest 
+{
+    private final Random rnd = new Random(42);
+    
+    /** Return distinct random terms over a small alphabet, to share long prefixes, sorted as their UTF-8 bytes. */
+    private String[] terms(final int n)
+    {
+        final String alphabet = "ab\u00e9";
+        final TreeSet<String> terms = new TreeSet<>((a, b) -> Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8)));
+        while (terms.size() < n) {
+            final StringBuilder term = new StringBuilder();
+            for (int i = 1 + rnd.nextInt(8); i > 0; i--)
+                term.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+            terms.add(term.toString());
+        }
+        return terms.toArray(new String[0]);
+    }
+    
+    private static FrontCodedTerms build(final byte[][] terms, final int blockSize)
+    {
+        final FrontCodedTerms.Builder builder = new FrontCodedTerms.Builder(blockSize);
+        for (byte[] term: terms)
+            builder.add(term);
+        return builder.build();
+    }
+    
+    /** Return the number of terms smaller than the given one, scanning all terms. */
+    private static int rank(final byte[][] terms, final byte[] term)
+    {
+        int rank = 0;
+        while (rank < terms.length && Arrays.compareUnsigned(terms[rank], term) < 0)
+            rank++;
+        return rank;
+    }
+    
+    /**
+     * Check the lookups of all terms, and of terms not in the dictionary, in the dictionary and in the dictionary written and read back.
+     */
+    private void check(final String[] terms, final int blockSize) throws IOException
+    {
+        final byte[][] bytes = new byte[terms.length][];
+        for (int i = 0; i < terms.length; i++)
+            bytes[i] = terms[i].getBytes(StandardCharsets.UTF_8);
+        final FrontCodedTerms dictionary = build(bytes, blockSize);
+        
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.write(new DataOutputStream(out));
+        final FrontCodedTerms read = FrontCodedTerms.read(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+        
+        for (FrontCodedTerms d: new FrontCodedTerms[] { dictionary, read }) {
+            assertEquals(terms.length, d.size());
+            for (int i = 0; i < terms.length; i++) {
+                assertEquals(terms[i], d.get(i));
+                assertEquals(i, d.rank(bytes[i]));
+                assertEquals(i, d.indexOf(bytes[i]));
+                
+                // a term extended by one byte, and the term without its last byte, are usually not in the dictionary
+                for (byte[] other: new byte[][] { Arrays.copyOf(bytes[i], bytes[i].length + 1), Arrays.copyOf(bytes[i], bytes[i].length - 1) }) {
+                    final int rank = rank(bytes, other);
+                    assertEquals(rank, d.rank(other));
+                    assertEquals((rank < terms.length && Arrays.equals(bytes[rank], other)) ? rank : -1, d.indexOf(other));
+                }
+                
+                // the terms starting with the first two bytes of the term
+                final byte[] prefix = Arrays.copyOf(bytes[i], Math.min(2, bytes[i].length));
+                int from = 0, to = 0;
+                for (int j = 0; j < terms.length; j++) {
+                    final boolean starts = bytes[j].length >= prefix.length && Arrays.equals(bytes[j], 0, prefix.length, prefix, 0, prefix.length);
+                    if (starts && to == 0)
+                        from = j;
+                    if (starts)
+                        to = j + 1;
+                }
+                assertArrayEquals(new int[] { from, to }, d.prefixRange(prefix));
+            }
+            
+            // iterating from every term of the first two blocks
+            for (int from = 0; from < Math.min(terms.length, 2 * blockSize); from++) {
+                final Iterator<String> it = d.iterator(from);
+                for (int i = from; i < terms.length; i++)
+                    assertEquals(terms[i], it.next());
+                assertFalse(it.hasNext());
+            }
+        }
+    }
+    
+    @Test
+    public void testEmpty() throws IOException
+    {
+        final FrontCodedTerms dictionary = build(new byte[0][], FrontCodedTerms.DEFAULT_BLOCK_SIZE);
+        assertEquals(0, dictionary.size());
+        assertEquals(0, dictionary.rank(new byte[] { 'a' }));
+        assertEquals(-1, dictionary.indexOf(new byte[] { 'a' }));
+        assertArrayEquals(new int[] { 0, 0 }, dictionary.prefixRange(new byte[] { 'a' }));
+        assertFalse(dictionary.iterator(0).hasNext());
+        check(new String[0], FrontCodedTerms.DEFAULT_BLOCK_SIZE);
+    }
+    
+    @Test
+    public void testBlockSizes() throws IOException
+    {
+        // a block per term, blocks not dividing the number of terms, and the default block size
+        final String[] terms = terms(1000);
+        for (int blockSize: new int[] { 1, 2, 7, FrontCodedTerms.DEFAULT_BLOCK_SIZE })
+            check(terms, blockSize);
+    }
+    
+    @Test
+    public void testLongTerms() throws IOException
+    {
+        // the lengths of terms and of shared prefixes longer than 127 bytes take more than one byte
+        final String[] terms = new String[50];
+        final char[] term = new char[300];
+        Arrays.fill(term, 'a');
+        for (int i = 0; i < terms.length; i++) {
+            term[term.length - 1 - i % 200] = 'b';
+            terms[i] = new String(term, 0, 150 + i);
+        }
+        Arrays.sort(terms);
+        check(terms, 4);
+    }
+    
+    @Test
+    public void testPrefixRangeOfLargestBytes()
+    {
+        // a prefix ending with 0xFF bytes has no successor of the same length
+        final byte[][] terms = { { 'a' }, { 'a', (byte) 0xFF }, { 'a', (byte) 0xFF, 1 }, { 'b' } };
+        final FrontCodedTerms dictionary = build(terms, 2);
+        assertArrayEquals(new int[] { 1, 3 }, dictionary.prefixRange(new byte[] { 'a', (byte) 0xFF }));
+        assertArrayEquals(new int[] { 4, 4 }, dictionary.prefixRange(new byte[] { (byte) 0xFF }));
+        assertArrayEquals(new int[] { 0, 4 }, dictionary.prefixRange(new byte[0]));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsorted()
+    {
+        new FrontCodedTerms.Builder().add(new byte[] { 'b' }).add(new byte[] { 'a' });
+    }
+}
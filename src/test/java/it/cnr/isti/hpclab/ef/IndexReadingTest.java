@@ -19,15 +19,23 @@
  */
 package it.cnr.isti.hpclab.ef;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
@@ -40,6 +48,8 @@ import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
+import it.cnr.isti.hpclab.ef.structures.EFBasicIterablePosting;
+import it.cnr.isti.hpclab.ef.structures.EFInlineIterablePosting;
 import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
 
 @RunWith(value = Parameterized.class)
@@ -50,18 +60,24 @@ public class IndexReadingTest extends EFSetupTest
     
     private int parallelism;
     private int skipSize;
+    // additional options of the generator
+    private String options;
     
-    public IndexReadingTest(int parallelism, int skipSize)
+    public IndexReadingTest(int parallelism, int skipSize, String options)
     {
         this.parallelism = parallelism;
         this.skipSize = skipSize;
+        this.options = options;
     }
     
     @Parameters
     public static Collection<Object[]> getParameters()
     {
-        // return Arrays.asList(new Object[][] { {3, 2} });
-        return Arrays.asList(new Object[][] { {1,2}, {1,3}, {1,4}, {2,2}, {2,3}, {2,4}, {3,2}, {3,3}, {3,4}});
+        // return Arrays.asList(new Object[][] { {3, 2, ""} });
+        return Arrays.asList(new Object[][] { {1,2,""}, {1,3,""}, {1,4,""}, {2,2,""}, {2,3,""}, {2,4,""}, {3,2,""}, {3,3,""}, {3,4,""},
+                                              {1,3,"-w"}, {3,2,"-w"}, {3,4,"-w"},
+                                              {1,2,"-l"}, {2,3,"-l"}, {3,4,"-l"},
+                                              {1,2,"-n"}, {3,4,"-n"} });
     }
     
     @Before 
@@ -71,6 +87,11 @@ public class IndexReadingTest extends EFSetupTest
         originalIndex = IndexOnDisk.createIndex();
         
         String args[] = {"-path", originalIndex.getPath(), "-prefix", originalIndex.getPrefix() + ".ef", "-index", originalIndex.getPath() + File.separator + originalIndex.getPrefix() + ".properties", "-p", Integer.toString(parallelism)};
+        if (!options.isEmpty()) {
+            final String[] extra = options.split(" ");
+            args = Arrays.copyOf(args, args.length + extra.length);
+            System.arraycopy(extra, 0, args, args.length - extra.length, extra.length);
+        }
 
         System.setProperty(EliasFano.LOG2QUANTUM, "3");
 
@@ -117,6 +138,54 @@ public class IndexReadingTest extends EFSetupTest
         }
     }
     
+    @Test
+    public void testConcurrentSourcePostings() throws Exception
+    {
+        // the compression threads share the source index: concurrent iterators must read the same postings as a single one
+        final int numTerms = originalIndex.getCollectionStatistics().getNumberOfUniqueTerms();
+        // lexicon entries are read upfront, since compressors have their own lexicon iterators
+        final LexiconEntry[] entries = new LexiconEntry[numTerms];
+        final int[][] expected = new int[numTerms][];
+        for (int i = 0; i < numTerms; i++) {
+            entries[i] = originalIndex.getLexicon().getLexiconEntry(i).getValue();
+            expected[i] = postings(originalIndex, entries[i]);
+        }
+        
+        final int numThreads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final int first = t;
+                readers.add(pool.submit(() -> {
+                    // every thread starts from a different term, so different lists are read at the same time
+                    for (int k = 0; k < numTerms; k++) {
+                        final int i = (first * numTerms / numThreads + k) % numTerms;
+                        assertArrayEquals(expected[i], postings(originalIndex, entries[i]));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> reader: readers)
+                reader.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /** Return the docids and freqs of the posting list of a lexicon entry, interleaved. */
+    private static int[] postings(final IndexOnDisk index, final LexiconEntry le) throws IOException
+    {
+        final int[] postings = new int[2 * le.getDocumentFrequency()];
+        IterablePosting p = index.getInvertedIndex().getPostings(le);
+        for (int j = 0; p.next() != IterablePosting.EOL; j += 2) {
+            postings[j] = p.getId();
+            postings[j + 1] = p.getFrequency();
+        }
+        p.close();
+        return postings;
+    }
+    
     @Test
     public void nextIntoEverySkip() throws IOException
     {
@@ -213,6 +282,94 @@ public class IndexReadingTest extends EFSetupTest
         }
     }
     
+    @Test
+    public void testPooledPostingLists() throws IOException
+    {
+        Map.Entry<String, LexiconEntry> originalEntry;
+        Map.Entry<String, LexiconEntry> efEntry;
+        
+        // inlined and not inlined posting lists are pooled separately
+        Map<Boolean, IterablePosting> previous = new HashMap<>();
+        EFBasicIterablePosting reset = null;
+        for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+            originalEntry = originalIndex.getLexicon().getIthLexiconEntry(i);
+            efEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+            final EFLexiconEntry le = (EFLexiconEntry) efEntry.getValue();
+            
+            // closed posting lists are reused by the next one of the same kind opened, the reset one is moved along the lexicon
+            IterablePosting sp = efIndex.getInvertedIndex().getPostings(le);
+            if (previous.containsKey(le.isInline()))
+                assertTrue(previous.get(le.isInline()) == sp);
+            if (reset != null && (reset instanceof EFInlineIterablePosting) != le.isInline()) {
+                // a posting list cannot be reset to a posting list of the other kind: it is reopened
+                try {
+                    reset.reset(le);
+                    fail();
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                reset.close();
+                previous.put(!le.isInline(), reset);
+                reset = null;
+            }
+            if (reset == null)
+                reset = (EFBasicIterablePosting) efIndex.getInvertedIndex().getPostings(le);
+            else
+                reset.reset(le);
+            
+            IterablePosting op = originalIndex.getInvertedIndex().getPostings(originalEntry.getValue());
+            while (op.next() != IterablePosting.EOL) {
+                assertEquals(op.getId(), sp.next());
+                assertEquals(op.getFrequency(), sp.getFrequency());
+                assertEquals(op.getId(), reset.next());
+                assertEquals(op.getFrequency(), reset.getFrequency());
+            }
+            assertEquals(IterablePosting.EOL, sp.next());
+            assertEquals(IterablePosting.EOL, reset.next());
+            sp.close();
+            previous.put(le.isInline(), sp);
+        }
+        reset.close();
+    }
+    
+    @Test
+    public void nextBatchAfterEverySkip() throws IOException
+    {
+        Map.Entry<String, LexiconEntry> originalEntry;
+        Map.Entry<String, LexiconEntry> efEntry;
+        
+        final int[] docids = new int[skipSize];
+        final int[] freqs  = new int[skipSize];
+        
+        for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+            originalEntry = originalIndex.getLexicon().getIthLexiconEntry(i);
+            efEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+            
+            IterablePosting op = originalIndex.getInvertedIndex().getPostings(originalEntry.getValue());
+            EFBasicIterablePosting sp = (EFBasicIterablePosting) efIndex.getInvertedIndex().getPostings(efEntry.getValue());
+            
+            // batches of skipSize postings, alternated with single next() calls
+            while (true) {
+                final int count = sp.nextBatch(docids, freqs);
+                for (int j = 0; j < count; j++) {
+                    op.next();
+                    assertEquals(op.getId(), docids[j]);
+                    assertEquals(op.getFrequency(), freqs[j]);
+                }
+                if (count < skipSize) {
+                    assertEquals(IterablePosting.EOL, op.next());
+                    assertEquals(IterablePosting.EOL, sp.next());
+                    break;
+                }
+                assertEquals(op.getId(), sp.getId());
+                assertEquals(op.next(), sp.next());
+                if (op.getId() == IterablePosting.EOL)
+                    break;
+                assertEquals(op.getFrequency(), sp.getFrequency());
+            }
+        }
+    }
+    
     @After 
     public void deleteIndex() throws IOException
     {
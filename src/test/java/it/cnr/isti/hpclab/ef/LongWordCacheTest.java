@@ -0,0 +1,126 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.cnr.isti.hpclab.ef.util.CacheBudget;
+import it.cnr.isti.hpclab.ef.util.LongWordCache;
+
+public class LongWordCacheTest 
+{
+    private static final int INITIAL_CACHE_SIZE = 64 * 1024;
+    
+    private long total;
+    private long used;
+    
+    @Before
+    public void saveBudget()
+    {
+        total = CacheBudget.total();
+        used = CacheBudget.used();
+    }
+    
+    @After
+    public void restoreBudget()
+    {
+        CacheBudget.set(total);
+    }
+    
+    /** Append random long words, checking that the budget is never exceeded, and return them. */
+    private static long[] fill(final LongWordCache cache, final int n, final long seed) throws IOException
+    {
+        final Random rnd = new Random(seed);
+        final long[] words = new long[n];
+        for (int i = 0; i < n; i++) {
+            words[i] = rnd.nextLong();
+            cache.append(words[i], Long.SIZE);
+            assertTrue(CacheBudget.used() <= Math.max(CacheBudget.total(), 0));
+        }
+        return words;
+    }
+    
+    private static void check(final LongWordCache cache, final long[] words) throws IOException
+    {
+        assertEquals((long) words.length * Long.SIZE, cache.length());
+        cache.rewind();
+        for (long word: words)
+            assertEquals(word, cache.readLong());
+    }
+    
+    @Test
+    public void testSpillingWithoutBudget() throws IOException
+    {
+        // no off-heap memory at all: the initial cache is on heap, and it spills instead of growing
+        CacheBudget.set(used);
+        try (LongWordCache cache = new LongWordCache(1024 * 1024, "test")) {
+            assertEquals(used, CacheBudget.used());
+            final long[] words = fill(cache, 100_000, 0);
+            assertTrue(!cache.inMemory());
+            assertEquals(used, CacheBudget.used());
+            check(cache, words);
+            
+            // a cleared cache is in memory again, until it spills again
+            cache.clear();
+            assertTrue(cache.inMemory());
+            check(cache, fill(cache, 1_000, 1));
+            cache.clear();
+            final long[] more = fill(cache, 50_000, 2);
+            assertTrue(!cache.inMemory());
+            check(cache, more);
+        }
+        assertEquals(used, CacheBudget.used());
+    }
+    
+    @Test
+    public void testSharedBudget() throws IOException
+    {
+        // room for the initial caches and the growth of one of them
+        CacheBudget.set(used + 3 * INITIAL_CACHE_SIZE);
+        try (LongWordCache first = new LongWordCache(1024 * 1024, "test"); 
+             LongWordCache second = new LongWordCache(1024 * 1024, "test")) {
+            assertEquals(used + 2 * INITIAL_CACHE_SIZE, CacheBudget.used());
+            final long[] firstWords = fill(first, 100_000, 3);
+            final long[] secondWords = fill(second, 100_000, 4);
+            assertTrue(!first.inMemory());
+            assertTrue(!second.inMemory());
+            check(first, firstWords);
+            check(second, secondWords);
+            
+            // cleared caches shrink back to their initial size, so the memory they borrowed is available again
+            first.clear();
+            second.clear();
+            assertEquals(used + 2 * INITIAL_CACHE_SIZE, CacheBudget.used());
+            final long[] words = fill(second, 15_000, 5);
+            assertTrue(second.inMemory());
+            check(second, words);
+        }
+        assertEquals(used, CacheBudget.used());
+    }
+}
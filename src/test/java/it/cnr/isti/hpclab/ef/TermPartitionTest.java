@@ -0,0 +1,95 @@
+/*
+ * Elias-Fano compression for Terrier 5
+ *
+ * Copyright (C) 2018-2020 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.ef;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+import org.terrier.structures.LexiconEntry;
+
+import it.cnr.isti.hpclab.ef.structures.EFLexiconEntry;
+
+public class TermPartitionTest 
+{
+    private static List<Entry<String, LexiconEntry>> lexicon(final int... dfs)
+    {
+        List<Entry<String, LexiconEntry>> res = new ArrayList<>();
+        for (int termId = 0; termId < dfs.length; termId++)
+            res.add(new AbstractMap.SimpleEntry<String, LexiconEntry>("t" + termId, new EFLexiconEntry(termId, dfs[termId], dfs[termId], 0, 0)));
+        return res;
+    }
+    
+    private static void checkContiguous(final TermPartition[] partitions, final int max)
+    {
+        assertEquals(0, partitions[0].begin());
+        for (int i = 0; i < partitions.length; i++) {
+            assertEquals(i, partitions[i].id());
+            assertTrue(partitions[i].begin() < partitions[i].end());
+            if (i > 0)
+                assertEquals(partitions[i - 1].end(), partitions[i].begin());
+        }
+        assertEquals(max, partitions[partitions.length - 1].end());
+    }
+    
+    @Test
+    public void testSkewedLexicon()
+    {
+        // one heavy head term followed by many light terms
+        int[] dfs = new int[101];
+        Arrays.fill(dfs, 10);
+        dfs[0] = 1000;
+        List<Entry<String, LexiconEntry>> lex = lexicon(dfs);
+        final long total = lex.stream().mapToLong(e -> e.getValue().getDocumentFrequency()).sum();
+        
+        TermPartition[] partitions = TermPartition.split(lex.size(), 2, lex.iterator(), LexiconEntry::getDocumentFrequency, total);
+        assertEquals(2, partitions.length);
+        checkContiguous(partitions, lex.size());
+        // the head term is (approximately) as expensive as all the others
+        assertEquals(1, partitions[0].end());
+        assertEquals(total, partitions[0].cost() + partitions[1].cost());
+    }
+
+    @Test
+    public void testUniformLexicon()
+    {
+        List<Entry<String, LexiconEntry>> lex = lexicon(5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5);
+        TermPartition[] partitions = TermPartition.split(lex.size(), 3, lex.iterator(), LexiconEntry::getDocumentFrequency, 60);
+        assertEquals(3, partitions.length);
+        checkContiguous(partitions, lex.size());
+        for (TermPartition partition: partitions)
+            assertEquals(20, partition.cost());
+    }
+
+    @Test
+    public void testMoreBinsThanTerms()
+    {
+        List<Entry<String, LexiconEntry>> lex = lexicon(1, 100, 1);
+        TermPartition[] partitions = TermPartition.split(lex.size(), 8, lex.iterator(), LexiconEntry::getDocumentFrequency, 102);
+        assertEquals(3, partitions.length);
+        checkContiguous(partitions, lex.size());
+    }
+}